@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read access to an archive of raw Opus document XML written by {@link Opus4ArchiveWriter}.
+ * <p>
+ * The archive is a single file holding individually deflated documents, followed by an index
+ * of document IDs and record offsets:
+ * <pre>
+ * header:  "OPUS4ARC" version:int
+ * record:  documentId:int rawLength:int compressedLength:int data:byte[compressedLength]
+ * index:   (documentId:int offset:long compressedLength:int rawLength:int)*, sorted by documentId
+ * trailer: indexOffset:long count:int "OPUS4IDX"
+ * </pre>
+ * The file is memory-mapped, so lookups need neither system calls nor a buffer cache of their own.
+ * Instances are safe for use by multiple threads.
+ */
+class Opus4Archive implements Closeable {
+
+    static final byte[] HEADER_MAGIC = "OPUS4ARC".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] TRAILER_MAGIC = "OPUS4IDX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = HEADER_MAGIC.length + 4;
+    static final int RECORD_HEADER_LENGTH = 12;
+    static final int INDEX_ENTRY_LENGTH = 20;
+    static final int TRAILER_LENGTH = 12 + TRAILER_MAGIC.length;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final int[] compressedLengths;
+    private final int[] documentIds;
+    private final long[] offsets;
+    private final Path path;
+    private final int[] rawLengths;
+    private final long segmentSize;
+    private final MappedByteBuffer[] segments;
+
+    Opus4Archive(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize Size of the mapped regions of the file. A single mapping is limited to 2 GiB.
+     */
+    Opus4Archive(Path path, int segmentSize) throws IOException {
+        this.path = path;
+        this.segmentSize = segmentSize;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + TRAILER_LENGTH) {
+                throw new IOException("Not an Opus document archive: " + path);
+            }
+            segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            }
+
+            ByteBuffer header = read(0, HEADER_LENGTH);
+            checkMagic(header, HEADER_MAGIC);
+            if (header.getInt() != VERSION) {
+                throw new IOException("Unsupported archive version in " + path);
+            }
+
+            ByteBuffer trailer = read(size - TRAILER_LENGTH, TRAILER_LENGTH);
+            long indexOffset = trailer.getLong();
+            int count = trailer.getInt();
+            checkMagic(trailer, TRAILER_MAGIC);
+
+            ByteBuffer index = read(indexOffset, count * INDEX_ENTRY_LENGTH);
+            documentIds = new int[count];
+            offsets = new long[count];
+            compressedLengths = new int[count];
+            rawLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                documentIds[i] = index.getInt();
+                offsets[i] = index.getLong();
+                compressedLengths[i] = index.getInt();
+                rawLengths[i] = index.getInt();
+            }
+        }
+    }
+
+    /**
+     * @return the raw document XML or <code>null</code> if the archive doesn't contain the document
+     */
+    byte[] get(int documentId) throws IOException {
+        int i = Arrays.binarySearch(documentIds, documentId);
+        if (i < 0) return null;
+
+        byte[] compressed = new byte[compressedLengths[i]];
+        read(offsets[i], compressed);
+        byte[] raw = new byte[rawLengths[i]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = inflater.inflate(raw);
+            if (n != raw.length || !inflater.finished()) {
+                throw new IOException(String.format("Corrupt record for document %d in %s", documentId, path));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Corrupt record for document %d in %s", documentId, path), e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    boolean contains(int documentId) {
+        return Arrays.binarySearch(documentIds, documentId) >= 0;
+    }
+
+    int size() {
+        return documentIds.length;
+    }
+
+    /**
+     * Mapped buffers are released by the garbage collector; closing only drops the references.
+     */
+    @Override
+    public void close() {
+        Arrays.fill(segments, null);
+    }
+
+    private ByteBuffer read(long offset, int length) {
+        byte[] bytes = new byte[length];
+        read(offset, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void read(long offset, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            long position = offset + done;
+            ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+            segment.position((int) (position % segmentSize));
+            int n = Math.min(dst.length - done, segment.remaining());
+            segment.get(dst, done, n);
+            done += n;
+        }
+    }
+
+    private void checkMagic(ByteBuffer buffer, byte[] magic) throws IOException {
+        byte[] actual = new byte[magic.length];
+        buffer.get(actual);
+        if (!Arrays.equals(actual, magic)) {
+            throw new IOException("Not an Opus document archive: " + path);
+        }
+    }
+
+}
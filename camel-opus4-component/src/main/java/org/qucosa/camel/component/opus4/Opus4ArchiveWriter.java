@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Appends raw Opus document XML to an archive file readable by {@link Opus4Archive}.
+ * <p>
+ * Documents are compressed by the calling thread, so concurrent appends only serialize on the
+ * file write. The archive is written to a <code>.part</code> file first and moved to its final
+ * name when the writer is closed and the index has been written. If a document is appended more
+ * than once, the last version wins.
+ */
+class Opus4ArchiveWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(Opus4ArchiveWriter.class);
+
+    private final DataOutputStream out;
+    private final Path partPath;
+    private final Path path;
+    private final long startTime = System.currentTimeMillis();
+
+    private int count = 0;
+    private int[] compressedLengths = new int[1024];
+    private int[] documentIds = new int[1024];
+    private long[] offsets = new long[1024];
+    private long position;
+    private int[] rawLengths = new int[1024];
+    private long rawBytes = 0;
+    private boolean closed = false;
+
+    Opus4ArchiveWriter(Path path) throws IOException {
+        this.path = path;
+        this.partPath = path.resolveSibling(path.getFileName() + ".part");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partPath), 1 << 16));
+        out.write(Opus4Archive.HEADER_MAGIC);
+        out.writeInt(Opus4Archive.VERSION);
+        position = Opus4Archive.HEADER_LENGTH;
+    }
+
+    void append(int documentId, byte[] xml) throws IOException {
+        byte[] compressed = deflate(xml);
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Archive has been closed: " + path);
+            }
+            out.writeInt(documentId);
+            out.writeInt(xml.length);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+            if (count == documentIds.length) {
+                int capacity = count * 2;
+                documentIds = Arrays.copyOf(documentIds, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                compressedLengths = Arrays.copyOf(compressedLengths, capacity);
+                rawLengths = Arrays.copyOf(rawLengths, capacity);
+            }
+            documentIds[count] = documentId;
+            offsets[count] = position + Opus4Archive.RECORD_HEADER_LENGTH;
+            compressedLengths[count] = compressed.length;
+            rawLengths[count] = xml.length;
+            count++;
+            position += Opus4Archive.RECORD_HEADER_LENGTH + compressed.length;
+            rawBytes += xml.length;
+        }
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        // Order index entries by document ID, later appends of the same document first
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> (documentIds[a] != documentIds[b])
+                ? Integer.compare(documentIds[a], documentIds[b])
+                : Integer.compare(b, a));
+
+        long indexOffset = position;
+        int entries = 0;
+        int lastId = 0;
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            if (entries > 0 && documentIds[i] == lastId) continue;
+            out.writeInt(documentIds[i]);
+            out.writeLong(offsets[i]);
+            out.writeInt(compressedLengths[i]);
+            out.writeInt(rawLengths[i]);
+            lastId = documentIds[i];
+            entries++;
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(entries);
+        out.write(Opus4Archive.TRAILER_MAGIC);
+        out.close();
+        Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000d;
+        log.info(String.format("Archived %d documents to %s in %.1f s: %d bytes compressed from %d bytes, %.1f documents/s",
+                entries, path, seconds, Files.size(path), rawBytes, entries / seconds));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[Math.max(64, data.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                length += deflater.deflate(buf, length, buf.length - length);
+            }
+            return Arrays.copyOf(buf, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Position in the modification history of Opus documents, given by the modification
+ * instant of a document and its ID to order documents modified at the same time.
+ */
+class Opus4ChangeMark implements Comparable<Opus4ChangeMark> {
+
+    static final Opus4ChangeMark EPOCH = new Opus4ChangeMark(Instant.EPOCH, 0);
+
+    private final int documentId;
+    private final Instant modified;
+
+    Opus4ChangeMark(Instant modified, int documentId) {
+        this.modified = modified;
+        this.documentId = documentId;
+    }
+
+    /**
+     * Parses an ISO date (<code>2017-01-31</code>) or date-time (<code>2017-01-31T12:00:00</code>)
+     * in the local time zone.
+     */
+    static Opus4ChangeMark since(String isoDateOrDateTime) {
+        LocalDateTime dateTime = (isoDateOrDateTime.length() == 10)
+                ? LocalDate.parse(isoDateOrDateTime).atStartOfDay()
+                : LocalDateTime.parse(isoDateOrDateTime);
+        return new Opus4ChangeMark(dateTime.atZone(ZoneId.systemDefault()).toInstant(), 0);
+    }
+
+    static Opus4ChangeMark read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException("Empty high-water mark file " + file);
+        }
+        String[] fields = lines.get(0).trim().split("\\s+");
+        if (fields.length != 2) {
+            throw new IOException("Malformed high-water mark in " + file + ": " + lines.get(0));
+        }
+        return new Opus4ChangeMark(Instant.ofEpochMilli(Long.parseLong(fields[0])), Integer.parseInt(fields[1]));
+    }
+
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, (modified.toEpochMilli() + " " + documentId + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    int getDocumentId() {
+        return documentId;
+    }
+
+    Instant getModified() {
+        return modified;
+    }
+
+    Opus4ResourceID toResourceID() {
+        return Opus4ResourceID.document(documentId);
+    }
+
+    @Override
+    public int compareTo(Opus4ChangeMark other) {
+        int c = modified.compareTo(other.modified);
+        return (c != 0) ? c : Integer.compare(documentId, other.documentId);
+    }
+
+    @Override
+    public String toString() {
+        return modified + "/" + documentId;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.ScheduledPollConsumer;
+import org.apache.camel.util.ExchangeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+class Opus4ChangesConsumer extends ScheduledPollConsumer {
+
+    static final String HEADER_MODIFIED = "Opus4-Modified";
+    private static final Logger log = LoggerFactory.getLogger(Opus4ChangesConsumer.class);
+
+    private final Opus4ChangesEndpoint endpoint;
+    private Path hwmFile;
+    private Opus4ChangeMark mark;
+
+    Opus4ChangesConsumer(Opus4ChangesEndpoint endpoint, Processor processor) {
+        super(endpoint, processor);
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (endpoint.getHwmFile() != null) {
+            hwmFile = Paths.get(endpoint.getHwmFile());
+        }
+
+        if (hwmFile != null && Files.exists(hwmFile)) {
+            mark = Opus4ChangeMark.read(hwmFile);
+            log.info("Harvesting Opus document changes after persisted high-water mark " + mark);
+        } else if (endpoint.getSince() != null) {
+            mark = Opus4ChangeMark.since(endpoint.getSince());
+            log.info("Harvesting Opus document changes since " + mark);
+        } else {
+            mark = Opus4ChangeMark.EPOCH;
+            log.info("Harvesting all Opus documents");
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected int poll() throws Exception {
+        Opus4DataSource repo = (Opus4DataSource) getEndpoint().getCamelContext().getRegistry()
+                .lookupByName(Opus4DataSource.DATA_SOURCE_NAME);
+        if (repo == null) {
+            throw new Exception("No instance of " + Opus4DataSource.DATA_SOURCE_NAME +
+                    " found in context registry.");
+        }
+
+        List<Opus4ChangeMark> changes = repo.changedSince(mark, endpoint.getLimit());
+        int processed = 0;
+        for (Opus4ChangeMark change : changes) {
+            if (!isRunAllowed()) break;
+
+            Exchange exchange = getEndpoint().createExchange();
+            exchange.getIn().setBody(change.toResourceID());
+            exchange.getIn().setHeader(HEADER_MODIFIED, change.getModified());
+            try {
+                getProcessor().process(exchange);
+            } catch (Exception e) {
+                exchange.setException(e);
+            }
+
+            // An error handler like the dead letter channel clears the exception once it has handled it,
+            // so a failure handled that way has to be detected as well to keep the high-water mark in place.
+            if (exchange.getException() != null || ExchangeHelper.isFailureHandled(exchange)) {
+                Throwable cause = exchange.getException() != null
+                        ? exchange.getException()
+                        : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+                getExceptionHandler().handleException("Error processing change " + change, exchange, cause);
+                break;
+            }
+            mark = change;
+            processed++;
+        }
+
+        if (processed > 0 && hwmFile != null) {
+            mark.write(hwmFile);
+        }
+        return processed;
+    }
+
+}
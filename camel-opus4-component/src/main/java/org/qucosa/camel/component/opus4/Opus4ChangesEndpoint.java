@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.apache.camel.Component;
+import org.apache.camel.Consumer;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.ScheduledPollEndpoint;
+
+/**
+ * Polling endpoint emitting the resource identifiers of Opus documents modified since a given
+ * point in time. The position of the last emitted change can be persisted to a file, so
+ * a later run continues where the previous one stopped.
+ * <p>
+ * URI format: <code>opus4:changes?since=2017-01-31&amp;hwmFile=changes.hwm&amp;delay=60000</code>
+ */
+public class Opus4ChangesEndpoint extends ScheduledPollEndpoint {
+
+    private String hwmFile;
+    private int limit = 1000;
+    private String since;
+
+    Opus4ChangesEndpoint(String uri, Component component) {
+        super(uri, component);
+    }
+
+    @Override
+    public Producer createProducer() throws Exception {
+        throw new UnsupportedOperationException("Cannot send to " + getEndpointUri());
+    }
+
+    @Override
+    public Consumer createConsumer(Processor processor) throws Exception {
+        Opus4ChangesConsumer consumer = new Opus4ChangesConsumer(this, processor);
+        configureConsumer(consumer);
+        return consumer;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+
+    public String getHwmFile() {
+        return hwmFile;
+    }
+
+    public void setHwmFile(String hwmFile) {
+        this.hwmFile = hwmFile;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getSince() {
+        return since;
+    }
+
+    public void setSince(String since) {
+        this.since = since;
+    }
+}
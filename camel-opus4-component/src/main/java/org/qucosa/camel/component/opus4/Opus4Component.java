@@ -21,20 +21,61 @@ import org.apache.camel.Endpoint;
 import org.apache.camel.impl.DefaultComponent;
 import org.apache.camel.impl.ProcessorEndpoint;
 
+import java.io.Closeable;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Opus4Component extends DefaultComponent {
+
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private final List<Closeable> archives = new CopyOnWriteArrayList<>();
+
     @Override
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
         if (remaining.startsWith("resources")) {
-            return new ProcessorEndpoint(uri, this, new Opus4ResourcesProcessor());
+            boolean streaming = getAndRemoveParameter(parameters, "streaming", Boolean.class, false);
+            int pageSize = getAndRemoveParameter(parameters, "pageSize", Integer.class, DEFAULT_PAGE_SIZE);
+            boolean recursive = getAndRemoveParameter(parameters, "recursive", Boolean.class, false);
+            return new ProcessorEndpoint(uri, this, new Opus4ResourcesProcessor(streaming, pageSize, recursive));
+        }
+        if (remaining.startsWith("changes")) {
+            return new Opus4ChangesEndpoint(uri, this);
+        }
+        if (remaining.startsWith("urns")) {
+            return new ProcessorEndpoint(uri, this, new Opus4UrnProcessor());
         }
         if (remaining.startsWith("documents")) {
-            return new ProcessorEndpoint(uri, this, new Opus4DocumentProcessor());
+            String archive = getAndRemoveParameter(parameters, "archive", String.class);
+            if (archive != null) {
+                Opus4Archive reader = new Opus4Archive(Paths.get(archive));
+                archives.add(reader);
+                return new Opus4DocumentsEndpoint(uri, this, new Opus4DocumentProcessor(reader));
+            }
+            return new Opus4DocumentsEndpoint(uri, this, new Opus4DocumentProcessor());
+        }
+        if (remaining.startsWith("mirror")) {
+            String archive = getAndRemoveParameter(parameters, "archive", String.class);
+            if (archive == null) {
+                throw new Exception("Missing archive parameter: " + uri);
+            }
+            Opus4ArchiveWriter writer = new Opus4ArchiveWriter(Paths.get(archive));
+            archives.add(writer);
+            return new ProcessorEndpoint(uri, this, new Opus4MirrorProcessor(writer));
         }
         throw new Exception("Unknown endpoint URI:" + remaining);
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        for (Closeable archive : archives) {
+            archive.close();
+        }
+        archives.clear();
+        super.doStop();
+    }
+
     @Override
     protected void doShutdown() throws Exception {
         ((Opus4DataSource) getCamelContext().getRegistry().lookupByName(Opus4DataSource.DATA_SOURCE_NAME)).release();
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections to the Opus4 database.
+ * <p>
+ * Connections are opened lazily up to the configured pool size. Each pooled connection keeps
+ * its prepared statements open, so repeated queries don't have to be prepared again. Leases
+ * block for at most the configured timeout. A connection is only validated before a lease
+ * if it has been idle for longer than the validation idle time, so busy connections don't pay
+ * for a round trip on every lease. Wait times and lease counts are recorded to help sizing the pool.
+ */
+class Opus4ConnectionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(Opus4ConnectionPool.class);
+
+    private final List<Lease> allConnections = new ArrayList<>();
+    private final BlockingQueue<Lease> idleConnections;
+    private final String dburl;
+    private final String password;
+    private final int size;
+    private final long timeoutMillis;
+    private final String user;
+    private final long validationIdleNanos;
+    private final int validationTimeoutSeconds;
+
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private volatile boolean closed = false;
+
+    Opus4ConnectionPool(String dburl, String user, String password,
+                        int size, long timeoutMillis, long validationIdleMillis, int validationTimeoutSeconds) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Connection pool size must be at least 1");
+        }
+        this.dburl = dburl;
+        this.user = user;
+        this.password = password;
+        this.size = size;
+        this.timeoutMillis = timeoutMillis;
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMillis);
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.idleConnections = new ArrayBlockingQueue<>(size);
+    }
+
+    Lease lease() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been closed");
+        }
+
+        final long start = System.nanoTime();
+        Lease lease = idleConnections.poll();
+        if (lease == null) {
+            lease = openIfBelowLimit();
+        }
+        if (lease == null) {
+            try {
+                lease = idleConnections.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for database connection", e);
+            }
+        }
+        if (lease == null) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException(String.format(
+                    "Timeout after %d ms waiting for one of %d database connections", timeoutMillis, size));
+        }
+
+        recordWait(System.nanoTime() - start);
+        return validate(lease);
+    }
+
+    long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    double getAverageWaitMillis() {
+        long leases = leaseCount.get();
+        return (leases == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()) / 1000d / leases;
+    }
+
+    double getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000d;
+    }
+
+    synchronized int getOpenConnectionCount() {
+        return allConnections.size();
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    void close() {
+        closed = true;
+        synchronized (this) {
+            for (Lease lease : allConnections) {
+                lease.closeQuietly();
+            }
+            allConnections.clear();
+            idleConnections.clear();
+        }
+        log.debug("Closed database connections to " + dburl);
+        log.info(String.format("Database connection pool: %d leases, %.2f ms average wait, %.2f ms max wait, %d timeouts",
+                getLeaseCount(), getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount()));
+    }
+
+    private synchronized Lease openIfBelowLimit() throws SQLException {
+        if (allConnections.size() >= size) {
+            return null;
+        }
+        Lease lease = new Lease(connect());
+        allConnections.add(lease);
+        return lease;
+    }
+
+    private Lease validate(Lease lease) throws SQLException {
+        if (System.nanoTime() - lease.returnedAt < validationIdleNanos) return lease;
+
+        boolean valid;
+        try {
+            valid = lease.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            valid = false;
+        }
+        if (valid) return lease;
+
+        log.warn("Replacing invalid database connection to " + dburl);
+        lease.closeQuietly();
+        Lease replacement;
+        try {
+            replacement = new Lease(connect());
+        } catch (SQLException e) {
+            discard(lease);
+            throw e;
+        }
+        synchronized (this) {
+            allConnections.remove(lease);
+            allConnections.add(replacement);
+        }
+        return replacement;
+    }
+
+    private synchronized void discard(Lease lease) {
+        allConnections.remove(lease);
+    }
+
+    private void recordWait(long waitNanos) {
+        leaseCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    private Connection connect() throws SQLException {
+        final Connection connection = DriverManager.getConnection(dburl, user, password);
+        log.debug("Established JDBC connection to " + dburl);
+        return connection;
+    }
+
+    /**
+     * A leased database connection. Closing the lease returns the connection to the pool.
+     * Statements prepared via the lease stay open and are reused by later leases of the same connection.
+     */
+    class Lease implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private volatile long returnedAt;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+            this.returnedAt = System.nanoTime();
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            } else {
+                stmt.clearParameters();
+            }
+            return stmt;
+        }
+
+        /**
+         * Creates a plain statement for one-off queries, which has to be closed by the caller.
+         */
+        Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        @Override
+        public void close() {
+            returnedAt = System.nanoTime();
+            if (closed) {
+                closeQuietly();
+            } else if (!idleConnections.offer(this)) {
+                log.warn("Database connection returned to full pool, closing it");
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close database connection: " + e.getMessage());
+            }
+        }
+    }
+
+}
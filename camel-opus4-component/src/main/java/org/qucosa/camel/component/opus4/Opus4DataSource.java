@@ -20,150 +20,574 @@ package org.qucosa.camel.component.opus4;
 import noNamespace.OpusDocument;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
-import org.apache.http.HttpResponse;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Opus4DataSource {
 
     private static final String WEBAPI_DOCUMENT_RESOURCE_PATH = "/document";
     static final String WEBAPI_PARAM_QUCOSA_HOST = "qucosa.host";
+    static final String WEBAPI_PARAM_CONNECT_TIMEOUT = "qucosa.http.connectTimeout";
+    static final String WEBAPI_PARAM_SOCKET_TIMEOUT = "qucosa.http.socketTimeout";
+    static final String WEBAPI_PARAM_DEADLINE = "qucosa.http.deadline";
+    static final String WEBAPI_PARAM_HEDGE_PERCENTILE = "qucosa.http.hedge.percentile";
+    static final String WEBAPI_PARAM_HEDGE_MIN_DELAY = "qucosa.http.hedge.minDelay";
+    static final String WEBAPI_PARAM_EJECTION_FAILURES = "qucosa.http.ejection.failures";
+    static final String WEBAPI_PARAM_EJECTION_TIME = "qucosa.http.ejection.time";
+    static final String WEBAPI_PARAM_EJECTION_SLOW_FACTOR = "qucosa.http.ejection.slowFactor";
     static final String DB_PARAM_HOST = "qucosa.db.url";
     static final String DB_PARAM_USER = "qucosa.db.user";
     static final String DB_PARAM_PASSWORD = "qucosa.db.passwd";
+    static final String DB_PARAM_POOL_SIZE = "qucosa.db.pool.size";
+    static final String DB_PARAM_POOL_TIMEOUT = "qucosa.db.pool.timeout";
+    static final String DB_PARAM_POOL_VALIDATION_IDLE = "qucosa.db.pool.validationIdle";
+    static final String DB_PARAM_POOL_VALIDATION_TIMEOUT = "qucosa.db.pool.validationTimeout";
+    static final String DB_PARAM_URN_BATCH_SIZE = "qucosa.db.urn.batchSize";
+    static final String DB_PARAM_URN_INDEX = "qucosa.db.urn.index";
+    static final String DB_PARAM_RECURSIVE_QUERIES = "qucosa.db.recursiveQueries";
+    static final String DB_PARAM_TRAVERSAL_BATCH_SIZE = "qucosa.db.traversal.batchSize";
+    static final String DB_PARAM_TRAVERSAL_MAX_DEPTH = "qucosa.db.traversal.maxDepth";
+    static final String DB_PARAM_TRAVERSAL_PAGE_SIZE = "qucosa.db.traversal.pageSize";
+    static final String DOCUMENTS_PARAM_SOURCE = "qucosa.documents.source";
+    static final String DOCUMENTS_PARAM_BATCH_SIZE = "qucosa.documents.batchSize";
+    static final String DOCUMENTS_PARAM_BATCH_WINDOW = "qucosa.documents.batchWindow";
+    static final String DOCUMENTS_PARAM_CACHE_DIR = "qucosa.documents.cache.dir";
+    static final String DOCUMENTS_PARAM_CACHE_MAX_SIZE = "qucosa.documents.cache.maxSize";
+    static final String DOCUMENTS_PARAM_CACHE_VALIDATION = "qucosa.documents.cache.validation";
+    static final String CACHE_VALIDATION_DATABASE = "database";
+    static final String CACHE_VALIDATION_HTTP = "http";
+    static final String DOCUMENTS_SOURCE_DATABASE = "database";
+    static final String DOCUMENTS_SOURCE_WEBAPI = "webapi";
     public static final String DATA_SOURCE_NAME = "opus4DataSource";
+    private static final DateTimeFormatter CHANGE_CANDIDATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
     private static final Logger log = LoggerFactory.getLogger(Opus4DataSource.class);
-    private Connection connection;
-    private String dburl;
-    private String host;
-    private HttpClient httpClient;
-    private String password;
-    private String user;
+    private Opus4ConnectionPool connectionPool;
+    private Opus4DocumentCache documentCache;
+    private boolean documentCacheValidatedByHttp;
+    private int maxTraversalDepth;
+    private volatile boolean recursiveQueries;
+    private int traversalBatchSize;
+    private int traversalPageSize;
+    private Opus4WebApiClient webApiClient;
+    private Opus4SqlDocumentSource sqlDocumentSource;
+    private int urnBatchSize;
+    private Opus4UrnIndex urnIndex;
 
     public void configure(Configuration conf) throws ConfigurationException, SQLException {
-        host = getConfigValueOrThrowException(conf, WEBAPI_PARAM_QUCOSA_HOST);
-        dburl = getConfigValueOrThrowException(conf, DB_PARAM_HOST);
-        user = getConfigValueOrThrowException(conf, DB_PARAM_USER);
-        password = getConfigValueOrThrowException(conf, DB_PARAM_PASSWORD);
-        connection = connectDb();
-        httpClient = prepareHttpClient();
+        getConfigValueOrThrowException(conf, WEBAPI_PARAM_QUCOSA_HOST);
+        List<String> hosts = new ArrayList<>();
+        for (String host : conf.getStringArray(WEBAPI_PARAM_QUCOSA_HOST)) {
+            if (!host.trim().isEmpty()) hosts.add(host.trim());
+        }
+        connectionPool = new Opus4ConnectionPool(
+                getConfigValueOrThrowException(conf, DB_PARAM_HOST),
+                getConfigValueOrThrowException(conf, DB_PARAM_USER),
+                getConfigValueOrThrowException(conf, DB_PARAM_PASSWORD),
+                conf.getInt(DB_PARAM_POOL_SIZE, 8),
+                conf.getLong(DB_PARAM_POOL_TIMEOUT, 30000),
+                conf.getLong(DB_PARAM_POOL_VALIDATION_IDLE, 30000),
+                conf.getInt(DB_PARAM_POOL_VALIDATION_TIMEOUT, 5));
+        urnBatchSize = conf.getInt(DB_PARAM_URN_BATCH_SIZE, 500);
+        recursiveQueries = conf.getBoolean(DB_PARAM_RECURSIVE_QUERIES, true);
+        traversalBatchSize = conf.getInt(DB_PARAM_TRAVERSAL_BATCH_SIZE, 500);
+        maxTraversalDepth = conf.getInt(DB_PARAM_TRAVERSAL_MAX_DEPTH, 32);
+        traversalPageSize = conf.getInt(DB_PARAM_TRAVERSAL_PAGE_SIZE, 5000);
+        if (conf.getBoolean(DB_PARAM_URN_INDEX, false)) {
+            urnIndex = loadUrnIndex();
+        }
+        try {
+            webApiClient = new Opus4WebApiClient(
+                    new Opus4HostSelector(hosts,
+                            conf.getInt(WEBAPI_PARAM_EJECTION_FAILURES, 3),
+                            conf.getLong(WEBAPI_PARAM_EJECTION_TIME, 10000),
+                            conf.getDouble(WEBAPI_PARAM_EJECTION_SLOW_FACTOR, 5)),
+                    conf.getInt(WEBAPI_PARAM_CONNECT_TIMEOUT, 5000),
+                    conf.getInt(WEBAPI_PARAM_SOCKET_TIMEOUT, 30000),
+                    conf.getLong(WEBAPI_PARAM_DEADLINE, 60000),
+                    conf.getDouble(WEBAPI_PARAM_HEDGE_PERCENTILE, 0),
+                    conf.getLong(WEBAPI_PARAM_HEDGE_MIN_DELAY, 20));
+        } catch (IOException e) {
+            throw new ConfigurationException("Cannot start Opus web API client", e);
+        }
+
+        String documentSource = conf.getString(DOCUMENTS_PARAM_SOURCE, DOCUMENTS_SOURCE_WEBAPI);
+        if (DOCUMENTS_SOURCE_DATABASE.equals(documentSource)) {
+            sqlDocumentSource = new Opus4SqlDocumentSource(connectionPool,
+                    conf.getInt(DOCUMENTS_PARAM_BATCH_SIZE, 100),
+                    conf.getLong(DOCUMENTS_PARAM_BATCH_WINDOW, 10));
+            log.info("Reading Opus documents from database");
+        } else if (!DOCUMENTS_SOURCE_WEBAPI.equals(documentSource)) {
+            throw new ConfigurationException(String.format("Unknown value for %s: %s (expected %s or %s)",
+                    DOCUMENTS_PARAM_SOURCE, documentSource, DOCUMENTS_SOURCE_WEBAPI, DOCUMENTS_SOURCE_DATABASE));
+        }
+
+        String cacheDir = conf.getString(DOCUMENTS_PARAM_CACHE_DIR, null);
+        if (cacheDir != null && sqlDocumentSource == null) {
+            String validation = conf.getString(DOCUMENTS_PARAM_CACHE_VALIDATION, CACHE_VALIDATION_DATABASE);
+            if (!CACHE_VALIDATION_DATABASE.equals(validation) && !CACHE_VALIDATION_HTTP.equals(validation)) {
+                throw new ConfigurationException(String.format("Unknown value for %s: %s (expected %s or %s)",
+                        DOCUMENTS_PARAM_CACHE_VALIDATION, validation, CACHE_VALIDATION_DATABASE, CACHE_VALIDATION_HTTP));
+            }
+            documentCacheValidatedByHttp = CACHE_VALIDATION_HTTP.equals(validation);
+            try {
+                documentCache = new Opus4DocumentCache(Paths.get(cacheDir),
+                        conf.getLong(DOCUMENTS_PARAM_CACHE_MAX_SIZE, 1024L * 1024 * 1024));
+            } catch (IOException e) {
+                throw new ConfigurationException("Cannot use document cache directory " + cacheDir, e);
+            }
+        }
     }
 
     OpusDocument get(Opus4ResourceID qid) throws Exception {
-        URIBuilder uriBuilder = new URIBuilder(host + WEBAPI_DOCUMENT_RESOURCE_PATH + "/" + qid.getIdentifier());
-        HttpGet request = new HttpGet(uriBuilder.build());
+        if (sqlDocumentSource != null) {
+            return sqlDocumentSource.get(qid.getDocumentId());
+        }
+        return OpusDocument.Factory.parse(new ByteArrayInputStream(getXml(qid)));
+    }
+
+    /**
+     * Loads a document without waiting for the web API. Documents read from the database are
+     * loaded by the calling thread and returned as completed future.
+     */
+    CompletableFuture<OpusDocument> getAsync(Opus4ResourceID qid) {
+        if (sqlDocumentSource != null) {
+            return completed(() -> sqlDocumentSource.get(qid.getDocumentId()));
+        }
+        return getXmlAsync(qid).thenApply(xml -> {
+            try {
+                return OpusDocument.Factory.parse(new ByteArrayInputStream(xml));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return the raw XML of the given document, as served by the web API or read from the document cache
+     */
+    byte[] getXml(Opus4ResourceID qid) throws Exception {
+        if (sqlDocumentSource != null) {
+            return sqlDocumentSource.get(qid.getDocumentId()).xmlText()
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        return Opus4WebApiClient.await(getXmlAsync(qid));
+    }
+
+    /**
+     * Requests the raw XML of the given document from the web API or the document cache. Web API
+     * responses are handled by the callback threads of the web API client.
+     */
+    CompletableFuture<byte[]> getXmlAsync(Opus4ResourceID qid) {
+        if (sqlDocumentSource != null) {
+            return completed(() -> getXml(qid));
+        }
+        if (documentCache != null) {
+            return getCachedAsync(qid);
+        }
+        return handle(webApiClient.getAsync(documentPath(qid)), response -> {
+            if (response.getStatus() == HttpStatus.SC_OK) {
+                return response.getBody();
+            } else {
+                throw new Exception(response.getReason());
+            }
+        });
+    }
+
+    /**
+     * Returns raw document XML from the cache if the cached entry is still fresh, or else
+     * fetches and caches it. Freshness is decided by the server modification date in the
+     * database or by a conditional request to the web API.
+     */
+    private CompletableFuture<byte[]> getCachedAsync(Opus4ResourceID qid) {
+        final int documentId = qid.getDocumentId();
+        final Opus4DocumentCache.Entry cached = documentCache.get(documentId);
+
+        if (!documentCacheValidatedByHttp) {
+            final String modified;
+            try {
+                modified = serverDateModified(documentId);
+            } catch (SQLException e) {
+                return failed(e);
+            }
+            if (cached != null && modified != null && modified.equals(cached.getValidator())) {
+                documentCache.recordHit();
+                return CompletableFuture.completedFuture(cached.getContent());
+            }
+            documentCache.recordMiss();
+            return handle(webApiClient.getAsync(documentPath(qid)), response -> {
+                if (response.getStatus() != HttpStatus.SC_OK) {
+                    throw new Exception(response.getReason());
+                }
+                byte[] content = response.getBody();
+                if (modified != null) {
+                    documentCache.put(documentId, modified, content);
+                }
+                return content;
+            });
+        }
+
+        List<Header> conditions = new ArrayList<>(1);
+        if (cached != null) {
+            // Validators are stored as response header line, e.g. 'ETag: "abc"'
+            String[] validator = cached.getValidator().split(": ", 2);
+            if (validator.length == 2 && HttpHeaders.ETAG.equalsIgnoreCase(validator[0])) {
+                conditions.add(new BasicHeader(HttpHeaders.IF_NONE_MATCH, validator[1]));
+            } else if (validator.length == 2 && HttpHeaders.LAST_MODIFIED.equalsIgnoreCase(validator[0])) {
+                conditions.add(new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, validator[1]));
+            }
+        }
+        return handle(webApiClient.getAsync(documentPath(qid), conditions.toArray(new Header[conditions.size()])),
+                response -> {
+                    int status = response.getStatus();
+                    if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                        documentCache.recordHit();
+                        return cached.getContent();
+                    }
+                    if (status != HttpStatus.SC_OK) {
+                        throw new Exception(response.getReason());
+                    }
+                    documentCache.recordMiss();
+                    byte[] content = response.getBody();
+                    Header validator = response.getFirstHeader(HttpHeaders.ETAG);
+                    if (validator == null) {
+                        validator = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                    }
+                    if (validator != null) {
+                        documentCache.put(documentId, validator.getName() + ": " + validator.getValue(), content);
+                    } else if (cached != null) {
+                        documentCache.remove(documentId);
+                    }
+                    return content;
+                });
+    }
+
+    private interface ResponseHandler<T> {
+        T handle(Opus4WebApiClient.Response response) throws Exception;
+    }
+
+    private interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private static <T> CompletableFuture<T> handle(CompletableFuture<Opus4WebApiClient.Response> response,
+                                                   ResponseHandler<T> handler) {
+        return response.thenApply(r -> {
+            try {
+                return handler.handle(r);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
-        HttpResponse response = httpClient.execute(request);
+    private static <T> CompletableFuture<T> completed(Loader<T> loader) {
+        try {
+            return CompletableFuture.completedFuture(loader.load());
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
 
-        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-            return OpusDocument.Factory.parse(response.getEntity().getContent());
-        } else {
-            String reason = response.getStatusLine().getReasonPhrase();
-            EntityUtils.consume(response.getEntity());
-            throw new Exception(reason);
+    private static <T> CompletableFuture<T> failed(Exception e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private String serverDateModified(int documentId) throws SQLException {
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare("select server_date_modified from documents where id=?");
+            stmt.setInt(1, documentId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
         }
     }
 
+    private String documentPath(Opus4ResourceID qid) {
+        return WEBAPI_DOCUMENT_RESOURCE_PATH + "/" + qid.getIdentifier();
+    }
+
     Opus4ResourceID resolve(String pattern) throws SQLException {
+        if (urnIndex != null) {
+            int documentId = urnIndex.get(pattern);
+            return (documentId < 0) ? null : documentResourceId(documentId);
+        }
+
         Opus4ResourceID opus4ResourceID = null;
-        PreparedStatement stmt = null;
-        ResultSet resultSet = null;
-        try {
-            stmt = connection.prepareStatement("select document_id from document_identifiers where type='urn' and value=?");
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare(
+                    "select document_id from document_identifiers where type='urn' and value=?");
             stmt.setString(1, pattern);
-            resultSet = stmt.executeQuery();
-            if (resultSet.next()) {
-                opus4ResourceID = Opus4ResourceID.create(Opus4ResourceID.NS_OPUS_DOCUMENT + "/" + resultSet.getString(1));
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    opus4ResourceID = Opus4ResourceID.document(resultSet.getInt(1));
+                }
             }
-        } finally {
-            if (resultSet != null) resultSet.close();
-            if (stmt != null) stmt.close();
         }
         return opus4ResourceID;
     }
 
+    /**
+     * Resolves many URNs at once. Without a preloaded URN index, URNs are looked up in chunks
+     * of <code>qucosa.db.urn.batchSize</code> per query.
+     *
+     * @return Map of URNs to resource identifiers. Unknown URNs are not contained.
+     */
+    Map<String, Opus4ResourceID> resolveAll(Collection<String> urns) throws SQLException {
+        Map<String, Opus4ResourceID> result = new LinkedHashMap<>();
+        if (urnIndex != null) {
+            for (String urn : urns) {
+                int documentId = urnIndex.get(urn);
+                if (documentId >= 0) result.put(urn, documentResourceId(documentId));
+            }
+            return result;
+        }
+
+        List<String> chunk = new ArrayList<>(urnBatchSize);
+        for (String urn : urns) {
+            chunk.add(urn);
+            if (chunk.size() == urnBatchSize) {
+                resolveChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            resolveChunk(chunk, result);
+        }
+        return result;
+    }
+
+    /**
+     * Lists documents modified after the given mark, ordered by modification date and document ID.
+     * <p>
+     * Modification dates are stored as ISO strings with varying offsets, which don't sort by time
+     * as strings. Candidates are selected by their local date-time, which is at most 14 hours off
+     * the instant, and are parsed and compared to the mark like in {@link Opus4SqlDocumentSource}.
+     */
+    List<Opus4ChangeMark> changedSince(Opus4ChangeMark mark, int limit) throws SQLException {
+        // Keeps the earliest changes, with the latest of them at the head
+        PriorityQueue<Opus4ChangeMark> changes = new PriorityQueue<>(Collections.reverseOrder());
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare(
+                    "select id, server_date_modified from documents where server_date_modified>=?");
+            stmt.setString(1, CHANGE_CANDIDATE_FORMAT.format(mark.getModified().minus(14, ChronoUnit.HOURS)));
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    Opus4ChangeMark change;
+                    try {
+                        change = new Opus4ChangeMark(
+                                OffsetDateTime.parse(resultSet.getString(2).trim()).toInstant(), resultSet.getInt(1));
+                    } catch (DateTimeParseException e) {
+                        log.warn(String.format("Ignoring document %d with unparsable modification date: %s",
+                                resultSet.getInt(1), resultSet.getString(2)));
+                        continue;
+                    }
+                    if (change.compareTo(mark) > 0) {
+                        changes.add(change);
+                        if (changes.size() > limit) changes.poll();
+                    }
+                }
+            }
+        }
+        List<Opus4ChangeMark> ordered = new ArrayList<>(changes);
+        Collections.sort(ordered);
+        return ordered;
+    }
+
     List<Opus4ResourceID> children(Opus4ResourceID opus4ResourceID) throws SQLException {
         ArrayList<Opus4ResourceID> opus4ResourceIDs = new ArrayList<>();
-        PreparedStatement stmt = null;
-        ResultSet resultSet = null;
-        try {
-            stmt = connection.prepareStatement(
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare(
                     "select r1.name as name" +
                             " from resources r1, resources r2" +
                             " where r1.parent_id=r2.id and r2.name=?");
             stmt.setString(1, opus4ResourceID.toString());
-            resultSet = stmt.executeQuery();
-            while (resultSet.next()) {
-                opus4ResourceIDs.add(Opus4ResourceID.create(resultSet.getString("name")));
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    opus4ResourceIDs.add(Opus4ResourceID.create(resultSet.getString("name")));
+                }
             }
-        } finally {
-            if (resultSet != null) resultSet.close();
-            if (stmt != null) stmt.close();
         }
         return opus4ResourceIDs;
     }
 
     List<Opus4ResourceID> find(String pattern) throws SQLException {
         ArrayList<Opus4ResourceID> names = new ArrayList<>();
-        PreparedStatement stmt = null;
-        ResultSet resultSet = null;
-        try {
-            stmt = connection.prepareStatement("select name from resources where name like ?");
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare("select name from resources where name like ?");
             stmt.setString(1, pattern);
-            resultSet = stmt.executeQuery();
-            while (resultSet.next()) {
-                names.add(Opus4ResourceID.create(resultSet.getString("name")));
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    names.add(Opus4ResourceID.create(resultSet.getString("name")));
+                }
             }
-        } finally {
-            if (resultSet != null) resultSet.close();
-            if (stmt != null) stmt.close();
         }
         return names;
     }
 
-    void release() {
-        try {
-            if (connection != null) {
-                connection.close();
-                log.debug("Closed database connection to " + dburl);
+    /**
+     * Finds all documents in the resource tree below the given resource, following nested
+     * resources up to <code>qucosa.db.traversal.maxDepth</code> levels. Uses a recursive query
+     * if the database supports it and falls back to querying level by level otherwise. Resources
+     * are read in pages of <code>qucosa.db.traversal.pageSize</code> while the iterator is consumed,
+     * so the first documents can be processed before the whole tree has been read. Documents
+     * linked from several places in the tree are returned only once.
+     *
+     * @return Iterator over document resource identifiers
+     */
+    Iterator<Opus4ResourceID> streamDocumentsBelow(Opus4ResourceID opus4ResourceID) throws SQLException {
+        List<Integer> rootIds = resourceIds(opus4ResourceID);
+        if (recursiveQueries) {
+            Opus4DocumentTreeIterator documents = Opus4DocumentTreeIterator.recursive(
+                    connectionPool, opus4ResourceID, rootIds, maxTraversalDepth, traversalPageSize);
+            try {
+                documents.fill();
+                return documents;
+            } catch (SQLException e) {
+                // SQL state class 42 signals syntax errors, e.g. missing support for WITH RECURSIVE
+                if (e.getSQLState() == null || !e.getSQLState().startsWith("42")) throw e;
+                log.info("Database doesn't support recursive queries, traversing resources level by level: "
+                        + e.getMessage());
+                recursiveQueries = false;
             }
-        } catch (SQLException e) {
-            log.warn("Failed to close database connection: " + e.getMessage());
         }
+        return Opus4DocumentTreeIterator.byLevel(
+                connectionPool, opus4ResourceID, rootIds, maxTraversalDepth, traversalPageSize, traversalBatchSize);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+    private List<Integer> resourceIds(Opus4ResourceID resource) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare("select id from resources where name=?");
+            stmt.setString(1, resource.toString());
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void resolveChunk(List<String> chunk, Map<String, Opus4ResourceID> result) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "select value, document_id from document_identifiers where type='urn' and value in (?");
+        for (int i = 1; i < urnBatchSize; i++) {
+            sql.append(",?");
+        }
+        sql.append(")");
+
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare(sql.toString());
+            // Pad incomplete chunks with the last URN, so there is only one statement to prepare
+            for (int i = 0; i < urnBatchSize; i++) {
+                stmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    result.put(resultSet.getString(1), documentResourceId(resultSet.getInt(2)));
+                }
+            }
+        }
+    }
+
+    private Opus4UrnIndex loadUrnIndex() throws SQLException {
+        long start = System.currentTimeMillis();
+        Opus4UrnIndex index = new Opus4UrnIndex();
+        try (Opus4ConnectionPool.Lease lease = connectionPool.lease()) {
+            PreparedStatement stmt = lease.prepare(
+                    "select value, document_id from document_identifiers where type='urn'");
+            stmt.setFetchSize(10000);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    index.put(resultSet.getString(1), resultSet.getInt(2));
+                }
+            }
+        }
+        log.info(String.format("Loaded %d URNs into index in %d ms",
+                index.size(), System.currentTimeMillis() - start));
+        return index;
+    }
+
+    private Opus4ResourceID documentResourceId(int documentId) {
+        return Opus4ResourceID.document(documentId);
+    }
+
+    Opus4ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    Iterator<Opus4ResourceID> streamChildren(Opus4ResourceID opus4ResourceID, int pageSize) {
+        return new Opus4ResourceIterator(connectionPool,
+                "select r1.id as id, r1.name as name" +
+                        " from resources r1, resources r2" +
+                        " where r1.parent_id=r2.id and r2.name=? and r1.id>?" +
+                        " order by r1.id limit ?",
+                opus4ResourceID.toString(), pageSize);
+    }
+
+    Iterator<Opus4ResourceID> streamFind(String pattern, int pageSize) {
+        return new Opus4ResourceIterator(connectionPool,
+                "select id, name from resources where name like ? and id>? order by id limit ?",
+                pattern, pageSize);
+    }
+
+    Opus4DocumentCache getDocumentCache() {
+        return documentCache;
     }
 
-    private HttpClient prepareHttpClient() {
-        PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager();
-        mgr.setMaxTotal(200);
-        mgr.setDefaultMaxPerRoute(100);
-        return HttpClients.createMinimal(mgr);
+    Opus4WebApiClient getWebApiClient() {
+        return webApiClient;
     }
 
-    private Connection connectDb() throws SQLException {
-        final Connection connection = DriverManager.getConnection(dburl, user, password);
-        log.debug("Established JDBC connection to " + dburl);
-        return connection;
+    void release() {
+        if (webApiClient != null) {
+            webApiClient.close();
+            webApiClient = null;
+        }
+        if (documentCache != null) {
+            documentCache.close();
+            documentCache = null;
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        release();
+        super.finalize();
     }
 
     private String getConfigValueOrThrowException(Configuration conf, String key) throws ConfigurationException {
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for raw Opus document XML, keyed by document ID.
+ * <p>
+ * Every entry is stored in its own file together with a validator, e.g. the server modification
+ * date of the document or an HTTP <code>ETag</code>, which callers use to decide whether an
+ * entry is still fresh. The total size of all entries is bounded. When the bound is exceeded,
+ * least recently used entries are evicted. Usage order survives restarts via file modification
+ * times.
+ */
+class Opus4DocumentCache {
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final Logger log = LoggerFactory.getLogger(Opus4DocumentCache.class);
+
+    private final Path directory;
+    private final Map<Integer, Long> entrySizes = new LinkedHashMap<>(1024, 0.75f, true);
+    private final long maxBytes;
+    private long totalBytes = 0;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    Opus4DocumentCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        scan();
+    }
+
+    /**
+     * @return the cached entry or <code>null</code> if there is none
+     */
+    Entry get(int documentId) {
+        synchronized (this) {
+            // Map.get() also moves the entry to the most recently used position
+            if (entrySizes.get(documentId) == null) return null;
+        }
+        Path file = entryFile(documentId);
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int newline = indexOf(bytes, (byte) '\n');
+            if (newline < 0) {
+                throw new IOException("Missing validator line");
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(
+                    new String(bytes, 0, newline, StandardCharsets.UTF_8),
+                    Arrays.copyOfRange(bytes, newline + 1, bytes.length));
+        } catch (NoSuchFileException e) {
+            forget(documentId);
+            return null;
+        } catch (IOException e) {
+            log.warn(String.format("Dropping unreadable cache entry %s: %s", file, e.getMessage()));
+            remove(documentId);
+            return null;
+        }
+    }
+
+    void put(int documentId, String validator, byte[] content) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(content.length + 64);
+        byte[] header = (validator.replace('\n', ' ') + '\n').getBytes(StandardCharsets.UTF_8);
+        buf.write(header, 0, header.length);
+        buf.write(content, 0, content.length);
+        long size = buf.size();
+        if (size > maxBytes) {
+            log.debug(String.format("Not caching document %d of %d bytes", documentId, size));
+            return;
+        }
+
+        Path file = entryFile(documentId);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), String.valueOf(documentId), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                buf.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn(String.format("Failed to cache document %d: %s", documentId, e.getMessage()));
+            return;
+        }
+
+        List<Integer> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entrySizes.put(documentId, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<Integer, Long>> it = entrySizes.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<Integer, Long> eldest = it.next();
+                if (eldest.getKey() == documentId) continue;
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (Integer id : evicted) {
+            deleteQuietly(entryFile(id));
+        }
+        evictions.addAndGet(evicted.size());
+    }
+
+    void remove(int documentId) {
+        forget(documentId);
+        deleteQuietly(entryFile(documentId));
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    synchronized long getSizeInBytes() {
+        return totalBytes;
+    }
+
+    synchronized int getEntryCount() {
+        return entrySizes.size();
+    }
+
+    void close() {
+        log.info(String.format("Document cache: %d hits, %d misses, %d evictions, %d entries, %d bytes",
+                getHitCount(), getMissCount(), getEvictionCount(), getEntryCount(), getSizeInBytes()));
+    }
+
+    private synchronized void forget(int documentId) {
+        Long size = entrySizes.remove(documentId);
+        if (size != null) totalBytes -= size;
+    }
+
+    private Path entryFile(int documentId) {
+        return directory.resolve(String.format("%03d", documentId % 1000)).resolve(documentId + ENTRY_SUFFIX);
+    }
+
+    private void scan() throws IOException {
+        List<Object[]> found = new ArrayList<>();
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(directory)) {
+            for (Path bucket : buckets) {
+                if (!Files.isDirectory(bucket)) continue;
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(bucket, "*" + ENTRY_SUFFIX)) {
+                    for (Path entry : entries) {
+                        String name = entry.getFileName().toString();
+                        try {
+                            int documentId = Integer.parseInt(name.substring(0, name.length() - ENTRY_SUFFIX.length()));
+                            found.add(new Object[]{documentId, Files.size(entry),
+                                    Files.getLastModifiedTime(entry).toMillis()});
+                        } catch (NumberFormatException ignored) {
+                        }
+                    }
+                }
+            }
+        }
+        found.sort((a, b) -> Long.compare((Long) a[2], (Long) b[2]));
+        synchronized (this) {
+            for (Object[] f : found) {
+                entrySizes.put((Integer) f[0], (Long) f[1]);
+                totalBytes += (Long) f[1];
+            }
+        }
+        log.info(String.format("Document cache %s holds %d entries, %d bytes", directory, found.size(), totalBytes));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn(String.format("Failed to delete cache entry %s: %s", file, e.getMessage()));
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    static class Entry {
+        private final byte[] content;
+        private final String validator;
+
+        Entry(String validator, byte[] content) {
+            this.validator = validator;
+            this.content = content;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getValidator() {
+            return validator;
+        }
+    }
+
+}
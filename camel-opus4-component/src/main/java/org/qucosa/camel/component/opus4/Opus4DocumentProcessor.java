@@ -18,27 +18,99 @@
 package org.qucosa.camel.component.opus4;
 
 import noNamespace.OpusDocument;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
-import org.apache.camel.Processor;
 import org.apache.camel.spi.Registry;
+import org.apache.camel.util.AsyncProcessorHelper;
 
-public class Opus4DocumentProcessor implements Processor {
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Loads Opus documents. Documents requested from the web API are loaded asynchronously, so
+ * the routing thread is free for other exchanges until the response arrives.
+ */
+public class Opus4DocumentProcessor implements AsyncProcessor {
+
+    private final Opus4Archive archive;
+
+    public Opus4DocumentProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param archive Archive to read documents from instead of the Opus4 data source, may be <code>null</code>
+     */
+    Opus4DocumentProcessor(Opus4Archive archive) {
+        this.archive = archive;
+    }
 
     @Override
     public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        final Message msg = exchange.getIn();
+        CompletableFuture<OpusDocument> document;
+        try {
+            Opus4ResourceID res = (Opus4ResourceID) msg.getBody();
+            if (!res.isDocumentId()) {
+                callback.done(true);
+                return true;
+            }
+            document = (archive != null)
+                    ? CompletableFuture.completedFuture(fromArchive(res))
+                    : dataSource(exchange).getAsync(res);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        if (document.isDone()) {
+            // Runs right away, e.g. for documents read from the database or the cache
+            document.whenComplete((doc, error) -> complete(exchange, doc, error));
+            callback.done(true);
+            return true;
+        }
+        document.whenComplete((doc, error) -> {
+            complete(exchange, doc, error);
+            callback.done(false);
+        });
+        return false;
+    }
+
+    private OpusDocument fromArchive(Opus4ResourceID res) throws Exception {
+        byte[] xml = archive.get(res.getDocumentId());
+        if (xml == null) {
+            throw new Exception("Document not found in archive: " + res);
+        }
+        return OpusDocument.Factory.parse(new ByteArrayInputStream(xml));
+    }
+
+    private Opus4DataSource dataSource(Exchange exchange) throws Exception {
         Registry reg = exchange.getContext().getRegistry();
         Opus4DataSource repo = (Opus4DataSource) reg.lookupByName(Opus4DataSource.DATA_SOURCE_NAME);
         if (repo == null) {
             throw new Exception("No instance of " + Opus4DataSource.DATA_SOURCE_NAME
                     + " found in context registry.");
         }
+        return repo;
+    }
 
-        Message msg = exchange.getIn();
-        Opus4ResourceID res = (Opus4ResourceID) msg.getBody();
-        if (res.isDocumentId()) {
-            OpusDocument doc = repo.get(res);
-            msg.setBody(doc);
+    private static void complete(Exchange exchange, OpusDocument doc, Throwable error) {
+        if (error != null) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            exchange.setException(error);
+        } else {
+            exchange.getIn().setBody(doc);
         }
     }
 }
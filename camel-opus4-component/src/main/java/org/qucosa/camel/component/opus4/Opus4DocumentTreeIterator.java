@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Iterates over the documents in the resource tree below a resource while the tree is being read.
+ * <p>
+ * Resources are fetched page by page, using keyset pagination on the <code>id</code> column of the
+ * <code>resources</code> table, and documents are handed out as soon as their page has been read.
+ * The tree is either read with a recursive query, which is evaluated again for every page, or level
+ * by level with one paged query per chunk of parent resources. Documents linked from several places
+ * in the tree are handed out only once. A database connection is only leased while a page is being
+ * fetched.
+ */
+abstract class Opus4DocumentTreeIterator implements Iterator<Opus4ResourceID> {
+
+    private static final Logger log = LoggerFactory.getLogger(Opus4DocumentTreeIterator.class);
+
+    protected final int maxDepth;
+    protected final int pageSize;
+    protected final Opus4ConnectionPool pool;
+    protected final List<Integer> rootIds;
+    private final Opus4IdSet documentIds = new Opus4IdSet();
+    private final Queue<Opus4ResourceID> page = new ArrayDeque<>();
+    private final Opus4ResourceID root;
+    private boolean exhausted = false;
+
+    private Opus4DocumentTreeIterator(Opus4ConnectionPool pool, Opus4ResourceID root, List<Integer> rootIds,
+                                      int maxDepth, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.pool = pool;
+        this.root = root;
+        this.rootIds = rootIds;
+        this.maxDepth = maxDepth;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Reads the tree with a single recursive query per page. Root IDs and depth are inlined, since
+     * some databases (like H2) don't bind parameters inside recursive queries. UNION ALL with a depth
+     * limit is used, because not all databases allow UNION in recursive queries.
+     */
+    static Opus4DocumentTreeIterator recursive(Opus4ConnectionPool pool, Opus4ResourceID root,
+                                               List<Integer> rootIds, int maxDepth, int pageSize) {
+        return new Opus4DocumentTreeIterator(pool, root, rootIds, maxDepth, pageSize) {
+            private long lastId = Long.MIN_VALUE;
+
+            @Override
+            protected boolean fetchPage() throws SQLException {
+                if (rootIds.isEmpty()) return false;
+                StringBuilder ids = new StringBuilder();
+                for (Integer id : rootIds) {
+                    if (ids.length() > 0) ids.append(',');
+                    ids.append(id);
+                }
+                String sql = "with recursive tree(id, name, depth) as (" +
+                        " select id, name, 0 from resources where id in (" + ids + ")" +
+                        " union all" +
+                        " select r.id, r.name, t.depth+1 from resources r join tree t on r.parent_id=t.id" +
+                        " where t.depth<" + maxDepth + ")" +
+                        " select distinct id, name from tree where depth>0 and id>" + lastId +
+                        " order by id limit " + pageSize;
+
+                int count = 0;
+                try (Opus4ConnectionPool.Lease lease = pool.lease();
+                     Statement stmt = lease.createStatement();
+                     ResultSet resultSet = stmt.executeQuery(sql)) {
+                    while (resultSet.next()) {
+                        lastId = resultSet.getLong(1);
+                        addIfDocument(resultSet.getString(2));
+                        count++;
+                    }
+                }
+                return count == pageSize;
+            }
+        };
+    }
+
+    /**
+     * Reads the tree level by level, querying the children of up to <code>batchSize</code> parent
+     * resources at once. Only the IDs of resources that aren't documents are kept for the next level.
+     */
+    static Opus4DocumentTreeIterator byLevel(Opus4ConnectionPool pool, Opus4ResourceID root,
+                                             List<Integer> rootIds, int maxDepth, int pageSize,
+                                             final int batchSize) {
+        return new Opus4DocumentTreeIterator(pool, root, rootIds, maxDepth, pageSize) {
+            private final Opus4IdSet visited = new Opus4IdSet();
+            private int chunkStart = 0;
+            private int depth = 0;
+            private long lastId = Long.MIN_VALUE;
+            private List<Integer> level = rootIds;
+            private List<Integer> nextLevel = new ArrayList<>();
+            private String sql;
+
+            @Override
+            protected boolean fetchPage() throws SQLException {
+                if (sql == null) {
+                    for (Integer id : rootIds) {
+                        visited.add(id);
+                    }
+                    StringBuilder sb = new StringBuilder("select id, name from resources where parent_id in (?");
+                    for (int i = 1; i < batchSize; i++) {
+                        sb.append(",?");
+                    }
+                    sql = sb.append(") and id>? order by id limit ?").toString();
+                }
+                if (chunkStart >= level.size()) {
+                    level = nextLevel;
+                    nextLevel = new ArrayList<>();
+                    chunkStart = 0;
+                    depth++;
+                }
+                if (level.isEmpty() || depth >= maxDepth) return false;
+
+                List<Integer> chunk = level.subList(chunkStart, Math.min(level.size(), chunkStart + batchSize));
+                int count = 0;
+                try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+                    PreparedStatement stmt = lease.prepare(sql);
+                    // Pad incomplete chunks with the last ID, so there is only one statement to prepare
+                    for (int i = 0; i < batchSize; i++) {
+                        stmt.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    stmt.setLong(batchSize + 1, lastId);
+                    stmt.setInt(batchSize + 2, pageSize);
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        while (resultSet.next()) {
+                            int id = resultSet.getInt(1);
+                            lastId = id;
+                            count++;
+                            if (visited.add(id) && !addIfDocument(resultSet.getString(2))) {
+                                nextLevel.add(id);
+                            }
+                        }
+                    }
+                }
+                if (count < pageSize) {
+                    chunkStart += batchSize;
+                    lastId = Long.MIN_VALUE;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Reads pages until there is a document to hand out or the tree has been read completely.
+     */
+    void fill() throws SQLException {
+        while (page.isEmpty() && !exhausted) {
+            exhausted = !fetchPage();
+            if (exhausted) {
+                log.debug(String.format("Found %d documents below %s", documentIds.size(), root));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            fill();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read resource tree below " + root, e);
+        }
+        return !page.isEmpty();
+    }
+
+    @Override
+    public Opus4ResourceID next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.remove();
+    }
+
+    /**
+     * Fetches the next page of resources and queues the documents not handed out before.
+     *
+     * @return false if there are no more pages to fetch
+     */
+    protected abstract boolean fetchPage() throws SQLException;
+
+    protected boolean addIfDocument(String name) {
+        Opus4ResourceID id = Opus4ResourceID.create(name);
+        if (id.isDocumentId()) {
+            if (documentIds.add(id.getDocumentId())) {
+                page.add(id);
+            }
+            return true;
+        }
+        return false;
+    }
+
+}
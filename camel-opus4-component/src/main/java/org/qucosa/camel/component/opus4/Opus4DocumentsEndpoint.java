@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Component;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.impl.ProcessorEndpoint;
+
+/**
+ * Endpoint loading Opus documents. Its producer passes the routing callback on to the
+ * {@link Opus4DocumentProcessor}, so routes continue when a document has been loaded instead of
+ * blocking a thread while waiting for the web API.
+ * <p>
+ * URI format: <code>opus4:documents</code> or <code>opus4:documents?archive=opus.arc</code>
+ */
+public class Opus4DocumentsEndpoint extends ProcessorEndpoint {
+
+    private final Opus4DocumentProcessor processor;
+
+    Opus4DocumentsEndpoint(String uri, Component component, Opus4DocumentProcessor processor) {
+        super(uri, component, processor);
+        this.processor = processor;
+    }
+
+    @Override
+    public Producer createProducer() throws Exception {
+        return new DefaultAsyncProducer(this) {
+            @Override
+            public boolean process(Exchange exchange, AsyncCallback callback) {
+                return processor.process(exchange, callback);
+            }
+        };
+    }
+}
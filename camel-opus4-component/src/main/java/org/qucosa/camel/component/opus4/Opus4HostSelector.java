@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributes requests across replicas of the Opus4 web API.
+ * <p>
+ * Each request goes to a randomly chosen admitted host. The chance of a host is inversely
+ * proportional to the product of its outstanding requests and its average latency, so faster and
+ * less busy replicas get proportionally more load while every replica keeps being sampled.
+ * <p>
+ * A host is ejected after a number of consecutive failures, or when its average latency exceeds
+ * the given factor of the fastest host's latency. Ejected hosts are re-admitted after an ejection
+ * period that doubles with every further ejection, up to 32 times the base period. If all hosts
+ * are ejected, the host due for re-admission first is used anyway.
+ */
+class Opus4HostSelector {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final int MAX_EJECTION_BACKOFF = 5;
+    private static final int MIN_SAMPLES_FOR_SLOW_EJECTION = 10;
+    private static final int SAMPLES_FOR_RECOVERY = 100;
+    private static final Logger log = LoggerFactory.getLogger(Opus4HostSelector.class);
+
+    private final long ejectionMillis;
+    private final List<Host> hosts;
+    private final int maxFailures;
+    private final double slowFactor;
+
+    /**
+     * @param maxFailures    Consecutive failures after which a host is ejected
+     * @param ejectionMillis Base ejection period
+     * @param slowFactor     Latency relative to the fastest host after which a host is ejected, 0 disables
+     */
+    Opus4HostSelector(List<String> urls, int maxFailures, long ejectionMillis, double slowFactor) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("No hosts given");
+        }
+        List<Host> list = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            list.add(new Host(url));
+        }
+        this.hosts = Collections.unmodifiableList(list);
+        this.maxFailures = maxFailures;
+        this.ejectionMillis = ejectionMillis;
+        this.slowFactor = slowFactor;
+    }
+
+    /**
+     * Selects a host and counts a request as outstanding on it. Every call has to be followed
+     * by exactly one call of {@link #succeeded} or {@link #failed}, or {@link #released}.
+     *
+     * @param exclude Host to avoid if another one is admitted, may be <code>null</code>
+     */
+    Host acquire(Host exclude) {
+        long now = System.currentTimeMillis();
+        double[] weights = new double[hosts.size()];
+        double total = 0;
+        Host fallback = null;
+        double unknownLatency = averageLatency();
+        for (int i = 0; i < weights.length; i++) {
+            Host host = hosts.get(i);
+            if (host.ejectedUntil > now) {
+                if (fallback == null || host.ejectedUntil < fallback.ejectedUntil) fallback = host;
+                continue;
+            }
+            if (host == exclude) continue;
+            double latency = (host.samples == 0) ? unknownLatency : host.latency;
+            weights[i] = 1 / ((host.outstanding.get() + 1) * Math.max(1, latency));
+            total += weights[i];
+        }
+
+        Host selected = null;
+        if (total > 0) {
+            double r = ThreadLocalRandom.current().nextDouble(total);
+            for (int i = 0; i < weights.length && selected == null; i++) {
+                r -= weights[i];
+                if (weights[i] > 0 && r < 0) selected = hosts.get(i);
+            }
+            if (selected == null) {
+                // Rounding errors, pick the last candidate
+                for (int i = weights.length - 1; selected == null; i--) {
+                    if (weights[i] > 0) selected = hosts.get(i);
+                }
+            }
+        } else {
+            selected = (exclude != null && exclude.ejectedUntil <= now) ? exclude : fallback;
+        }
+        selected.admitIfDue(now);
+        selected.outstanding.incrementAndGet();
+        return selected;
+    }
+
+    void succeeded(Host host, long latencyMillis) {
+        host.outstanding.decrementAndGet();
+        synchronized (host) {
+            host.failures = 0;
+            if (host.samples >= SAMPLES_FOR_RECOVERY) host.ejections = 0;
+            host.latency = (host.samples == 0) ? latencyMillis
+                    : LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * host.latency;
+            host.samples++;
+        }
+        if (slowFactor > 0 && hosts.size() > 1 && host.samples >= MIN_SAMPLES_FOR_SLOW_EJECTION) {
+            double fastest = fastestLatency();
+            if (host.latency > slowFactor * Math.max(1, fastest)) {
+                eject(host, String.format("average latency %.0f ms, fastest host %.0f ms", host.latency, fastest));
+            }
+        }
+    }
+
+    void failed(Host host, String reason) {
+        host.outstanding.decrementAndGet();
+        boolean eject;
+        synchronized (host) {
+            eject = ++host.failures >= maxFailures;
+        }
+        if (eject) {
+            eject(host, String.format("%d consecutive failures, last: %s", host.failures, reason));
+        }
+    }
+
+    /**
+     * Ends a request whose outcome says nothing about the host, e.g. a cancelled hedge.
+     */
+    void released(Host host) {
+        host.outstanding.decrementAndGet();
+    }
+
+    List<Host> getHosts() {
+        return hosts;
+    }
+
+    int size() {
+        return hosts.size();
+    }
+
+    /**
+     * Hosts without latency samples are assumed to be as fast as the average host.
+     */
+    private double averageLatency() {
+        double sum = 0;
+        int count = 0;
+        for (Host h : hosts) {
+            if (h.samples > 0) {
+                sum += h.latency;
+                count++;
+            }
+        }
+        return (count == 0) ? 1 : sum / count;
+    }
+
+    private double fastestLatency() {
+        double fastest = Double.MAX_VALUE;
+        for (Host h : hosts) {
+            if (h.samples > 0 && h.ejectedUntil <= System.currentTimeMillis()) {
+                fastest = Math.min(fastest, h.latency);
+            }
+        }
+        return fastest;
+    }
+
+    private void eject(Host host, String reason) {
+        long until;
+        synchronized (host) {
+            if (host.ejectedUntil > System.currentTimeMillis()) return;
+            if (admittedCount() <= 1) return;
+            until = System.currentTimeMillis() + (ejectionMillis << Math.min(host.ejections, MAX_EJECTION_BACKOFF));
+            host.ejectedUntil = until;
+            host.ejections++;
+            host.ejectionCount.incrementAndGet();
+            host.failures = 0;
+        }
+        log.warn(String.format("Ejecting %s for %d ms: %s", host.url, until - System.currentTimeMillis(), reason));
+    }
+
+    private int admittedCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Host h : hosts) {
+            if (h.ejectedUntil <= now) count++;
+        }
+        return count;
+    }
+
+    /**
+     * A replica of the Opus4 web API and its observed behaviour.
+     */
+    static class Host {
+        private final AtomicInteger ejectionCount = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final String url;
+
+        private volatile long ejectedUntil = 0;
+        private int ejections = 0;
+        private int failures = 0;
+        private volatile double latency = 0;
+        private volatile long samples = 0;
+
+        Host(String url) {
+            this.url = url;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        int getOutstanding() {
+            return outstanding.get();
+        }
+
+        int getRequestCount() {
+            return requests.get();
+        }
+
+        int getEjectionCount() {
+            return ejectionCount.get();
+        }
+
+        boolean isEjected() {
+            return ejectedUntil > System.currentTimeMillis();
+        }
+
+        private synchronized void admitIfDue(long now) {
+            requests.incrementAndGet();
+            if (ejectedUntil != 0 && ejectedUntil <= now) {
+                ejectedUntil = 0;
+                // Start over on probation, keeping the ejection count for backoff
+                samples = 0;
+                latency = 0;
+                log.info(String.format("Re-admitting %s", url));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+}
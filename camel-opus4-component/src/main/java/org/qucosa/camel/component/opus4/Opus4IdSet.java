@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compact set of non-negative int IDs, e.g. Opus document IDs.
+ * <p>
+ * IDs are grouped into chunks of 65536 by their upper 16 bits. A chunk holds its lower 16 bits in
+ * a sorted <code>char</code> array while it is sparse, and switches to an 8 KiB bitmap once it
+ * holds more than {@value #MAX_ARRAY_CARDINALITY} IDs. A million sparse IDs take 2 to 4 MB, a
+ * million dense IDs about 128 KB, instead of the ~50 MB of a <code>HashSet</code> of boxed integers.
+ * Iteration is in ascending order.
+ * <p>
+ * Instances are not safe for concurrent modification.
+ */
+public class Opus4IdSet implements Iterable<Integer> {
+
+    private static final int BITMAP_WORDS = 1024;
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private int[] cardinalities = new int[4];
+    private int chunkCount = 0;
+    private Object[] chunks = new Object[4];
+    private char[] keys = new char[4];
+    private int size = 0;
+
+    /**
+     * @return <code>true</code> if the set didn't contain the ID before
+     */
+    public boolean add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative ID: " + id);
+        }
+        char key = (char) (id >>> 16);
+        char low = (char) id;
+        int c = chunkIndex(key);
+        if (c < 0) {
+            c = insertChunk(-c - 1, key);
+        }
+        Object chunk = chunks[c];
+        if (chunk instanceof long[]) {
+            long[] bitmap = (long[]) chunk;
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) return false;
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = (char[]) chunk;
+            int n = cardinalities[c];
+            int i = Arrays.binarySearch(array, 0, n, low);
+            if (i >= 0) return false;
+            i = -i - 1;
+            if (n == MAX_ARRAY_CARDINALITY) {
+                long[] bitmap = toBitmap(array, n);
+                bitmap[low >>> 6] |= 1L << low;
+                chunks[c] = bitmap;
+            } else {
+                if (n == array.length) {
+                    array = Arrays.copyOf(array, Math.min(MAX_ARRAY_CARDINALITY, n * 2));
+                    chunks[c] = array;
+                }
+                System.arraycopy(array, i, array, i + 1, n - i);
+                array[i] = low;
+            }
+        }
+        cardinalities[c]++;
+        size++;
+        return true;
+    }
+
+    public boolean contains(int id) {
+        if (id < 0) return false;
+        int c = chunkIndex((char) (id >>> 16));
+        if (c < 0) return false;
+        char low = (char) id;
+        Object chunk = chunks[c];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, cardinalities[c], low) >= 0;
+    }
+
+    /**
+     * @return <code>true</code> if the set contained the ID
+     */
+    public boolean remove(int id) {
+        if (id < 0) return false;
+        int c = chunkIndex((char) (id >>> 16));
+        if (c < 0) return false;
+        char low = (char) id;
+        Object chunk = chunks[c];
+        if (chunk instanceof long[]) {
+            long[] bitmap = (long[]) chunk;
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) return false;
+            bitmap[low >>> 6] &= ~bit;
+            if (cardinalities[c] - 1 == MAX_ARRAY_CARDINALITY) {
+                chunks[c] = toArray(bitmap, MAX_ARRAY_CARDINALITY);
+            }
+        } else {
+            char[] array = (char[]) chunk;
+            int n = cardinalities[c];
+            int i = Arrays.binarySearch(array, 0, n, low);
+            if (i < 0) return false;
+            System.arraycopy(array, i + 1, array, i, n - i - 1);
+        }
+        size--;
+        if (--cardinalities[c] == 0) {
+            removeChunk(c);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(chunks, 0, chunkCount, null);
+        chunkCount = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the approximate heap usage of the set's contents in bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = keys.length * 2L + cardinalities.length * 4L + chunks.length * 8L;
+        for (int c = 0; c < chunkCount; c++) {
+            bytes += 16 + ((chunks[c] instanceof long[]) ? BITMAP_WORDS * 8L : ((char[]) chunks[c]).length * 2L);
+        }
+        return bytes;
+    }
+
+    /**
+     * Iterates the IDs in ascending order.
+     */
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int chunk = 0;
+            private int position = -1;
+            private int next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                int id = next;
+                next = advance();
+                return id;
+            }
+
+            private int advance() {
+                while (chunk < chunkCount) {
+                    Object c = chunks[chunk];
+                    if (c instanceof long[]) {
+                        int low = nextSetBit((long[]) c, position + 1);
+                        if (low >= 0) {
+                            position = low;
+                            return (keys[chunk] << 16) | low;
+                        }
+                    } else if (position + 1 < cardinalities[chunk]) {
+                        position++;
+                        return (keys[chunk] << 16) | ((char[]) c)[position];
+                    }
+                    chunk++;
+                    position = -1;
+                }
+                return -1;
+            }
+        };
+    }
+
+    private int chunkIndex(char key) {
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private int insertChunk(int c, char key) {
+        if (chunkCount == keys.length) {
+            int capacity = chunkCount * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, c, keys, c + 1, chunkCount - c);
+        System.arraycopy(chunks, c, chunks, c + 1, chunkCount - c);
+        System.arraycopy(cardinalities, c, cardinalities, c + 1, chunkCount - c);
+        keys[c] = key;
+        chunks[c] = new char[4];
+        cardinalities[c] = 0;
+        chunkCount++;
+        return c;
+    }
+
+    private void removeChunk(int c) {
+        System.arraycopy(keys, c + 1, keys, c, chunkCount - c - 1);
+        System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+        System.arraycopy(cardinalities, c + 1, cardinalities, c, chunkCount - c - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+
+    private static long[] toBitmap(char[] array, int n) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < n; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+
+    private static char[] toArray(long[] bitmap, int cardinality) {
+        char[] array = new char[cardinality];
+        int n = 0;
+        for (int low = nextSetBit(bitmap, 0); low >= 0; low = nextSetBit(bitmap, low + 1)) {
+            array[n++] = (char) low;
+        }
+        return array;
+    }
+
+    private static int nextSetBit(long[] bitmap, int from) {
+        int word = from >>> 6;
+        if (word >= BITMAP_WORDS) return -1;
+        long bits = bitmap[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == BITMAP_WORDS) return -1;
+            bits = bitmap[word];
+        }
+    }
+
+}
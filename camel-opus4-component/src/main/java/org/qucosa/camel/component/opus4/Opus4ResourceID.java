@@ -17,62 +17,93 @@
 
 package org.qucosa.camel.component.opus4;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class Opus4ResourceID {
 
     static final String NS_OPUS_DOCUMENT = "Opus/Document";
-    private static final Pattern PATTERN = Pattern.compile(NS_OPUS_DOCUMENT + "/(\\d+)");
-    private final String identifier;
-    private final String namespace;
+    private static final String DOCUMENT_PREFIX = NS_OPUS_DOCUMENT + "/";
+    private static final int NO_DOCUMENT = -1;
+
+    private final int documentId;
+    private final int hash;
+    private final String name;
 
-    private Opus4ResourceID(String namespace, String id) {
-        this.namespace = namespace;
-        this.identifier = id;
+    private Opus4ResourceID(String name, int documentId) {
+        this.name = name;
+        this.documentId = documentId;
+        this.hash = (name == null) ? documentId : name.hashCode();
     }
 
     @Override
     public String toString() {
-        return (namespace.isEmpty()) ? identifier : NS_OPUS_DOCUMENT + "/" + identifier;
+        return (name == null) ? DOCUMENT_PREFIX + documentId : name;
     }
 
     public String getIdentifier() {
-        return identifier;
+        return (name == null) ? String.valueOf(documentId) : name;
+    }
+
+    /**
+     * @return the numeric document ID
+     * @throws IllegalStateException if this doesn't identify a document
+     */
+    public int getDocumentId() {
+        if (name != null) {
+            throw new IllegalStateException("Not a document resource identifier: " + name);
+        }
+        return documentId;
     }
 
     public boolean isDocumentId() {
-        return (!namespace.isEmpty());
+        return (name == null);
     }
 
     @Override
     public boolean equals(Object obj) {
-        return (obj instanceof Opus4ResourceID) && (toString().equals(obj.toString()));
+        if (this == obj) return true;
+        if (!(obj instanceof Opus4ResourceID)) return false;
+        Opus4ResourceID other = (Opus4ResourceID) obj;
+        return hash == other.hash && documentId == other.documentId
+                && (name == null ? other.name == null : name.equals(other.name));
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
+    }
+
+    static Opus4ResourceID document(int documentId) {
+        if (documentId < 0) {
+            throw new IllegalArgumentException("Not a valid Opus document ID: " + documentId);
+        }
+        return new Opus4ResourceID(null, documentId);
     }
 
     static Opus4ResourceID create(String resourceId) {
         if (resourceId == null || resourceId.isEmpty()) {
             throw new IllegalArgumentException("Not a valid Opus resource identifier: " + resourceId);
         }
-
-        String ns, id;
         if (resourceId.startsWith(NS_OPUS_DOCUMENT)) {
-            Matcher m = PATTERN.matcher(resourceId);
-            if (!m.matches()) {
+            int documentId = parseDocumentId(resourceId);
+            if (documentId == NO_DOCUMENT) {
                 throw new IllegalArgumentException("Not a valid Opus document resource identifier: " + resourceId);
             }
-            ns = NS_OPUS_DOCUMENT;
-            id = m.group(1);
-        } else {
-            ns = "";
-            id = resourceId;
+            return new Opus4ResourceID(null, documentId);
         }
+        return new Opus4ResourceID(resourceId, NO_DOCUMENT);
+    }
 
-        return new Opus4ResourceID(ns, id);
+    private static int parseDocumentId(String resourceId) {
+        int length = resourceId.length();
+        if (length <= DOCUMENT_PREFIX.length() || resourceId.charAt(DOCUMENT_PREFIX.length() - 1) != '/') {
+            return NO_DOCUMENT;
+        }
+        long value = 0;
+        for (int i = DOCUMENT_PREFIX.length(); i < length; i++) {
+            char c = resourceId.charAt(i);
+            if (c < '0' || c > '9') return NO_DOCUMENT;
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) return NO_DOCUMENT;
+        }
+        return (int) value;
     }
 }
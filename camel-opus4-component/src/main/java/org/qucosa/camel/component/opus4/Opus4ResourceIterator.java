@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Iterates over the result of a resource query page by page, using keyset pagination on
+ * the <code>id</code> column of the <code>resources</code> table.
+ * <p>
+ * The query has to select <code>id</code> and <code>name</code> columns and take three
+ * parameters: the query argument, the last seen <code>id</code> and the page size, e.g.
+ * <code>select id, name from resources where name like ? and id &gt; ? order by id limit ?</code>.
+ * A database connection is only leased while a page is being fetched.
+ */
+class Opus4ResourceIterator implements Iterator<Opus4ResourceID> {
+
+    private final String argument;
+    private final Queue<Opus4ResourceID> page = new ArrayDeque<>();
+    private final int pageSize;
+    private final Opus4ConnectionPool pool;
+    private final String sql;
+    private boolean exhausted = false;
+    private long lastId = Long.MIN_VALUE;
+
+    Opus4ResourceIterator(Opus4ConnectionPool pool, String sql, String argument, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.pool = pool;
+        this.sql = sql;
+        this.argument = argument;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page.isEmpty() && !exhausted) {
+            try {
+                fetchNextPage();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to fetch resources after id " + lastId, e);
+            }
+        }
+        return !page.isEmpty();
+    }
+
+    @Override
+    public Opus4ResourceID next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.remove();
+    }
+
+    private void fetchNextPage() throws SQLException {
+        int count = 0;
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(sql);
+            stmt.setString(1, argument);
+            stmt.setLong(2, lastId);
+            stmt.setInt(3, pageSize);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    lastId = resultSet.getLong("id");
+                    page.add(Opus4ResourceID.create(resultSet.getString("name")));
+                    count++;
+                }
+            }
+        }
+        exhausted = (count < pageSize);
+    }
+
+}
@@ -25,6 +25,36 @@ import org.apache.camel.spi.Registry;
 import java.util.List;
 
 public class Opus4ResourcesProcessor implements Processor {
+
+    private final int pageSize;
+    private final boolean recursive;
+    private final boolean streaming;
+
+    public Opus4ResourcesProcessor() {
+        this(false, 0);
+    }
+
+    /**
+     * @param streaming If true, the resulting message body is an iterator that fetches resource
+     *                  identifiers page by page while being consumed. Otherwise it is a list of
+     *                  all resource identifiers.
+     * @param pageSize  Number of resource identifiers fetched per database round-trip in streaming mode.
+     */
+    public Opus4ResourcesProcessor(boolean streaming, int pageSize) {
+        this(streaming, pageSize, false);
+    }
+
+    /**
+     * @param recursive If true, the resulting message body is an iterator over all documents in the
+     *                  resource tree below the given resource, without duplicates. The tree is read
+     *                  page by page while the iterator is consumed. Other options are ignored.
+     */
+    public Opus4ResourcesProcessor(boolean streaming, int pageSize, boolean recursive) {
+        this.streaming = streaming;
+        this.pageSize = pageSize;
+        this.recursive = recursive;
+    }
+
     @Override
     public void process(Exchange exchange) throws Exception {
         Registry reg = exchange.getContext().getRegistry();
@@ -36,8 +66,14 @@ public class Opus4ResourcesProcessor implements Processor {
 
         Message msg = exchange.getIn();
         Opus4ResourceID res = (Opus4ResourceID) msg.getBody();
-        List<Opus4ResourceID> resourceIDs = repo.children(res);
-        msg.setBody(resourceIDs);
+        if (recursive) {
+            msg.setBody(repo.streamDocumentsBelow(res));
+        } else if (streaming) {
+            msg.setBody(repo.streamChildren(res, pageSize));
+        } else {
+            List<Opus4ResourceID> resourceIDs = repo.children(res);
+            msg.setBody(resourceIDs);
+        }
     }
 }
 
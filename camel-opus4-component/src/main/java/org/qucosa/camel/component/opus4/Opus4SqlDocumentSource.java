@@ -0,0 +1,555 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import noNamespace.OpusDocument;
+import org.apache.xmlbeans.XmlCursor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Builds Qucosa XML documents directly from the Opus4 database instead of requesting
+ * them from the Opus4 web API.
+ * <p>
+ * Every table is queried for many documents at once using <code>document_id in (...)</code>
+ * lists. Concurrent calls to {@link #get(int)} are collected for a short time window and
+ * loaded together, so parallel routes share set-based queries.
+ * <p>
+ * Licences and patents are not exported by this source.
+ */
+class Opus4SqlDocumentSource {
+
+    private static final String[] DOCUMENT_COLUMNS = {
+            "CompletedDate", "completed_date",
+            "CompletedYear", "completed_year",
+            "ContributingCorporation", "contributing_corporation",
+            "CreatingCorporation", "creating_corporation",
+            "DateAccepted", "date_accepted",
+            "Edition", "edition",
+            "Issue", "issue",
+            "Language", "language",
+            "NonInstituteAffiliation", "non_institute_affiliation",
+            "PageFirst", "page_first",
+            "PageLast", "page_last",
+            "PageNumber", "page_number",
+            "PublicationVersion", "publication_version",
+            "PublishedDate", "published_date",
+            "PublishedYear", "published_year",
+            "PublisherName", "publisher_name",
+            "PublisherPlace", "publisher_place",
+            "PublisherAddress", "publisher_address",
+            "PublisherUniversity", "publisher_university",
+            "Reviewed", "reviewed",
+            "ServerDateModified", "server_date_modified",
+            "ServerDatePublished", "server_date_published",
+            "ServerDateUnlocking", "server_date_unlocking",
+            "ServerDateValid", "server_date_valid",
+            "ServerState", "server_state",
+            "Source", "source",
+            "Type", "type",
+            "VgWortOpenKey", "vg_wort_open_key",
+            "Volume", "volume",
+            "FisExport", "fis_export",
+            "TableOfContent", "table_of_content"};
+
+    private static final List<String> DATE_ELEMENTS = Arrays.asList(
+            "CompletedDate", "DateAccepted", "PublishedDate",
+            "ServerDateModified", "ServerDatePublished", "ServerDateUnlocking", "ServerDateValid");
+
+    private static final Map<String, String> TITLE_TYPES = unmodifiableMap(new LinkedHashMap<String, String>() {{
+        put("main", "TitleMain");
+        put("abstract", "TitleAbstract");
+        put("parent", "TitleParent");
+        put("sub", "TitleSub");
+        put("additional", "TitleAlternative");
+    }});
+
+    private static final Map<String, String> IDENTIFIER_TYPES = unmodifiableMap(new LinkedHashMap<String, String>() {{
+        put("isbn", "Isbn");
+        put("urn", "Urn");
+        put("doi", "Doi");
+        put("handle", "Handle");
+        put("url", "Url");
+        put("issn", "Issn");
+        put("std-doi", "StdDoi");
+        put("cris-link", "CrisLink");
+        put("splash-url", "SplashUrl");
+        put("opus3-id", "Opus3");
+        put("opac-id", "Opac");
+        put("deds", "Deds");
+        put("dol", "Dol");
+        put("monarch", "Monarch");
+        put("ppn", "Ppn");
+        put("uncontrolled", "Uncontrolled");
+    }});
+
+    private static final Map<String, String> PERSON_ROLES = unmodifiableMap(new LinkedHashMap<String, String>() {{
+        put("advisor", "PersonAdvisor");
+        put("author", "PersonAuthor");
+        put("contributor", "PersonContributor");
+        put("editor", "PersonEditor");
+        put("referee", "PersonReferee");
+        put("other", "PersonOther");
+        put("translator", "PersonTranslator");
+        put("submitter", "PersonSubmitter");
+        put("publisher", "PersonPublisher");
+    }});
+
+    private static final Map<String, String> SUBJECT_TYPES = unmodifiableMap(new LinkedHashMap<String, String>() {{
+        put("ddc", "SubjectDdc");
+        put("swd", "SubjectSwd");
+        put("psyndex", "SubjectPsyndex");
+        put("rvk", "SubjectRvk");
+        put("uncontrolled", "SubjectUncontrolled");
+    }});
+
+    private static final List<String> ELEMENT_ORDER = new ArrayList<String>() {{
+        addAll(TITLE_TYPES.values());
+        for (String type : IDENTIFIER_TYPES.values()) {
+            if (!"Uncontrolled".equals(type)) add("Identifier" + type);
+        }
+        for (String type : IDENTIFIER_TYPES.values()) {
+            if (!Arrays.asList("Opus3", "Opac", "Deds", "Dol", "Monarch", "Ppn").contains(type)) {
+                add("Reference" + type);
+            }
+        }
+        add("Note");
+        addAll(PERSON_ROLES.values());
+        addAll(SUBJECT_TYPES.values());
+        add("File");
+        add("Organisation");
+    }};
+
+    private final int batchSize;
+    private final long batchWindowMillis;
+    private final Opus4ConnectionPool pool;
+    private final Object lock = new Object();
+    private Map<Integer, CompletableFuture<OpusDocument>> pending = new LinkedHashMap<>();
+
+    Opus4SqlDocumentSource(Opus4ConnectionPool pool, int batchSize, long batchWindowMillis) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * Loads a single document. The calling thread either waits for a batch loaded by another
+     * thread or collects concurrent requests for up to the batch window and loads them itself.
+     */
+    OpusDocument get(int documentId) throws Exception {
+        CompletableFuture<OpusDocument> future;
+        Map<Integer, CompletableFuture<OpusDocument>> batch = null;
+
+        synchronized (lock) {
+            future = pending.get(documentId);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(documentId, future);
+                if (pending.size() == 1) {
+                    batch = pending;
+                } else if (pending.size() >= batchSize) {
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        if (batch != null) {
+            collectAndLoad(batch);
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Loads many documents with one query per table and chunk of <code>batchSize</code> documents.
+     *
+     * @return Map of document IDs to documents. IDs of documents that don't exist are not contained.
+     */
+    Map<Integer, OpusDocument> load(Collection<Integer> documentIds) throws SQLException {
+        Map<Integer, OpusDocument> result = new LinkedHashMap<>();
+        List<Integer> chunk = new ArrayList<>(batchSize);
+        for (Integer id : documentIds) {
+            chunk.add(id);
+            if (chunk.size() == batchSize) {
+                result.putAll(loadChunk(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.putAll(loadChunk(chunk));
+        }
+        return result;
+    }
+
+    private void collectAndLoad(Map<Integer, CompletableFuture<OpusDocument>> batch) {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + batchWindowMillis;
+            long remaining = batchWindowMillis;
+            while (batch.size() < batchSize && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            Map<Integer, OpusDocument> documents = load(batch.keySet());
+            for (Map.Entry<Integer, CompletableFuture<OpusDocument>> e : batch.entrySet()) {
+                OpusDocument doc = documents.get(e.getKey());
+                if (doc == null) {
+                    e.getValue().completeExceptionally(new Exception("No such Opus document: " + e.getKey()));
+                } else {
+                    e.getValue().complete(doc);
+                }
+            }
+        } catch (Throwable t) {
+            for (CompletableFuture<OpusDocument> f : batch.values()) {
+                f.completeExceptionally(t);
+            }
+        }
+    }
+
+    private Map<Integer, OpusDocument> loadChunk(List<Integer> ids) throws SQLException {
+        Map<Integer, Element> documents = new LinkedHashMap<>();
+        Map<Integer, Map<String, List<Element>>> children = new HashMap<>();
+
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            StringBuilder columns = new StringBuilder("id");
+            for (int i = 1; i < DOCUMENT_COLUMNS.length; i += 2) {
+                columns.append(", ").append(DOCUMENT_COLUMNS[i]);
+            }
+            try (ResultSet rs = query(lease, "select " + columns + " from documents where id in (%s)", ids)) {
+                while (rs.next()) {
+                    Element doc = new Element("Opus_Document");
+                    for (int i = 0; i < DOCUMENT_COLUMNS.length; i += 2) {
+                        String name = DOCUMENT_COLUMNS[i];
+                        String value = rs.getString(DOCUMENT_COLUMNS[i + 1]);
+                        doc.add(DATE_ELEMENTS.contains(name) ? date(name, value) : new Element(name, value));
+                    }
+                    documents.put(rs.getInt("id"), doc);
+                    children.put(rs.getInt("id"), new HashMap<>());
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, type, language, value, sort_order from document_title_abstracts" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    String name = TITLE_TYPES.get(rs.getString("type"));
+                    if (name == null) continue;
+                    add(children, rs.getInt("document_id"), new Element(name)
+                            .add("Language", rs.getString("language"))
+                            .add("Value", rs.getString("value"))
+                            .add("SortOrder", rs.getString("sort_order")));
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, type, value from document_identifiers" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    String type = IDENTIFIER_TYPES.get(rs.getString("type"));
+                    if (type == null || "Uncontrolled".equals(type)) continue;
+                    add(children, rs.getInt("document_id"), new Element("Identifier" + type)
+                            .add("Value", rs.getString("value")));
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, type, value, label, relation, sort_order from document_references" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    String type = IDENTIFIER_TYPES.get(rs.getString("type"));
+                    if (type == null) continue;
+                    add(children, rs.getInt("document_id"), new Element("Reference" + type)
+                            .add("Value", rs.getString("value"))
+                            .add("Label", rs.getString("label"))
+                            .add("Relation", rs.getString("relation"))
+                            .add("SortOrder", rs.getString("sort_order")));
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, message, creator, scope from document_notes" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    add(children, rs.getInt("document_id"), new Element("Note")
+                            .add("Message", rs.getString("message"))
+                            .add("Creator", rs.getString("creator"))
+                            .add("Scope", rs.getString("scope")));
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select l.document_id, l.role, l.sort_order, l.allow_email_contact," +
+                            " p.academic_title, p.date_of_birth, p.place_of_birth, p.gender, p.phone," +
+                            " p.email, p.first_name, p.last_name" +
+                            " from link_persons_documents l join persons p on l.person_id=p.id" +
+                            " where l.document_id in (%s) order by l.document_id, l.sort_order, p.id", ids)) {
+                while (rs.next()) {
+                    String name = PERSON_ROLES.get(rs.getString("role"));
+                    if (name == null) continue;
+                    add(children, rs.getInt("document_id"), new Element(name)
+                            .add("AcademicTitle", rs.getString("academic_title"))
+                            .add(date("DateOfBirth", rs.getString("date_of_birth")))
+                            .add("PlaceOfBirth", rs.getString("place_of_birth"))
+                            .add("Gender", rs.getString("gender"))
+                            .add("Phone", rs.getString("phone"))
+                            .add("Email", rs.getString("email"))
+                            .add("FirstName", rs.getString("first_name"))
+                            .add("LastName", rs.getString("last_name"))
+                            .add("Role", rs.getString("role"))
+                            .add("SortOrder", rs.getString("sort_order"))
+                            .add("AllowEmailContact", rs.getString("allow_email_contact")));
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, type, language, value, external_key from document_subjects" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    String name = SUBJECT_TYPES.get(rs.getString("type"));
+                    if (name == null) continue;
+                    add(children, rs.getInt("document_id"), new Element(name)
+                            .add("Language", rs.getString("language"))
+                            .add("Type", rs.getString("type"))
+                            .add("Value", rs.getString("value"))
+                            .add("ExternalKey", rs.getString("external_key")));
+                }
+            }
+
+            Map<Integer, Element> files = new LinkedHashMap<>();
+            Map<Integer, Integer> fileDocuments = new HashMap<>();
+            try (ResultSet rs = query(lease,
+                    "select id, document_id, path_name, sort_order, label, file_type, mime_type, language," +
+                            " temp_file, file_size, visible_in_oai, visible_in_frontdoor from document_files" +
+                            " where document_id in (%s) order by document_id, sort_order, id", ids)) {
+                while (rs.next()) {
+                    Element file = new Element("File")
+                            .attribute("id", rs.getString("id"))
+                            .add("PathName", rs.getString("path_name"))
+                            .add("SortOrder", rs.getString("sort_order"))
+                            .add("Label", rs.getString("label"))
+                            .add("FileType", rs.getString("file_type"))
+                            .add("MimeType", rs.getString("mime_type"))
+                            .add("Language", rs.getString("language"))
+                            .add("TempFile", rs.getString("temp_file"))
+                            .add("FileSize", rs.getString("file_size"));
+                    // Hash values are added below, before the trailing visibility flags
+                    file.add("OaiExport", rs.getString("visible_in_oai"))
+                            .add("FrontdoorVisible", rs.getString("visible_in_frontdoor"));
+                    files.put(rs.getInt("id"), file);
+                    fileDocuments.put(rs.getInt("id"), rs.getInt("document_id"));
+                }
+            }
+            if (!files.isEmpty()) {
+                try (ResultSet rs = query(lease,
+                        "select h.file_id, h.type, h.value from file_hashvalues h" +
+                                " join document_files f on h.file_id=f.id" +
+                                " where f.document_id in (%s) order by h.file_id, h.type", ids)) {
+                    while (rs.next()) {
+                        Element file = files.get(rs.getInt("file_id"));
+                        if (file == null) continue;
+                        file.insertBeforeLast(2, new Element("HashValue")
+                                .add("Type", rs.getString("type"))
+                                .add("Value", rs.getString("value")));
+                    }
+                }
+                for (Map.Entry<Integer, Element> e : files.entrySet()) {
+                    add(children, fileDocuments.get(e.getKey()), e.getValue());
+                }
+            }
+
+            try (ResultSet rs = query(lease,
+                    "select document_id, type, address, role, tud_fis_key_faculty, tud_fis_key_chair," +
+                            " free_submission, first_level_name, second_level_name, third_level_name," +
+                            " fourth_level_name, fifth_level_name, sixth_level_name from document_organisations" +
+                            " where document_id in (%s) order by document_id, id", ids)) {
+                while (rs.next()) {
+                    add(children, rs.getInt("document_id"), new Element("Organisation")
+                            .add("Type", rs.getString("type"))
+                            .add("Address", rs.getString("address"))
+                            .add("Role", rs.getString("role"))
+                            .add("TudFisKeyFaculty", rs.getString("tud_fis_key_faculty"))
+                            .add("TudFisKeyChair", rs.getString("tud_fis_key_chair"))
+                            .add("FreeSubmission", rs.getString("free_submission"))
+                            .add("FirstLevelName", rs.getString("first_level_name"))
+                            .add("SecondLevelName", rs.getString("second_level_name"))
+                            .add("ThirdLevelName", rs.getString("third_level_name"))
+                            .add("FourthLevelName", rs.getString("fourth_level_name"))
+                            .add("FifthLevelName", rs.getString("fifth_level_name"))
+                            .add("SixthLevelName", rs.getString("sixth_level_name")));
+                }
+            }
+        }
+
+        Map<Integer, OpusDocument> result = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Element> e : documents.entrySet()) {
+            Element doc = e.getValue();
+            Map<String, List<Element>> c = children.get(e.getKey());
+            for (String name : ELEMENT_ORDER) {
+                List<Element> elements = c.get(name);
+                if (elements != null) {
+                    for (Element element : elements) doc.add(element);
+                }
+            }
+            doc.add("DocumentId", String.valueOf(e.getKey()));
+            result.put(e.getKey(), toOpusDocument(doc));
+        }
+        return result;
+    }
+
+    private ResultSet query(Opus4ConnectionPool.Lease lease, String sql, List<Integer> ids) throws SQLException {
+        StringBuilder placeholders = new StringBuilder("?");
+        for (int i = 1; i < batchSize; i++) {
+            placeholders.append(",?");
+        }
+        PreparedStatement stmt = lease.prepare(String.format(sql, placeholders));
+        // Pad incomplete chunks with the last ID, so there is only one statement to prepare per table
+        for (int i = 0; i < batchSize; i++) {
+            stmt.setInt(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+        }
+        return stmt.executeQuery();
+    }
+
+    private static void add(Map<Integer, Map<String, List<Element>>> children, int documentId, Element element) {
+        Map<String, List<Element>> c = children.get(documentId);
+        if (c != null) {
+            c.computeIfAbsent(element.name, k -> new ArrayList<>()).add(element);
+        }
+    }
+
+    /**
+     * Splits an ISO 8601 date-time, like <code>2008-03-10T11:44:56+01:00</code>, into the
+     * fields of a Qucosa XML date element. The offset is rendered as POSIX style timezone,
+     * where <code>GMT-1</code> means one hour ahead of UTC.
+     */
+    static Element date(String name, String isoDateTime) {
+        Element date = new Element(name);
+        if (isoDateTime == null || isoDateTime.trim().isEmpty()) {
+            return date;
+        }
+        OffsetDateTime dt;
+        try {
+            dt = OffsetDateTime.parse(isoDateTime.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cannot parse date of " + name + ": " + isoDateTime, e);
+        }
+        int offsetHours = dt.getOffset().getTotalSeconds() / 3600;
+        String timezone = (offsetHours == 0) ? "GMT" : "GMT" + (offsetHours > 0 ? "-" : "+") + Math.abs(offsetHours);
+        return date
+                .add("Year", String.valueOf(dt.getYear()))
+                .add("Month", String.valueOf(dt.getMonthValue()))
+                .add("Day", String.valueOf(dt.getDayOfMonth()))
+                .add("Hour", String.valueOf(dt.getHour()))
+                .add("Minute", String.valueOf(dt.getMinute()))
+                .add("Second", String.valueOf(dt.getSecond()))
+                .add("Timezone", timezone);
+    }
+
+    private static OpusDocument toOpusDocument(Element opusDocument) {
+        OpusDocument doc = OpusDocument.Factory.newInstance();
+        XmlCursor cursor = doc.newCursor();
+        try {
+            cursor.toNextToken();
+            cursor.beginElement("Opus");
+            cursor.insertAttributeWithValue("version", "2.0");
+            opusDocument.write(cursor);
+        } finally {
+            cursor.dispose();
+        }
+        return doc;
+    }
+
+    /**
+     * Minimal element tree, assembled while reading result sets and written to an XmlCursor in the end.
+     */
+    static class Element {
+        private final List<String[]> attributes = new ArrayList<>(1);
+        private final List<Element> children = new ArrayList<>();
+        private final String name;
+        private final String text;
+
+        Element(String name) {
+            this(name, null);
+        }
+
+        Element(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        Element add(String name, String text) {
+            return add(new Element(name, text));
+        }
+
+        Element add(Element child) {
+            children.add(child);
+            return this;
+        }
+
+        Element attribute(String name, String value) {
+            attributes.add(new String[]{name, value});
+            return this;
+        }
+
+        void insertBeforeLast(int n, Element child) {
+            children.add(children.size() - n, child);
+        }
+
+        void write(XmlCursor cursor) {
+            cursor.beginElement(name);
+            for (String[] attribute : attributes) {
+                cursor.insertAttributeWithValue(attribute[0], attribute[1]);
+            }
+            if (text != null && !text.isEmpty()) {
+                cursor.insertChars(text);
+            }
+            for (Element child : children) {
+                child.write(cursor);
+            }
+            cursor.toNextToken();
+        }
+    }
+
+}
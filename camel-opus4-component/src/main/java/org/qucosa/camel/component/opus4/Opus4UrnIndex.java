@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * In-memory index mapping URNs to Opus document IDs.
+ * <p>
+ * Uses open addressing over plain arrays and stores URNs as UTF-8 byte arrays,
+ * which takes considerably less heap than a map of strings to boxed values.
+ * Not thread safe for writing; all entries are expected to be put before the index is read.
+ */
+class Opus4UrnIndex {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] documentIds;
+    private byte[][] keys;
+    private int size = 0;
+
+    Opus4UrnIndex() {
+        this(1024);
+    }
+
+    Opus4UrnIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new byte[capacity][];
+        documentIds = new int[capacity];
+    }
+
+    void put(String urn, int documentId) {
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+        if (insert(keys, documentIds, urn.getBytes(StandardCharsets.UTF_8), documentId)) {
+            size++;
+        }
+    }
+
+    /**
+     * @return the document ID for the given URN or -1 if the URN is unknown
+     */
+    int get(String urn) {
+        byte[] key = urn.getBytes(StandardCharsets.UTF_8);
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (Arrays.equals(keys[i], key)) {
+                return documentIds[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        byte[][] newKeys = new byte[keys.length * 2][];
+        int[] newDocumentIds = new int[documentIds.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                insert(newKeys, newDocumentIds, keys[i], documentIds[i]);
+            }
+        }
+        keys = newKeys;
+        documentIds = newDocumentIds;
+    }
+
+    private static boolean insert(byte[][] keys, int[] values, byte[] key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (Arrays.equals(keys[i], key)) {
+                values[i] = value;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return true;
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client for the Opus4 web API with per-request deadlines and optional hedged requests.
+ * <p>
+ * Requests are distributed across the hosts of an {@link Opus4HostSelector}. A request that fails
+ * with an I/O error or a server error is retried once on another host, if there is one and the
+ * deadline permits. Hedged requests also go to another host.
+ * <p>
+ * Every request has to complete within the configured deadline, or else it is aborted. If hedging
+ * is enabled, a duplicate request is sent once a request has been pending for longer than the
+ * configured percentile of previously observed latencies. The first successful response wins and
+ * the other request is aborted. Hedging starts after a warm-up of {@value #HEDGE_WARMUP_REQUESTS}
+ * requests, so that the percentile is meaningful.
+ * <p>
+ * Requests are executed by non-blocking I/O, so pending requests don't occupy threads. Results of
+ * {@link #getAsync(String, Header...)} are completed by a small pool of callback threads, never by
+ * the I/O threads themselves.
+ */
+class Opus4WebApiClient {
+
+    static final int HEDGE_WARMUP_REQUESTS = 100;
+    private static final Logger log = LoggerFactory.getLogger(Opus4WebApiClient.class);
+
+    private final Opus4LatencyHistogram attemptLatencies = new Opus4LatencyHistogram();
+    private final ExecutorService callbackExecutor;
+    private final long deadlineMillis;
+    private final double hedgePercentile;
+    private final Opus4HostSelector hosts;
+    private final CloseableHttpAsyncClient httpClient;
+    private final long minHedgeDelayMillis;
+    private final Opus4LatencyHistogram requestLatencies = new Opus4LatencyHistogram();
+    private final ScheduledExecutorService timer;
+
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong deadlinesExceeded = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param hedgePercentile     Latency percentile after which a hedged request is sent, 0 disables hedging
+     * @param minHedgeDelayMillis Lower bound of the delay before a hedged request is sent
+     */
+    Opus4WebApiClient(Opus4HostSelector hosts, int connectTimeoutMillis, int socketTimeoutMillis, long deadlineMillis,
+                      double hedgePercentile, long minHedgeDelayMillis) throws IOReactorException {
+        this.hosts = hosts;
+        this.deadlineMillis = deadlineMillis;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+
+        PoolingNHttpClientConnectionManager mgr = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSoTimeout(socketTimeoutMillis)
+                        .build(), daemonThreads("opus4-http-io-")));
+        mgr.setMaxTotal(200);
+        mgr.setDefaultMaxPerRoute(100);
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(mgr)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        // Requests queue for a connection without occupying a thread, the deadline bounds the wait
+                        .setConnectionRequestTimeout((int) Math.min(Integer.MAX_VALUE, deadlineMillis))
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .build())
+                .disableCookieManagement()
+                .setThreadFactory(daemonThreads("opus4-http-dispatch-"))
+                .build();
+        httpClient.start();
+
+        timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("opus4-http-timer-"));
+        callbackExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), daemonThreads("opus4-http-callback-"));
+    }
+
+    /**
+     * Sends a GET request and reads the complete response.
+     *
+     * @throws TimeoutException if there is no response within the deadline
+     */
+    Response get(String path, Header... headers) throws Exception {
+        return await(getAsync(path, headers));
+    }
+
+    /**
+     * Sends a GET request without waiting for the response.
+     *
+     * @return Future completed with the complete response, or exceptionally with a
+     * {@link TimeoutException} if there is no response within the deadline
+     */
+    CompletableFuture<Response> getAsync(String path, Header... headers) {
+        Request request = new Request(path, headers);
+        request.start();
+
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        request.result.whenCompleteAsync((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        }, callbackExecutor);
+        return result;
+    }
+
+    /**
+     * Waits for a future and rethrows the cause of its failure.
+     */
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : e;
+        }
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    long getHedgeCount() {
+        return hedges.get();
+    }
+
+    long getRetryCount() {
+        return retries.get();
+    }
+
+    long getDeadlineExceededCount() {
+        return deadlinesExceeded.get();
+    }
+
+    long percentileMillis(double percentile) {
+        return requestLatencies.percentile(percentile);
+    }
+
+    void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Error closing Opus web API client: " + e.getMessage());
+        }
+        timer.shutdownNow();
+        callbackExecutor.shutdown();
+        long requests = getRequestCount();
+        log.info(String.format("Opus web API: %d requests, latency p50 %d ms, p99 %d ms, p999 %d ms, " +
+                        "%d hedged (%.2f%%), %d hedges won, %d deadlines exceeded",
+                requests, percentileMillis(50), percentileMillis(99), percentileMillis(99.9),
+                getHedgeCount(), (requests == 0) ? 0d : 100d * getHedgeCount() / requests,
+                hedgesWon.get(), getDeadlineExceededCount()));
+        if (hosts.size() > 1) {
+            for (Opus4HostSelector.Host host : hosts.getHosts()) {
+                log.info(String.format("Opus web API host %s: %d requests, %d ejections",
+                        host.getUrl(), host.getRequestCount(), host.getEjectionCount()));
+            }
+            log.info(String.format("Opus web API: %d requests retried on another host", getRetryCount()));
+        }
+    }
+
+    private long hedgeDelayMillis() {
+        if (hedgePercentile <= 0 || attempts.get() < HEDGE_WARMUP_REQUESTS) return 0;
+        return Math.max(minHedgeDelayMillis, attemptLatencies.percentile(hedgePercentile));
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * A request with its attempts, deadline and hedging timers. Decisions are made while holding
+     * the request's lock, futures are completed outside of it.
+     */
+    private class Request {
+        private final Header[] headers;
+        private final String path;
+        private final List<Attempt> pending = new ArrayList<>(2);
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final long start = System.currentTimeMillis();
+        private ScheduledFuture<?> deadlineTimer;
+        private ScheduledFuture<?> hedgeTimer;
+        private boolean retried = false;
+
+        Request(String path, Header[] headers) {
+            this.path = path;
+            this.headers = headers;
+            requests.incrementAndGet();
+            result.whenComplete((response, error) -> finish());
+        }
+
+        void start() {
+            RuntimeException error;
+            synchronized (this) {
+                error = send(null, false);
+                if (error == null) {
+                    deadlineTimer = timer.schedule(this::deadlineExceeded, deadlineMillis, TimeUnit.MILLISECONDS);
+                    long hedgeDelay = hedgeDelayMillis();
+                    if (hedgeDelay > 0 && hedgeDelay < deadlineMillis) {
+                        hedgeTimer = timer.schedule(this::hedge, hedgeDelay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            if (error != null) result.completeExceptionally(error);
+        }
+
+        private RuntimeException send(Opus4HostSelector.Host avoid, boolean hedge) {
+            Attempt attempt = new Attempt(this, avoid, hedge);
+            pending.add(attempt);
+            try {
+                attempt.send();
+                return null;
+            } catch (RuntimeException e) {
+                pending.remove(attempt);
+                return e;
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (result.isDone() || pending.size() != 1 || retried) return;
+                hedges.incrementAndGet();
+                send(pending.get(0).host, true);
+            }
+        }
+
+        private void deadlineExceeded() {
+            synchronized (this) {
+                if (result.isDone()) return;
+                for (Attempt attempt : pending) {
+                    attempt.deadlineExceeded = true;
+                }
+            }
+            // Counted first, so the count is up to date when waiting callers see the timeout
+            deadlinesExceeded.incrementAndGet();
+            if (!result.completeExceptionally(
+                    new TimeoutException(String.format("No response for %s within %d ms", path, deadlineMillis)))) {
+                deadlinesExceeded.decrementAndGet();
+            }
+        }
+
+        void onResponse(Attempt attempt, Response response) {
+            synchronized (this) {
+                pending.remove(attempt);
+                if (result.isDone()) return;
+                if (response.getStatus() >= 500) {
+                    // Another pending attempt may still succeed
+                    if (!pending.isEmpty()) return;
+                    if (retryable()) {
+                        retry(attempt);
+                        return;
+                    }
+                }
+            }
+            requestLatencies.record(System.currentTimeMillis() - start);
+            if (result.complete(response) && attempt.hedge) {
+                hedgesWon.incrementAndGet();
+            }
+        }
+
+        void onFailure(Attempt attempt, Exception error) {
+            synchronized (this) {
+                pending.remove(attempt);
+                if (result.isDone() || !pending.isEmpty()) return;
+                if (retryable()) {
+                    retry(attempt);
+                    return;
+                }
+            }
+            result.completeExceptionally(error);
+        }
+
+        private void retry(Attempt failed) {
+            retried = true;
+            retries.incrementAndGet();
+            RuntimeException error = send(failed.host, false);
+            if (error != null) {
+                // Completing the result acquires this lock again, which is fine for the same thread
+                result.completeExceptionally(error);
+            }
+        }
+
+        private boolean retryable() {
+            return !retried && hosts.size() > 1 && System.currentTimeMillis() - start < deadlineMillis;
+        }
+
+        private void finish() {
+            List<Attempt> aborted;
+            synchronized (this) {
+                if (deadlineTimer != null) deadlineTimer.cancel(false);
+                if (hedgeTimer != null) hedgeTimer.cancel(false);
+                aborted = new ArrayList<>(pending);
+            }
+            for (Attempt attempt : aborted) {
+                attempt.abort();
+            }
+        }
+    }
+
+    /**
+     * A single request to one host.
+     */
+    private class Attempt implements FutureCallback<HttpResponse> {
+        private final boolean hedge;
+        private final Opus4HostSelector.Host host;
+        private final Request request;
+        private final long start = System.currentTimeMillis();
+        private volatile boolean deadlineExceeded = false;
+        private volatile Future<HttpResponse> future;
+
+        Attempt(Request request, Opus4HostSelector.Host avoid, boolean hedge) {
+            this.request = request;
+            this.hedge = hedge;
+            host = hosts.acquire(avoid);
+        }
+
+        void send() {
+            HttpGet get = new HttpGet(host.getUrl() + request.path);
+            get.setHeaders(request.headers);
+            try {
+                future = httpClient.execute(get, this);
+            } catch (RuntimeException e) {
+                hosts.released(host);
+                throw e;
+            }
+        }
+
+        void abort() {
+            Future<HttpResponse> f = future;
+            if (f != null) f.cancel(true);
+        }
+
+        @Override
+        public void completed(HttpResponse httpResponse) {
+            Response response;
+            try {
+                byte[] body = (httpResponse.getEntity() == null) ? new byte[0]
+                        : EntityUtils.toByteArray(httpResponse.getEntity());
+                response = new Response(
+                        httpResponse.getStatusLine().getStatusCode(),
+                        httpResponse.getStatusLine().getReasonPhrase(),
+                        httpResponse.getAllHeaders(),
+                        body);
+            } catch (IOException e) {
+                failed(e);
+                return;
+            }
+            long latency = System.currentTimeMillis() - start;
+            attemptLatencies.record(latency);
+            attempts.incrementAndGet();
+            if (response.getStatus() >= 500) {
+                hosts.failed(host, response.getStatus() + " " + response.getReason());
+            } else {
+                hosts.succeeded(host, latency);
+            }
+            request.onResponse(this, response);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            hosts.failed(host, deadlineExceeded ? "deadline exceeded" : e.toString());
+            request.onFailure(this, e);
+        }
+
+        @Override
+        public void cancelled() {
+            if (deadlineExceeded) {
+                hosts.failed(host, "deadline exceeded");
+            } else {
+                hosts.released(host);
+            }
+            request.onFailure(this, new CancellationException("Request to " + host.getUrl() + " aborted"));
+        }
+    }
+
+    /**
+     * A completely read HTTP response.
+     */
+    static class Response {
+        private final byte[] body;
+        private final Header[] headers;
+        private final String reason;
+        private final int status;
+
+        Response(int status, String reason, Header[] headers, byte[] body) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        Header getFirstHeader(String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) return header;
+            }
+            return null;
+        }
+
+        String getReason() {
+            return reason;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4ArchiveTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackAppendedDocuments() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("opus.arc");
+        byte[] doc394 = fixture("/opus_394.xml");
+        byte[] doc13429 = fixture("/opus_13429.xml");
+
+        try (Opus4ArchiveWriter writer = new Opus4ArchiveWriter(path)) {
+            writer.append(17609, doc13429);
+            writer.append(889, doc394);
+        }
+
+        try (Opus4Archive archive = new Opus4Archive(path)) {
+            assertEquals(2, archive.size());
+            assertArrayEquals(doc394, archive.get(889));
+            assertArrayEquals(doc13429, archive.get(17609));
+            assertNull(archive.get(4711));
+        }
+    }
+
+    @Test
+    public void lastAppendOfDocumentWins() throws IOException {
+        Path path = tempFolder.getRoot().toPath().resolve("opus.arc");
+        try (Opus4ArchiveWriter writer = new Opus4ArchiveWriter(path)) {
+            writer.append(1, bytes("first"));
+            writer.append(2, bytes("other"));
+            writer.append(1, bytes("second"));
+        }
+
+        try (Opus4Archive archive = new Opus4Archive(path)) {
+            assertEquals(2, archive.size());
+            assertArrayEquals(bytes("second"), archive.get(1));
+        }
+    }
+
+    @Test
+    public void readsRecordsSpanningMappedSegments() throws IOException {
+        Path path = tempFolder.getRoot().toPath().resolve("opus.arc");
+        try (Opus4ArchiveWriter writer = new Opus4ArchiveWriter(path)) {
+            for (int i = 0; i < 100; i++) {
+                writer.append(i, bytes("<Opus><DocumentId>" + i + "</DocumentId></Opus>"));
+            }
+        }
+
+        try (Opus4Archive archive = new Opus4Archive(path, 7)) {
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(bytes("<Opus><DocumentId>" + i + "</DocumentId></Opus>"), archive.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void onlyCompleteArchivesAreVisible() throws IOException {
+        Path path = tempFolder.getRoot().toPath().resolve("opus.arc");
+        Opus4ArchiveWriter writer = new Opus4ArchiveWriter(path);
+        writer.append(1, bytes("<Opus/>"));
+
+        assertFalse(Files.exists(path));
+        writer.close();
+        assertTrue(Files.exists(path));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Path path = tempFolder.newFile().toPath();
+        Files.write(path, bytes("This is not an archive, but long enough to have a trailer"));
+        new Opus4Archive(path);
+    }
+
+    private byte[] fixture(String name) throws Exception {
+        return Files.readAllBytes(Paths.get(getClass().getResource(name).toURI()));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.SimpleRegistry;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4ChangesConsumerIT {
+
+    private DefaultCamelContext camelContext;
+    private File hwmFile;
+    private final List<Opus4ResourceID> received = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Configuration conf = new BaseConfiguration();
+        conf.setProperty(Opus4DataSource.WEBAPI_PARAM_QUCOSA_HOST, "http://www.example.com");
+        conf.setProperty(Opus4DataSource.DB_PARAM_HOST, "jdbc:h2:mem:changestest;DB_CLOSE_DELAY=-1;" +
+                "INIT=RUNSCRIPT FROM 'classpath:QucosaProviderTest-DB_SETUP.sql' CHARSET 'UTF-8'");
+        conf.setProperty(Opus4DataSource.DB_PARAM_USER, "test");
+        conf.setProperty(Opus4DataSource.DB_PARAM_PASSWORD, "test");
+        conf.setProperty(Opus4DataSource.DB_PARAM_POOL_SIZE, 1);
+
+        Opus4DataSource dataSource = new Opus4DataSource();
+        dataSource.configure(conf);
+
+        SimpleRegistry registry = new SimpleRegistry();
+        registry.put(Opus4DataSource.DATA_SOURCE_NAME, dataSource);
+        camelContext = new DefaultCamelContext(registry);
+
+        hwmFile = File.createTempFile(Opus4ChangesConsumerIT.class.getName(), ".hwm");
+        hwmFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        camelContext.stop();
+        hwmFile.delete();
+    }
+
+    @Test
+    public void emitsDocumentsModifiedSinceGivenDate() throws Exception {
+        startHarvesting("opus4:changes?since=2016-01-01&limit=2&delay=10&hwmFile=" + hwmFile.getAbsolutePath(), 4);
+
+        assertEquals(4, received.size());
+        assertEquals(Opus4ResourceID.create("Opus/Document/50"), received.get(0));
+        assertEquals(Opus4ResourceID.create("Opus/Document/20"), received.get(1));
+        assertEquals(Opus4ResourceID.create("Opus/Document/30"), received.get(2));
+        assertEquals(Opus4ResourceID.create("Opus/Document/40"), received.get(3));
+    }
+
+    @Test
+    public void continuesAfterPersistedHighWaterMark() throws Exception {
+        new Opus4ChangeMark(Instant.parse("2016-07-15T06:30:00Z"), 20).write(hwmFile.toPath());
+
+        startHarvesting("opus4:changes?since=2000-01-01&delay=10&hwmFile=" + hwmFile.getAbsolutePath(), 2);
+
+        assertEquals(2, received.size());
+        assertEquals(Opus4ResourceID.create("Opus/Document/30"), received.get(0));
+        assertEquals(40, Opus4ChangeMark.read(hwmFile.toPath()).getDocumentId());
+    }
+
+    @Test
+    public void keepsHighWaterMarkBeforeChangeHandledByDeadLetterChannel() throws Exception {
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:dead").to("log:dead");
+            }
+        });
+        final Opus4ResourceID failing = Opus4ResourceID.create("Opus/Document/30");
+
+        startHarvesting("opus4:changes?since=2016-01-01&delay=10&hwmFile=" + hwmFile.getAbsolutePath(), 4,
+                new Processor() {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        if (failing.equals(exchange.getIn().getBody(Opus4ResourceID.class))) {
+                            throw new Exception("Failed to process change");
+                        }
+                    }
+                });
+
+        assertEquals(Opus4ResourceID.create("Opus/Document/50"), received.get(0));
+        assertEquals(Opus4ResourceID.create("Opus/Document/20"), received.get(1));
+        for (Opus4ResourceID resourceID : received.subList(2, received.size())) {
+            assertEquals("Failed change should be retried", failing, resourceID);
+        }
+        assertEquals(20, Opus4ChangeMark.read(hwmFile.toPath()).getDocumentId());
+    }
+
+    private void startHarvesting(final String uri, int expectedChanges) throws Exception {
+        startHarvesting(uri, expectedChanges, null);
+    }
+
+    private void startHarvesting(final String uri, int expectedChanges, final Processor next) throws Exception {
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                errorHandler(deadLetterChannel("direct:dead"));
+                from(uri).process(new Processor() {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        received.add(exchange.getIn().getBody(Opus4ResourceID.class));
+                        if (next != null) next.process(exchange);
+                    }
+                });
+            }
+        });
+        camelContext.start();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < deadline && received.size() < expectedChanges) {
+            Thread.sleep(50);
+        }
+        // give the consumer time to persist the mark and to poll again without new changes
+        Thread.sleep(200);
+        assertTrue("High-water mark should be persisted", hwmFile.exists());
+    }
+
+}
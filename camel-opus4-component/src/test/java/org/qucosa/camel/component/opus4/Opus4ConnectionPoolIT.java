@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Opus4ConnectionPoolIT {
+
+    private static final String DB_URL = "jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1";
+
+    private Opus4ConnectionPool pool;
+
+    @Before
+    public void setUp() throws SQLException {
+        // Run the setup script once, an INIT parameter would recreate the tables for every new connection
+        DriverManager.getConnection(DB_URL +
+                ";INIT=RUNSCRIPT FROM 'classpath:QucosaProviderTest-DB_SETUP.sql' CHARSET 'UTF-8'", "test", "test").close();
+        pool = new Opus4ConnectionPool(DB_URL, "test", "test", 2, 200, 30000, 1);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void reusesPreparedStatementsOfReturnedConnection() throws SQLException {
+        PreparedStatement first;
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            first = lease.prepare("select name from resources");
+        }
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            assertSame(first, lease.prepare("select name from resources"));
+            assertNotSame(first, lease.prepare("select id from resources"));
+        }
+        assertEquals(1, pool.getOpenConnectionCount());
+    }
+
+    @Test
+    public void skipsValidationOfRecentlyReturnedConnection() throws SQLException {
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            lease.prepare("select name from resources").getConnection().close();
+        }
+        try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+            lease.prepare("select name from resources");
+            fail("Expected the closed connection to be leased without validation");
+        } catch (SQLException expected) {
+        }
+        assertEquals(1, pool.getOpenConnectionCount());
+    }
+
+    @Test
+    public void replacesInvalidConnectionAfterIdleTime() throws SQLException {
+        Opus4ConnectionPool validatingPool = new Opus4ConnectionPool(DB_URL, "test", "test", 2, 200, 0, 1);
+        try {
+            PreparedStatement first;
+            try (Opus4ConnectionPool.Lease lease = validatingPool.lease()) {
+                first = lease.prepare("select name from resources");
+                first.getConnection().close();
+            }
+            try (Opus4ConnectionPool.Lease lease = validatingPool.lease()) {
+                assertNotSame(first, lease.prepare("select name from resources"));
+            }
+            assertEquals(1, validatingPool.getOpenConnectionCount());
+        } finally {
+            validatingPool.close();
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void leaseTimesOutWhenPoolIsExhausted() throws SQLException {
+        pool.lease();
+        pool.lease();
+        pool.lease();
+    }
+
+    @Test
+    public void recordsLeasesAndTimeouts() throws SQLException {
+        Opus4ConnectionPool.Lease a = pool.lease();
+        Opus4ConnectionPool.Lease b = pool.lease();
+        try {
+            pool.lease();
+        } catch (SQLException ignored) {
+        }
+        a.close();
+        b.close();
+
+        assertEquals(2, pool.getLeaseCount());
+        assertEquals(1, pool.getTimeoutCount());
+    }
+
+    @Test
+    public void concurrentLeasesNeverExceedPoolSize() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    try (Opus4ConnectionPool.Lease lease = pool.lease()) {
+                        lease.prepare("select count(*) from resources").executeQuery().close();
+                        return pool.getOpenConnectionCount();
+                    }
+                }
+            }));
+        }
+        for (Future<Integer> f : results) {
+            assertTrue(f.get() <= pool.getSize());
+        }
+        executor.shutdown();
+        assertEquals(50, pool.getLeaseCount());
+    }
+
+}
@@ -26,7 +26,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class Opus4DataSourceIT {
 
@@ -34,15 +40,8 @@ public class Opus4DataSourceIT {
 
     @Before
     public void setUp() throws SQLException, ConfigurationException {
-        Configuration conf = new BaseConfiguration();
-        conf.setProperty(Opus4DataSource.WEBAPI_PARAM_QUCOSA_HOST, "http://www.example.com");
-        conf.setProperty(Opus4DataSource.DB_PARAM_HOST, "jdbc:h2:mem:test;" +
-                "INIT=RUNSCRIPT FROM 'classpath:QucosaProviderTest-DB_SETUP.sql' CHARSET 'UTF-8'");
-        conf.setProperty(Opus4DataSource.DB_PARAM_USER, "test");
-        conf.setProperty(Opus4DataSource.DB_PARAM_PASSWORD, "test");
-
         qucosaProvider = new Opus4DataSource();
-        qucosaProvider.configure(conf);
+        qucosaProvider.configure(testConfiguration());
     }
 
     @After
@@ -50,6 +49,17 @@ public class Opus4DataSourceIT {
         qucosaProvider.release();
     }
 
+    private Configuration testConfiguration() {
+        Configuration conf = new BaseConfiguration();
+        conf.setProperty(Opus4DataSource.WEBAPI_PARAM_QUCOSA_HOST, "http://www.example.com");
+        conf.setProperty(Opus4DataSource.DB_PARAM_HOST, "jdbc:h2:mem:test;" +
+                "INIT=RUNSCRIPT FROM 'classpath:QucosaProviderTest-DB_SETUP.sql' CHARSET 'UTF-8'");
+        conf.setProperty(Opus4DataSource.DB_PARAM_USER, "test");
+        conf.setProperty(Opus4DataSource.DB_PARAM_PASSWORD, "test");
+        conf.setProperty(Opus4DataSource.DB_PARAM_URN_BATCH_SIZE, 2);
+        return conf;
+    }
+
     @Test
     public void listsSubResources() throws SQLException {
         List<Opus4ResourceID> resources = qucosaProvider.children(Opus4ResourceID.create("SLUB"));
@@ -65,10 +75,137 @@ public class Opus4DataSourceIT {
         Assert.assertEquals(2, resources.size());
     }
 
+    @Test
+    public void streamsSubResourcesPageByPage() {
+        List<Opus4ResourceID> resources = new ArrayList<>();
+        Iterator<Opus4ResourceID> it = qucosaProvider.streamChildren(Opus4ResourceID.create("SLUB"), 2);
+        while (it.hasNext()) {
+            resources.add(it.next());
+        }
+        Assert.assertEquals(5, resources.size());
+        Assert.assertEquals(Opus4ResourceID.create("Opus/Document/10"), resources.get(0));
+        Assert.assertEquals(Opus4ResourceID.create("Opus/Document/500"), resources.get(4));
+    }
+
+    @Test
+    public void streamsResourcesByPattern() {
+        Iterator<Opus4ResourceID> it = qucosaProvider.streamFind("%/Document/___", 2);
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        Assert.assertEquals(3, count);
+    }
+
     @Test
     public void getsQucosaIdByURN() throws Exception {
         Opus4ResourceID opus4ResourceID = qucosaProvider.resolve("urn:nbn:de:bsz:14-qucosa-32825");
         Assert.assertEquals("3282", opus4ResourceID.getIdentifier());
     }
 
+    @Test
+    public void resolvesManyURNsInChunks() throws Exception {
+        Map<String, Opus4ResourceID> resolved = qucosaProvider.resolveAll(Arrays.asList(
+                "urn:nbn:de:bsz:14-qucosa-32825",
+                "urn:nbn:de:bsz:14-qucosa-32838",
+                "urn:nbn:de:bsz:14-qucosa-32841",
+                "urn:nbn:de:bsz:14-qucosa-00000"));
+        Assert.assertEquals(3, resolved.size());
+        Assert.assertEquals("3284", resolved.get("urn:nbn:de:bsz:14-qucosa-32841").getIdentifier());
+        Assert.assertFalse(resolved.containsKey("urn:nbn:de:bsz:14-qucosa-00000"));
+    }
+
+    @Test
+    public void resolvesURNsFromPreloadedIndex() throws Exception {
+        Configuration conf = testConfiguration();
+        conf.setProperty(Opus4DataSource.DB_PARAM_URN_INDEX, true);
+        Opus4DataSource indexedProvider = new Opus4DataSource();
+        indexedProvider.configure(conf);
+        try {
+            Assert.assertEquals("3283", indexedProvider.resolve("urn:nbn:de:bsz:14-qucosa-32838").getIdentifier());
+            Assert.assertNull(indexedProvider.resolve("978-3-86780-000-0"));
+            Assert.assertEquals(2, indexedProvider.resolveAll(Arrays.asList(
+                    "urn:nbn:de:bsz:14-qucosa-32825", "urn:nbn:de:bsz:14-qucosa-32841")).size());
+        } finally {
+            indexedProvider.release();
+        }
+    }
+
+    @Test
+    public void findsDocumentsInNestedResourcesWithRecursiveQuery() throws Exception {
+        Assert.assertEquals(
+                Arrays.asList("6000", "7000", "8000"),
+                identifiers(qucosaProvider.streamDocumentsBelow(Opus4ResourceID.create("TUC"))));
+    }
+
+    @Test
+    public void findsDocumentsInNestedResourcesLevelByLevel() throws Exception {
+        Configuration conf = testConfiguration();
+        conf.setProperty(Opus4DataSource.DB_PARAM_RECURSIVE_QUERIES, false);
+        conf.setProperty(Opus4DataSource.DB_PARAM_TRAVERSAL_BATCH_SIZE, 1);
+        Opus4DataSource provider = new Opus4DataSource();
+        provider.configure(conf);
+        try {
+            Assert.assertEquals(
+                    Arrays.asList("6000", "7000", "8000"),
+                    identifiers(provider.streamDocumentsBelow(Opus4ResourceID.create("TUC"))));
+            Assert.assertEquals(
+                    Arrays.asList("10", "20", "300", "400", "500"),
+                    identifiers(provider.streamDocumentsBelow(Opus4ResourceID.create("SLUB"))));
+        } finally {
+            provider.release();
+        }
+    }
+
+    @Test
+    public void handsOutDocumentsWhileReadingRecursiveQueryPages() throws Exception {
+        Configuration conf = testConfiguration();
+        conf.setProperty(Opus4DataSource.DB_PARAM_TRAVERSAL_PAGE_SIZE, 1);
+        assertDocumentsHandedOutWhileReading(conf);
+    }
+
+    @Test
+    public void handsOutDocumentsWhileReadingLevelPages() throws Exception {
+        Configuration conf = testConfiguration();
+        conf.setProperty(Opus4DataSource.DB_PARAM_RECURSIVE_QUERIES, false);
+        conf.setProperty(Opus4DataSource.DB_PARAM_TRAVERSAL_PAGE_SIZE, 1);
+        assertDocumentsHandedOutWhileReading(conf);
+    }
+
+    @Test
+    public void traversalTerminatesOnCycles() throws Exception {
+        Assert.assertEquals(
+                Collections.singletonList("9000"),
+                identifiers(qucosaProvider.streamDocumentsBelow(Opus4ResourceID.create("Loop"))));
+    }
+
+    /**
+     * A document added to the tree after the first one has been handed out is only found if
+     * the rest of the tree is read while the iterator is consumed.
+     */
+    private void assertDocumentsHandedOutWhileReading(Configuration conf) throws Exception {
+        Opus4DataSource provider = new Opus4DataSource();
+        provider.configure(conf);
+        try {
+            Iterator<Opus4ResourceID> it = provider.streamDocumentsBelow(Opus4ResourceID.create("SLUB"));
+            Assert.assertEquals("10", it.next().getIdentifier());
+            try (Opus4ConnectionPool.Lease lease = provider.getConnectionPool().lease();
+                 Statement stmt = lease.createStatement()) {
+                stmt.executeUpdate("insert into resources (id, parent_id, name) values (100, 1, 'Opus/Document/600')");
+            }
+            Assert.assertEquals(Arrays.asList("20", "300", "400", "500", "600"), identifiers(it));
+        } finally {
+            provider.release();
+        }
+    }
+
+    private static List<String> identifiers(Iterator<Opus4ResourceID> it) {
+        List<String> identifiers = new ArrayList<>();
+        while (it.hasNext()) {
+            identifiers.add(it.next().getIdentifier());
+        }
+        return identifiers;
+    }
+
 }
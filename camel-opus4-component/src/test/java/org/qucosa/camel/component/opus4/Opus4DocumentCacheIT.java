@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class Opus4DocumentCacheIT {
+
+    private static final String DB_URL = "jdbc:h2:mem:cachetest;DB_CLOSE_DELAY=-1;" +
+            "INIT=RUNSCRIPT FROM 'classpath:QucosaProviderTest-DB_SETUP.sql' CHARSET 'UTF-8'";
+    private static final String ETAG = "\"889-1\"";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private Opus4DataSource dataSource;
+    private byte[] document;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        document = Files.readAllBytes(Paths.get(getClass().getResource("/opus_394.xml").toURI()));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/document", exchange -> {
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.sendResponseHeaders(200, document.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(document);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dataSource != null) dataSource.release();
+        server.stop(0);
+        try (Connection connection = DriverManager.getConnection(DB_URL, "test", "test")) {
+            connection.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    public void servesUnmodifiedDocumentsFromCache() throws Exception {
+        dataSource = configure("database");
+
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, dataSource.getDocumentCache().getHitCount());
+    }
+
+    @Test
+    public void refetchesDocumentsModifiedInDatabase() throws Exception {
+        dataSource = configure("database");
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+
+        try (Connection connection = DriverManager.getConnection(DB_URL, "test", "test")) {
+            connection.createStatement().executeUpdate(
+                    "update documents set server_date_modified='2016-01-01T00:00:00+01:00' where id=10");
+        }
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+
+        assertEquals(2, fullResponses.get());
+        assertEquals(0, dataSource.getDocumentCache().getHitCount());
+    }
+
+    @Test
+    public void cacheSurvivesRestart() throws Exception {
+        dataSource = configure("database");
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+        dataSource.release();
+
+        dataSource = configure("database");
+        dataSource.get(Opus4ResourceID.create("Opus/Document/10"));
+
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    public void validatesWithConditionalRequests() throws Exception {
+        dataSource = configure("http");
+
+        dataSource.get(Opus4ResourceID.create("Opus/Document/889"));
+        dataSource.get(Opus4ResourceID.create("Opus/Document/889"));
+
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, dataSource.getDocumentCache().getHitCount());
+    }
+
+    private Opus4DataSource configure(String validation) throws Exception {
+        Configuration conf = new BaseConfiguration();
+        conf.setProperty(Opus4DataSource.WEBAPI_PARAM_QUCOSA_HOST,
+                "http://localhost:" + server.getAddress().getPort());
+        conf.setProperty(Opus4DataSource.DB_PARAM_HOST, DB_URL);
+        conf.setProperty(Opus4DataSource.DB_PARAM_USER, "test");
+        conf.setProperty(Opus4DataSource.DB_PARAM_PASSWORD, "test");
+        conf.setProperty(Opus4DataSource.DOCUMENTS_PARAM_CACHE_DIR, tempFolder.getRoot().getAbsolutePath());
+        conf.setProperty(Opus4DataSource.DOCUMENTS_PARAM_CACHE_VALIDATION, validation);
+        Opus4DataSource ds = new Opus4DataSource();
+        ds.configure(conf);
+        return ds;
+    }
+
+}
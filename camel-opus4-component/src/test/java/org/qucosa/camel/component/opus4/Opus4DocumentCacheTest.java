@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class Opus4DocumentCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void returnsStoredContentAndValidator() throws IOException {
+        Opus4DocumentCache cache = new Opus4DocumentCache(tempFolder.getRoot().toPath(), 1024);
+        cache.put(42, "2015-08-11T10:36:27+02:00", bytes("<Opus/>"));
+
+        Opus4DocumentCache.Entry entry = cache.get(42);
+
+        assertEquals("2015-08-11T10:36:27+02:00", entry.getValidator());
+        assertArrayEquals(bytes("<Opus/>"), entry.getContent());
+        assertNull(cache.get(43));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntriesWhenFull() throws IOException {
+        Opus4DocumentCache cache = new Opus4DocumentCache(tempFolder.getRoot().toPath(), 30);
+        cache.put(1, "v", bytes("0123456789"));
+        cache.put(2, "v", bytes("0123456789"));
+        cache.get(1);
+        cache.put(3, "v", bytes("0123456789"));
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(24, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void keepsEntriesAcrossRestarts() throws IOException {
+        Path dir = tempFolder.getRoot().toPath();
+        new Opus4DocumentCache(dir, 1024).put(1001, "v1", bytes("<Opus/>"));
+
+        Opus4DocumentCache cache = new Opus4DocumentCache(dir, 1024);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals("v1", cache.get(1001).getValidator());
+    }
+
+    @Test
+    public void replacesExistingEntry() throws IOException {
+        Opus4DocumentCache cache = new Opus4DocumentCache(tempFolder.getRoot().toPath(), 1024);
+        cache.put(7, "v1", bytes("old"));
+        cache.put(7, "v2", bytes("newer"));
+
+        assertEquals("v2", cache.get(7).getValidator());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(8, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void dropsCorruptEntries() throws IOException {
+        Path dir = tempFolder.getRoot().toPath();
+        Files.createDirectories(dir.resolve("005"));
+        Files.write(dir.resolve("005").resolve("5.entry"), bytes("no validator line"));
+        Opus4DocumentCache cache = new Opus4DocumentCache(dir, 1024);
+
+        assertNull(cache.get(5));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4HostSelectorTest {
+
+    @Test
+    public void prefersHostWithFewestOutstandingRequests() {
+        Opus4HostSelector selector = new Opus4HostSelector(Arrays.asList("http://a", "http://b"), 3, 1000, 0);
+        Opus4HostSelector.Host a = selector.getHosts().get(0);
+        Opus4HostSelector.Host b = selector.getHosts().get(1);
+        for (int i = 0; i < 9; i++) {
+            selector.acquire(b);
+        }
+
+        int choseB = 0;
+        for (int i = 0; i < 1000; i++) {
+            Opus4HostSelector.Host host = selector.acquire(null);
+            if (host == b) choseB++;
+            selector.released(host);
+        }
+        assertEquals(9, a.getOutstanding());
+        assertTrue("b chosen " + choseB + " times", choseB > 850);
+    }
+
+    @Test
+    public void prefersFasterHosts() {
+        Opus4HostSelector selector = new Opus4HostSelector(Arrays.asList("http://a", "http://b"), 3, 1000, 0);
+        Opus4HostSelector.Host a = selector.getHosts().get(0);
+        Opus4HostSelector.Host b = selector.getHosts().get(1);
+
+        int choseA = 0;
+        for (int i = 0; i < 1000; i++) {
+            Opus4HostSelector.Host host = selector.acquire(null);
+            if (host == a) {
+                choseA++;
+                selector.succeeded(a, 10);
+            } else {
+                selector.succeeded(b, 100);
+            }
+        }
+        assertTrue("a chosen " + choseA + " times", choseA > 850);
+        assertTrue("b chosen " + (1000 - choseA) + " times", choseA < 1000);
+    }
+
+    @Test
+    public void ejectsFailingHostAndReadmitsItLater() throws Exception {
+        Opus4HostSelector selector = new Opus4HostSelector(Arrays.asList("http://a", "http://b"), 2, 100, 0);
+        Opus4HostSelector.Host a = selector.getHosts().get(0);
+        Opus4HostSelector.Host b = selector.getHosts().get(1);
+        for (int i = 0; i < 2; i++) {
+            selector.acquire(b);
+            selector.failed(a, "503 Service Unavailable");
+        }
+        assertTrue(a.isEjected());
+        assertSame(b, selector.acquire(null));
+        assertSame(b, selector.acquire(null));
+
+        Thread.sleep(150);
+        assertFalse(a.isEjected());
+        assertSame(a, selector.acquire(b));
+        assertEquals(1, a.getEjectionCount());
+    }
+
+    @Test
+    public void ejectsSlowHost() {
+        Opus4HostSelector selector = new Opus4HostSelector(Arrays.asList("http://a", "http://b"), 3, 1000, 5);
+        Opus4HostSelector.Host a = selector.getHosts().get(0);
+        Opus4HostSelector.Host b = selector.getHosts().get(1);
+        for (int i = 0; i < 10; i++) {
+            selector.acquire(b);
+            selector.succeeded(a, 10);
+            selector.acquire(a);
+            selector.succeeded(b, 200);
+        }
+        assertFalse(a.isEjected());
+        assertTrue(b.isEjected());
+    }
+
+    @Test
+    public void neverEjectsLastHost() {
+        Opus4HostSelector selector = new Opus4HostSelector(Collections.singletonList("http://a"), 1, 1000, 0);
+        Opus4HostSelector.Host a = selector.acquire(null);
+        selector.failed(a, "Connection refused");
+        assertFalse(a.isEjected());
+        assertSame(a, selector.acquire(a));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4IdSetTest {
+
+    @Test
+    public void addsAndRemovesIds() {
+        Opus4IdSet set = new Opus4IdSet();
+        assertTrue(set.add(17609));
+        assertTrue(set.add(889));
+        assertFalse(set.add(889));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(889));
+        assertFalse(set.contains(890));
+        assertFalse(set.contains(-1));
+
+        assertTrue(set.remove(889));
+        assertFalse(set.remove(889));
+        assertEquals(1, set.size());
+        assertFalse(set.contains(889));
+    }
+
+    @Test
+    public void iteratesInAscendingOrder() {
+        Opus4IdSet set = new Opus4IdSet();
+        int[] ids = {Integer.MAX_VALUE, 70000, 3, 65536, 65535, 0};
+        for (int id : ids) {
+            set.add(id);
+        }
+        PrimitiveIterator.OfInt it = set.iterator();
+        for (int expected : new int[]{0, 3, 65535, 65536, 70000, Integer.MAX_VALUE}) {
+            assertEquals(expected, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void behavesLikeBitSetForDenseAndSparseIds() {
+        Random random = new Random(42);
+        Opus4IdSet set = new Opus4IdSet();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 200000; i++) {
+            // Dense IDs below 100000 switch chunks to bitmaps, the others stay sparse
+            int id = (i % 2 == 0) ? random.nextInt(100000) : random.nextInt(50000000);
+            assertEquals(!expected.get(id), set.add(id));
+            expected.set(id);
+        }
+        for (int i = 0; i < 100000; i++) {
+            int id = random.nextInt(100000);
+            assertEquals(expected.get(id), set.remove(id));
+            expected.clear(id);
+        }
+
+        assertEquals(expected.cardinality(), set.size());
+        PrimitiveIterator.OfInt it = set.iterator();
+        for (int id = expected.nextSetBit(0); id >= 0; id = expected.nextSetBit(id + 1)) {
+            assertEquals(id, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void millionDocumentIdsFitInFewMegabytes() {
+        Opus4IdSet set = new Opus4IdSet();
+        Random random = new Random(42);
+        while (set.size() < 1000000) {
+            set.add(random.nextInt(Integer.MAX_VALUE));
+        }
+        assertTrue(set.getSizeInBytes() < 5 * 1024 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeIds() {
+        new Opus4IdSet().add(-1);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4LatencyHistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        Opus4LatencyHistogram histogram = new Opus4LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.count());
+        assertEquals(25, histogram.percentile(50));
+        assertEquals(50, histogram.percentile(100));
+    }
+
+    @Test
+    public void bucketBoundsAreWithinThreePercent() {
+        for (long millis = 64; millis < 10000000; millis = millis * 11 / 10) {
+            long bound = Opus4LatencyHistogram.upperBound(Opus4LatencyHistogram.bucket(millis));
+            assertTrue(String.format("%d <= %d", millis, bound), bound >= millis);
+            assertTrue(String.format("%d ~ %d", millis, bound), bound <= millis * 1.033);
+        }
+    }
+
+    @Test
+    public void reportsTailPercentiles() {
+        Opus4LatencyHistogram histogram = new Opus4LatencyHistogram();
+        for (int i = 0; i < 990; i++) histogram.record(10);
+        for (int i = 0; i < 9; i++) histogram.record(1000);
+        histogram.record(5000);
+
+        assertEquals(10, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(99));
+        long p999 = histogram.percentile(99.9);
+        assertTrue(p999 >= 1000 && p999 < 1040);
+        long max = histogram.percentile(100);
+        assertTrue(max >= 5000 && max < 5200);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, new Opus4LatencyHistogram().percentile(99));
+    }
+
+}
@@ -20,6 +20,7 @@ package org.qucosa.camel.component.opus4;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -71,4 +72,44 @@ public class Opus4ResourceIDTest {
         assertEquals(Opus4ResourceID.create("TEST"), Opus4ResourceID.create("TEST"));
     }
 
+    @Test
+    public void parsesDocumentId() {
+        assertEquals(4711, Opus4ResourceID.create("Opus/Document/4711").getDocumentId());
+    }
+
+    @Test
+    public void documentIdsCreatedFromIntEqualParsedOnes() {
+        Opus4ResourceID parsed = Opus4ResourceID.create("Opus/Document/4711");
+        Opus4ResourceID created = Opus4ResourceID.document(4711);
+        assertEquals(parsed, created);
+        assertEquals(parsed.hashCode(), created.hashCode());
+        assertEquals("Opus/Document/4711", created.toString());
+        assertEquals("4711", created.getIdentifier());
+    }
+
+    @Test
+    public void documentIdIsNotEqualToResourceOfSameName() {
+        assertNotEquals(Opus4ResourceID.create("Opus/Document/1"), Opus4ResourceID.create("1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionOnNonNumericDocumentId() {
+        Opus4ResourceID.create("Opus/Document/12a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionOnMissingDocumentId() {
+        Opus4ResourceID.create("Opus/Document/");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsExceptionOnDocumentIdOutOfRange() {
+        Opus4ResourceID.create("Opus/Document/99999999999");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resourcesHaveNoDocumentId() {
+        Opus4ResourceID.create("SLUB").getDocumentId();
+    }
+
 }
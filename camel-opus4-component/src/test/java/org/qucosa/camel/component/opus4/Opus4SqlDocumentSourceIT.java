@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import noNamespace.OpusDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.builder.Input;
+import org.xmlunit.diff.ComparisonResult;
+import org.xmlunit.diff.ComparisonType;
+import org.xmlunit.diff.Diff;
+import org.xmlunit.diff.DifferenceEvaluator;
+import org.xmlunit.diff.DifferenceEvaluators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4SqlDocumentSourceIT {
+
+    private static final String DB_URL = "jdbc:h2:mem:documenttest;DB_CLOSE_DELAY=-1;" +
+            "INIT=RUNSCRIPT FROM 'classpath:Opus4SqlDocumentSourceTest-DB_SETUP.sql' CHARSET 'UTF-8'";
+
+    // The only tolerated difference: fixtures may zero-pad the time of a date, e.g. <Minute>00</Minute>,
+    // while the database yields <Minute>0</Minute>
+    private static final List<String> ZERO_PADDED_TIME_FIELDS = Arrays.asList("Hour", "Minute", "Second");
+    private static final DifferenceEvaluator ZERO_PADDED_TIME_IS_EQUAL = (comparison, outcome) -> {
+        if (outcome == ComparisonResult.DIFFERENT && comparison.getType() == ComparisonType.TEXT_VALUE) {
+            Node control = comparison.getControlDetails().getTarget();
+            String controlValue = String.valueOf(comparison.getControlDetails().getValue());
+            String testValue = String.valueOf(comparison.getTestDetails().getValue());
+            if (ZERO_PADDED_TIME_FIELDS.contains(control.getParentNode().getNodeName())
+                    && controlValue.matches("0\\d") && controlValue.substring(1).equals(testValue)) {
+                return ComparisonResult.EQUAL;
+            }
+        }
+        return outcome;
+    };
+
+    private Opus4ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new Opus4ConnectionPool(DB_URL, "test", "test", 2, 1000, 30000, 1);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void buildsDocumentsLikeWebApi() throws Exception {
+        Opus4SqlDocumentSource source = new Opus4SqlDocumentSource(pool, 10, 0);
+
+        Map<Integer, OpusDocument> documents = source.load(Arrays.asList(889, 17609));
+
+        assertSameDocument("/opus_394.xml", documents.get(889));
+        assertSameDocument("/opus_13429.xml", documents.get(17609));
+    }
+
+    @Test
+    public void loadsInChunksOfBatchSize() throws Exception {
+        Opus4SqlDocumentSource source = new Opus4SqlDocumentSource(pool, 1, 0);
+
+        Map<Integer, OpusDocument> documents = source.load(Arrays.asList(17609, 889, 4711));
+
+        assertEquals(Arrays.asList(17609, 889), new ArrayList<>(documents.keySet()));
+    }
+
+    @Test(expected = Exception.class)
+    public void failsForMissingDocument() throws Exception {
+        new Opus4SqlDocumentSource(pool, 10, 0).get(4711);
+    }
+
+    @Test
+    public void concurrentGetsShareBatches() throws Exception {
+        final Opus4SqlDocumentSource source = new Opus4SqlDocumentSource(pool, 10, 200);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<OpusDocument>> results = new ArrayList<>();
+        for (final int id : new int[]{889, 17609, 889, 17609}) {
+            results.add(executor.submit(new Callable<OpusDocument>() {
+                @Override
+                public OpusDocument call() throws Exception {
+                    return source.get(id);
+                }
+            }));
+        }
+        for (Future<OpusDocument> f : results) {
+            assertFalse(f.get().getOpus().getOpusDocument().getDocumentId().isEmpty());
+        }
+        executor.shutdown();
+        assertTrue("Expected less queries than documents", pool.getLeaseCount() < 4);
+    }
+
+    private void assertSameDocument(String expectedResource, OpusDocument actual) {
+        Diff diff = DiffBuilder
+                .compare(Input.fromStream(getClass().getResourceAsStream(expectedResource)))
+                .withTest(Input.fromString(actual.xmlText()))
+                // fixtures are pretty-printed
+                .normalizeWhitespace()
+                .withDifferenceEvaluator(DifferenceEvaluators.chain(
+                        DifferenceEvaluators.Default, ZERO_PADDED_TIME_IS_EQUAL))
+                .checkForIdentical()
+                .build();
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.camel.component.opus4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Opus4UrnIndexTest {
+
+    @Test
+    public void returnsDocumentIdForKnownUrn() {
+        Opus4UrnIndex index = new Opus4UrnIndex();
+        index.put("urn:nbn:de:bsz:14-qucosa-32825", 3282);
+        assertEquals(3282, index.get("urn:nbn:de:bsz:14-qucosa-32825"));
+    }
+
+    @Test
+    public void returnsMinusOneForUnknownUrn() {
+        Opus4UrnIndex index = new Opus4UrnIndex();
+        index.put("urn:nbn:de:bsz:14-qucosa-32825", 3282);
+        assertEquals(-1, index.get("urn:nbn:de:bsz:14-qucosa-32838"));
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        Opus4UrnIndex index = new Opus4UrnIndex(4);
+        for (int i = 0; i < 10000; i++) {
+            index.put("urn:nbn:de:bsz:14-qucosa-" + i, i);
+        }
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, index.get("urn:nbn:de:bsz:14-qucosa-" + i));
+        }
+    }
+
+    @Test
+    public void replacesDocumentIdOfExistingUrn() {
+        Opus4UrnIndex index = new Opus4UrnIndex();
+        index.put("urn:nbn:de:bsz:14-qucosa-32825", 1);
+        index.put("urn:nbn:de:bsz:14-qucosa-32825", 2);
+        assertEquals(1, index.size());
+        assertEquals(2, index.get("urn:nbn:de:bsz:14-qucosa-32825"));
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.opus4;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHeaders;
+import org.apache.http.message.BasicHeader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Opus4WebApiClientIT {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long stallMillis = 0;
+    private volatile int stallRequest = -1;
+    private Opus4WebApiClient client;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        // Backlog for bursts of concurrently opened connections
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 256);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/document", exchange -> {
+            int n = requests.incrementAndGet();
+            if (n == stallRequest || stallRequest == 0) {
+                try {
+                    Thread.sleep(stallMillis);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            byte[] body = ("<Opus>" + exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT) + "</Opus>")
+                    .getBytes(StandardCharsets.UTF_8);
+            try {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (java.io.IOException ignored) {
+                // aborted by the client
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void returnsResponseWithRequestHeaders() throws Exception {
+        client = client(5000, 0);
+        Opus4WebApiClient.Response response = client.get("/document/1", new BasicHeader(HttpHeaders.ACCEPT, "text/xml"));
+        assertEquals(200, response.getStatus());
+        assertEquals("<Opus>text/xml</Opus>", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void abortsRequestsExceedingDeadline() throws Exception {
+        client = client(200, 0);
+        stallRequest = 0;
+        stallMillis = 2000;
+
+        long start = System.currentTimeMillis();
+        try {
+            client.get("/document/1");
+        } catch (TimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start < 1500);
+            assertEquals(1, client.getDeadlineExceededCount());
+            return;
+        }
+        throw new AssertionError("Expected TimeoutException");
+    }
+
+    @Test
+    public void hedgesSlowRequests() throws Exception {
+        client = client(5000, 90);
+        for (int i = 0; i < Opus4WebApiClient.HEDGE_WARMUP_REQUESTS; i++) {
+            client.get("/document/" + i);
+        }
+        assertEquals(0, client.getHedgeCount());
+
+        stallRequest = requests.get() + 1;
+        stallMillis = 3000;
+        long start = System.currentTimeMillis();
+        Opus4WebApiClient.Response response = client.get("/document/4711");
+
+        assertEquals(200, response.getStatus());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, client.getHedgeCount());
+    }
+
+    @Test
+    public void distributesRequestsAcrossHosts() throws Exception {
+        HttpServer other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        AtomicInteger otherRequests = new AtomicInteger();
+        other.createContext("/document", exchange -> {
+            otherRequests.incrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        other.start();
+        try {
+            client = client(5000, 0, url(server), url(other));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(200, client.get("/document/" + i).getStatus());
+            }
+            assertTrue(requests.get() > 10);
+            assertTrue(otherRequests.get() > 10);
+        } finally {
+            other.stop(0);
+        }
+    }
+
+    @Test
+    public void failsOverToHealthyHosts() throws Exception {
+        HttpServer failing = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        AtomicInteger failingRequests = new AtomicInteger();
+        failing.createContext("/document", exchange -> {
+            failingRequests.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        failing.start();
+        try {
+            client = client(5000, 0, url(failing), url(server));
+            for (int i = 0; i < 50; i++) {
+                assertEquals(200, client.get("/document/" + i).getStatus());
+            }
+            assertTrue(failingRequests.get() <= 3);
+            assertTrue(client.getRetryCount() <= 3);
+        } finally {
+            failing.stop(0);
+        }
+    }
+
+    @Test
+    public void keepsManyRequestsInFlight() throws Exception {
+        client = client(10000, 0);
+        stallRequest = 0;
+        stallMillis = 200;
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Opus4WebApiClient.Response>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            responses.add(client.getAsync("/document/" + i));
+        }
+        for (CompletableFuture<Opus4WebApiClient.Response> response : responses) {
+            assertEquals(200, response.get().getStatus());
+        }
+        // 40 s one after another, well below a second with 100 connections in flight
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    private Opus4WebApiClient client(long deadline, double hedgePercentile) throws IOException {
+        return client(deadline, hedgePercentile, url(server));
+    }
+
+    private Opus4WebApiClient client(long deadline, double hedgePercentile, String... hosts) throws IOException {
+        return new Opus4WebApiClient(new Opus4HostSelector(Arrays.asList(hosts), 3, 60000, 0),
+                1000, 10000, deadline, hedgePercentile, 20);
+    }
+
+    private static String url(HttpServer server) {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+}
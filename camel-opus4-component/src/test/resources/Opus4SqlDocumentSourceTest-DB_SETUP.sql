@@ -0,0 +1,200 @@
+DROP TABLE IF EXISTS DOCUMENTS;
+CREATE TABLE DOCUMENTS (
+  ID INT PRIMARY KEY,
+  COMPLETED_DATE VARCHAR(255),
+  COMPLETED_YEAR VARCHAR(255),
+  CONTRIBUTING_CORPORATION VARCHAR(255),
+  CREATING_CORPORATION VARCHAR(255),
+  DATE_ACCEPTED VARCHAR(255),
+  EDITION VARCHAR(255),
+  ISSUE VARCHAR(255),
+  LANGUAGE VARCHAR(255),
+  NON_INSTITUTE_AFFILIATION VARCHAR(255),
+  PAGE_FIRST VARCHAR(255),
+  PAGE_LAST VARCHAR(255),
+  PAGE_NUMBER VARCHAR(255),
+  PUBLICATION_VERSION VARCHAR(255),
+  PUBLISHED_DATE VARCHAR(255),
+  PUBLISHED_YEAR VARCHAR(255),
+  PUBLISHER_NAME VARCHAR(255),
+  PUBLISHER_PLACE VARCHAR(255),
+  PUBLISHER_ADDRESS VARCHAR(255),
+  PUBLISHER_UNIVERSITY VARCHAR(255),
+  REVIEWED VARCHAR(255),
+  SERVER_DATE_MODIFIED VARCHAR(255),
+  SERVER_DATE_PUBLISHED VARCHAR(255),
+  SERVER_DATE_UNLOCKING VARCHAR(255),
+  SERVER_DATE_VALID VARCHAR(255),
+  SERVER_STATE VARCHAR(255),
+  SOURCE VARCHAR(4000),
+  TYPE VARCHAR(255),
+  VG_WORT_OPEN_KEY VARCHAR(255),
+  VOLUME VARCHAR(255),
+  FIS_EXPORT VARCHAR(255),
+  TABLE_OF_CONTENT VARCHAR(4000)
+);
+
+INSERT INTO DOCUMENTS (ID, COMPLETED_DATE, COMPLETED_YEAR, CONTRIBUTING_CORPORATION, CREATING_CORPORATION, DATE_ACCEPTED, EDITION, ISSUE, LANGUAGE, NON_INSTITUTE_AFFILIATION, PAGE_FIRST, PAGE_LAST, PAGE_NUMBER, PUBLICATION_VERSION, PUBLISHED_DATE, PUBLISHED_YEAR, PUBLISHER_NAME, PUBLISHER_PLACE, PUBLISHER_ADDRESS, PUBLISHER_UNIVERSITY, REVIEWED, SERVER_DATE_MODIFIED, SERVER_DATE_PUBLISHED, SERVER_DATE_UNLOCKING, SERVER_DATE_VALID, SERVER_STATE, SOURCE, TYPE, VG_WORT_OPEN_KEY, VOLUME, FIS_EXPORT, TABLE_OF_CONTENT) VALUES
+  ('889', '2008-03-10T11:44:56+01:00', '0000', NULL, NULL, NULL, NULL, NULL, 'ger', NULL, '0', '0', '0', NULL, NULL, NULL, 'Saechsische Landesbibliothek- Staats- und Universitaetsbibliothek Dresden', 'Dresden', 'Zellescher Weg 18, 01069 Dresden, Germany', NULL, NULL, '2010-11-22T15:38:12+01:00', '2008-03-10T11:44:56+01:00', NULL, NULL, 'published', 'BIS - Das Magazin der Bibliotheken in Sachsen 1(2008)1, S. 8 - 11', 'article', NULL, NULL, '0', NULL),
+  ('17609', '2015-08-11T00:00:00+02:00', NULL, NULL, NULL, NULL, NULL, NULL, 'eng', NULL, NULL, NULL, NULL, NULL, NULL, '2015', 'Universitätsbibliothek Leipzig', 'Leipzig', 'Beethovenstraße 6, 04107 Leipzig', NULL, NULL, '2015-08-11T10:36:27+02:00', '2015-08-11T10:35:39+02:00', NULL, NULL, 'published', 'PLoS one 2015, 10(8): e0135272', 'article', NULL, NULL, NULL, NULL);
+
+DROP TABLE IF EXISTS DOCUMENT_TITLE_ABSTRACTS;
+CREATE TABLE DOCUMENT_TITLE_ABSTRACTS (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  TYPE VARCHAR(20),
+  LANGUAGE VARCHAR(3),
+  VALUE VARCHAR(4000),
+  SORT_ORDER VARCHAR(10)
+);
+
+INSERT INTO DOCUMENT_TITLE_ABSTRACTS (ID, DOCUMENT_ID, TYPE, LANGUAGE, VALUE, SORT_ORDER) VALUES
+  (1, '889', 'main', 'ger', 'Gemeinschaft macht stark', NULL),
+  (2, '889', 'abstract', 'ger', 'Ein Bibliotheksland mit großer Geschichte Sachsen ist eine der dichtesten und traditionsreichsten Bibliothekslandschaften in Deutschland. In der neuzeitlichen Geschichte bis 1933 gingen von hier zahlreiche Impulse aus.', NULL),
+  (3, '889', 'sub', 'ger', 'Kooperation und Vernetzung der wissenschaftlichen Bibliotheken im Freistaat Sachsen', NULL),
+  (4, '17609', 'main', 'eng', 'Correlation of lung collapse and gas exchange', NULL),
+  (5, '17609', 'abstract', 'eng', 'Background: Atelectasis can provoke pulmonary and non-pulmonary complications after general anaesthesia. Unfortunately, there is no instrument to estimate atelectasis and prompt changes of mechanical ventilation during general anaesthesia. Although arterial partial pressure of oxygen (PaO2) and intrapulmonary shunt have both been suggested to correlate with atelectasis, studies yielded inconsistent results. Therefore, we investigated these correlations. Methods: Shunt, PaO2 and atelectasis were measured in 11 sheep and 23 pigs with otherwise normal lungs. In pigs, contrasting measurements were available 12 hours after induction of acute respiratory distress syndrome (ARDS). Atelectasis was calculated by computed tomography relative to total lung mass (Mtotal). We logarithmically transformed PaO2 (lnPaO2) to linearize its relationships with shunt and atelectasis. Data are given as median (interquartile range). Results: Mtotal was 768 (715–884) g in sheep and 543 (503–583) g in pigs. Atelectasis was 26 (16–47)% in sheep and 18 (13–23) % in pigs. PaO2 (FiO2 = 1.0) was 242 (106–414) mmHg in sheep and 480 (437–514) mmHg in pigs. Shunt was 39 (29–51)% in sheep and 15 (11–20) % in pigs. Atelectasis correlated closely with lnPaO2 (R2 = 0.78) and shunt (R2 = 0.79) in sheep (P-values<0.0001). The correlation of atelectasis with lnPaO2 (R2 = 0.63) and shunt (R2 = 0.34) was weaker in pigs, but R2 increased to 0.71 for lnPaO2 and 0.72 for shunt 12 hours after induction of ARDS. In both, sheep and pigs, changes in atelectasis correlated strongly with corresponding changes in lnPaO2 and shunt. Discussion and Conclusion: In lung-healthy sheep, atelectasis correlates closely with lnPaO2 and shunt, when blood gases are measured during ventilation with pure oxygen. In lung-healthy pigs, these correlations were significantly weaker, likely because pigs have stronger hypoxic pulmonary vasoconstriction (HPV) than sheep and humans. Nevertheless, correlations improved also in pigs after blunting of HPV during ARDS. In humans, the observed relationships may aid in assessing anaesthesia-related atelectasis.', NULL),
+  (6, '17609', 'sub', 'eng', 'a computer tomographic study in sheep and pigs with atelectasis in otherwise normal lungs', NULL);
+
+DROP TABLE IF EXISTS DOCUMENT_IDENTIFIERS;
+CREATE TABLE DOCUMENT_IDENTIFIERS (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  TYPE VARCHAR(20),
+  VALUE VARCHAR(255)
+);
+
+INSERT INTO DOCUMENT_IDENTIFIERS (ID, DOCUMENT_ID, TYPE, VALUE) VALUES
+  (1, '889', 'urn', 'urn:nbn:de:bsz:14-ds-1205145664610-66041'),
+  (2, '889', 'deds', '1205145664610-6604'),
+  (3, '889', 'ppn', '285361678'),
+  (4, '17609', 'urn', 'urn:nbn:de:bsz:15-qucosa-176099'),
+  (5, '17609', 'issn', '1932-6203');
+
+DROP TABLE IF EXISTS DOCUMENT_REFERENCES;
+CREATE TABLE DOCUMENT_REFERENCES (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  TYPE VARCHAR(20),
+  VALUE VARCHAR(255),
+  LABEL VARCHAR(255),
+  RELATION VARCHAR(255),
+  SORT_ORDER VARCHAR(10)
+);
+
+INSERT INTO DOCUMENT_REFERENCES (ID, DOCUMENT_ID, TYPE, VALUE, LABEL, RELATION, SORT_ORDER) VALUES
+  (1, '889', 'urn', 'urn:nbn:de:bsz:14-ds-1206548602741-00127', NULL, 'issue', '008'),
+  (2, '17609', 'url', 'http://dx.doi.org/10.1371/journal.pone.0135272', 'Link zur Originalpublikation in der Zeitschrift PLoS one', NULL, NULL);
+
+DROP TABLE IF EXISTS DOCUMENT_NOTES;
+CREATE TABLE DOCUMENT_NOTES (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  MESSAGE VARCHAR(4000),
+  CREATOR VARCHAR(255),
+  SCOPE VARCHAR(20)
+);
+
+DROP TABLE IF EXISTS PERSONS;
+CREATE TABLE PERSONS (
+  ID INT PRIMARY KEY,
+  ACADEMIC_TITLE VARCHAR(255),
+  DATE_OF_BIRTH VARCHAR(50),
+  PLACE_OF_BIRTH VARCHAR(255),
+  GENDER VARCHAR(10),
+  PHONE VARCHAR(255),
+  EMAIL VARCHAR(255),
+  FIRST_NAME VARCHAR(255),
+  LAST_NAME VARCHAR(255)
+);
+
+DROP TABLE IF EXISTS LINK_PERSONS_DOCUMENTS;
+CREATE TABLE LINK_PERSONS_DOCUMENTS (
+  PERSON_ID INT,
+  DOCUMENT_ID INT,
+  ROLE VARCHAR(20),
+  SORT_ORDER VARCHAR(10),
+  ALLOW_EMAIL_CONTACT VARCHAR(5)
+);
+
+DROP TABLE IF EXISTS DOCUMENT_SUBJECTS;
+CREATE TABLE DOCUMENT_SUBJECTS (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  TYPE VARCHAR(20),
+  LANGUAGE VARCHAR(3),
+  VALUE VARCHAR(4000),
+  EXTERNAL_KEY VARCHAR(255)
+);
+
+INSERT INTO DOCUMENT_SUBJECTS (ID, DOCUMENT_ID, TYPE, LANGUAGE, VALUE, EXTERNAL_KEY) VALUES
+  (1, '889', 'ddc', NULL, '020', NULL),
+  (2, '889', 'rvk', NULL, 'AN 80190', NULL),
+  (3, '889', 'uncontrolled', 'ger', 'Sachsen, Bibliotheken, Kooperation, Vernetzung', NULL),
+  (4, '889', 'uncontrolled', 'eng', 'Saxony, Libraries, Cooperation, Networking', NULL),
+  (5, '17609', 'ddc', NULL, '610', NULL),
+  (6, '17609', 'uncontrolled', 'ger', 'Lunge, Atelektase, Lungenkollaps, Gasaustausch', NULL),
+  (7, '17609', 'uncontrolled', 'eng', 'Lung, atelectasis, lung collapse, gas exchange', NULL);
+
+DROP TABLE IF EXISTS DOCUMENT_FILES;
+CREATE TABLE DOCUMENT_FILES (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  PATH_NAME VARCHAR(255),
+  SORT_ORDER VARCHAR(10),
+  LABEL VARCHAR(255),
+  FILE_TYPE VARCHAR(255),
+  MIME_TYPE VARCHAR(255),
+  LANGUAGE VARCHAR(3),
+  TEMP_FILE VARCHAR(255),
+  FILE_SIZE VARCHAR(20),
+  VISIBLE_IN_OAI VARCHAR(1),
+  VISIBLE_IN_FRONTDOOR VARCHAR(1)
+);
+
+INSERT INTO DOCUMENT_FILES (ID, DOCUMENT_ID, PATH_NAME, SORT_ORDER, LABEL, FILE_TYPE, MIME_TYPE, LANGUAGE, TEMP_FILE, FILE_SIZE, VISIBLE_IN_OAI, VISIBLE_IN_FRONTDOOR) VALUES
+  ('359', '889', '1205145664610-6604.pdf', '0', 'Volltextdokument (PDF)', NULL, 'application/pdf', NULL, NULL, '169608', '1', '1'),
+  ('56590', '17609', 'OAP-2015-115-Wolf_journal.pone.0135272.pdf', '0', 'Volltext (PDF)', NULL, 'application/pdf', NULL, NULL, '619767', '1', '1');
+
+DROP TABLE IF EXISTS FILE_HASHVALUES;
+CREATE TABLE FILE_HASHVALUES (
+  FILE_ID INT,
+  TYPE VARCHAR(20),
+  VALUE VARCHAR(255)
+);
+
+INSERT INTO FILE_HASHVALUES (FILE_ID, TYPE, VALUE) VALUES
+  ('359', 'md5', 'f1545656599c64cf2999389007cbab8b'),
+  ('359', 'sha512', 'dbf558950d428ea48213c2239eafbbba8e114e4710e32ee2526a0d510d2bdcb71368a516ee69963c0e4c35a621764b256f4eb9c1e32920644cd64390f1a36bea'),
+  ('56590', 'md5', '38bbd331a11bde81e273ca8de896c039'),
+  ('56590', 'sha512', '60b55aa7826285ada9f84e5e00d66ed32cf0b5463efc72b32e5895669704aed8e37ca6d15983bd21d9bebc81e90a4f2232394d3e167bd72f787dbdcafa3de966');
+
+DROP TABLE IF EXISTS DOCUMENT_ORGANISATIONS;
+CREATE TABLE DOCUMENT_ORGANISATIONS (
+  ID INT PRIMARY KEY,
+  DOCUMENT_ID INT,
+  TYPE VARCHAR(20),
+  ADDRESS VARCHAR(255),
+  ROLE VARCHAR(20),
+  TUD_FIS_KEY_FACULTY VARCHAR(20),
+  TUD_FIS_KEY_CHAIR VARCHAR(20),
+  FREE_SUBMISSION VARCHAR(1),
+  FIRST_LEVEL_NAME VARCHAR(255),
+  SECOND_LEVEL_NAME VARCHAR(255),
+  THIRD_LEVEL_NAME VARCHAR(255),
+  FOURTH_LEVEL_NAME VARCHAR(255),
+  FIFTH_LEVEL_NAME VARCHAR(255),
+  SIXTH_LEVEL_NAME VARCHAR(255)
+);
+
+INSERT INTO DOCUMENT_ORGANISATIONS (ID, DOCUMENT_ID, TYPE, ADDRESS, ROLE, TUD_FIS_KEY_FACULTY, TUD_FIS_KEY_CHAIR, FREE_SUBMISSION, FIRST_LEVEL_NAME, SECOND_LEVEL_NAME, THIRD_LEVEL_NAME, FOURTH_LEVEL_NAME, FIFTH_LEVEL_NAME, SIXTH_LEVEL_NAME) VALUES
+  (1, '889', 'other', 'Dresden', 'publisher', '0', '0', '0', 'SLUB Dresden', 'Allgemein', NULL, NULL, NULL, NULL),
+  (2, '17609', 'university', 'Leipzig', 'contributor', NULL, NULL, '0', 'Universitätsklinikum Leipzig', 'Klinik und Poliklinik für Anästhesiologie und Intensivtherapie', NULL, NULL, NULL, NULL),
+  (3, '17609', 'other', 'Coswig', 'contributor', NULL, NULL, '0', 'Fachkrankenhaus Coswig', 'Anästhesiologie und Intensivtherapie', NULL, NULL, NULL, NULL),
+  (4, '17609', 'university', 'São Paulo, Brazil', 'contributor', NULL, NULL, '0', 'University of São Paulo', 'Hospital das Clínicas', NULL, 'Cardio-Pulmonary Department, Pulmonary Division', NULL, NULL),
+  (5, '17609', 'other', 'São Paulo, Brazil', 'contributor', NULL, NULL, '0', 'Hospital Sírio Libanês', 'Research and Education Institute', NULL, NULL, NULL, NULL),
+  (6, '17609', 'university', 'Dresden', 'contributor', NULL, NULL, '0', 'Universitätsklinikum Carl Gustav Carus', 'Klinik und Poliklinik für Anästhesiologie und Intensivtherapie', NULL, NULL, NULL, NULL),
+  (7, '17609', 'university', 'Leipzig', 'contributor', NULL, NULL, '0', 'Universitätsklinikum Leipzig', 'Klinik für Orthopädie, Unfallchirurgie und Plastische Chirurgie', NULL, NULL, NULL, NULL),
+  (8, '17609', 'university', 'Rio de Janeiro, Brazil', 'contributor', NULL, NULL, '0', 'Federal University of Rio de Janeiro', 'Carlos Chagas Biophysics Institute', NULL, NULL, NULL, NULL),
+  (9, '17609', 'other', 'Lawrence, Kan.', 'publisher', NULL, NULL, '0', 'PLoS', NULL, NULL, NULL, NULL, NULL);
+
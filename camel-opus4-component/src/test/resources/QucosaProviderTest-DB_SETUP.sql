@@ -8,7 +8,20 @@ CREATE TABLE RESOURCES (
 INSERT INTO RESOURCES (ID, PARENT_ID, NAME) VALUES
   (1, NULL, 'SLUB'),
   (2, 1, 'Opus/Document/10'),
-  (3, 1, 'Opus/Document/20');
+  (3, 1, 'Opus/Document/20'),
+  (4, 1, 'Opus/Document/300'),
+  (5, 1, 'Opus/Document/400'),
+  (6, 1, 'Opus/Document/500'),
+  (7, NULL, 'TUC'),
+  (8, 7, 'TUC/Theses'),
+  (9, 8, 'TUC/Theses/2015'),
+  (10, 7, 'Opus/Document/6000'),
+  (11, 8, 'Opus/Document/7000'),
+  (12, 9, 'Opus/Document/8000'),
+  (13, 9, 'Opus/Document/6000'),
+  (14, 15, 'Loop'),
+  (15, 14, 'Loop/Child'),
+  (16, 15, 'Opus/Document/9000');
 
 DROP TABLE IF EXISTS DOCUMENT_IDENTIFIERS;
 CREATE TABLE DOCUMENT_IDENTIFIERS (
@@ -19,4 +32,22 @@ CREATE TABLE DOCUMENT_IDENTIFIERS (
 );
 
 INSERT INTO DOCUMENT_IDENTIFIERS (ID, DOCUMENT_ID, TYPE, VALUE) VALUES
-  (1, 3282, 'urn', 'urn:nbn:de:bsz:14-qucosa-32825');
+  (1, 3282, 'urn', 'urn:nbn:de:bsz:14-qucosa-32825'),
+  (2, 3283, 'urn', 'urn:nbn:de:bsz:14-qucosa-32838'),
+  (3, 3284, 'urn', 'urn:nbn:de:bsz:14-qucosa-32841'),
+  (4, 3284, 'isbn', '978-3-86780-000-0');
+
+DROP TABLE IF EXISTS DOCUMENTS;
+CREATE TABLE DOCUMENTS (
+  ID                   INT PRIMARY KEY,
+  SERVER_DATE_MODIFIED VARCHAR(255)
+);
+
+-- Dates are stored as ISO strings with varying offsets, so 50 sorts after 20 and 30 as string,
+-- but has been modified before them
+INSERT INTO DOCUMENTS (ID, SERVER_DATE_MODIFIED) VALUES
+  (10, '2015-03-01T10:00:00+01:00'),
+  (20, '2016-07-15T08:30:00+02:00'),
+  (30, '2016-07-15T07:30:00+01:00'),
+  (40, '2017-01-31T12:00:00+01:00'),
+  (50, '2016-07-15T10:00:00+05:00');
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent requests to a host, adapting the limit to the host's capacity.
+ * <p>
+ * An overload signal, i.e. a 503 or other server error, or an I/O error, multiplies the limit by
+ * the backoff factor. Successful requests compare the recent average latency to a long-term
+ * baseline: as long as the recent latency stays within the configured tolerance of the baseline,
+ * the limit grows by <code>1/limit</code>, that is by about one per round-trip. Beyond that, the
+ * limit is scaled down by the gradient <code>tolerance * baseline / recent</code>, but by no more
+ * than half, so it shrinks in proportion to the queueing at the host. Only one decrease happens
+ * per round-trip, so a burst of signals from requests started before the last decrease doesn't
+ * collapse the limit.
+ * <p>
+ * Callers get a {@link Permit} asynchronously with {@link #acquireAsync()}. They queue up without
+ * occupying a thread and are served in order when permits become available. Every permit has to
+ * be completed with exactly one of its methods once the request is done, usually with
+ * {@link Permit#completed(int)} for a response, {@link Permit#overloaded()} for a failed request
+ * and {@link Permit#ignored()} for a cancelled one.
+ * <p>
+ * All clients of a host using the same configuration prefix share one limiter, see
+ * {@link #forHost}. Its settings are read from the configuration below that prefix:
+ * <ul>
+ * <li><code>concurrency.initial</code>: initial limit (default 4)</li>
+ * <li><code>concurrency.min</code>: lower bound (default 1)</li>
+ * <li><code>concurrency.max</code>: upper bound (default 64), but no more than the connections the
+ * pooled HTTP clients of that prefix keep to the host, so requests don't wait for a connection lease
+ * and time out, see {@link PooledHttpClients}</li>
+ * <li><code>concurrency.latencyTolerance</code>: recent latency relative to the baseline above
+ * which the limit shrinks (default 2.0)</li>
+ * <li><code>concurrency.backoff</code>: factor applied on overload (default 0.7)</li>
+ * </ul>
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BASELINE_SMOOTHING = 0.01;
+    private static final double LATENCY_SMOOTHING = 0.5;
+    private static final long MIN_LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MIN_GRADIENT = 0.5;
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final double backoff;
+    private final String host;
+    private final double latencyTolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxLimit;
+    private final int minLimit;
+    private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+
+    private int inFlight = 0;
+    private long lastDecrease;
+    private double limit;
+    private double baselineLatency = 0;
+    private double recentLatency = 0;
+
+    private long decreases = 0;
+    private int peakLimit;
+    private long requests = 0;
+
+    AdaptiveConcurrencyLimiter(String host, int initialLimit, int minLimit, int maxLimit,
+                               double latencyTolerance, double backoff) {
+        this.host = host;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.peakLimit = (int) limit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoff = backoff;
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * @return the limiter shared by all clients of the host of the given URL that are configured
+     * below the given prefix
+     */
+    public static AdaptiveConcurrencyLimiter forHost(String url, Configuration conf, String prefix) {
+        URI uri = URI.create(url);
+        String name = prefix + "@" + uri.getHost() + ":" + uri.getPort();
+        int connections = PooledHttpClients.maxConnectionsPerRoute(conf, prefix);
+        return limiters.computeIfAbsent(name, h -> new AdaptiveConcurrencyLimiter(h,
+                conf.getInt(prefix + ".concurrency.initial", 4),
+                Math.min(connections, conf.getInt(prefix + ".concurrency.min", 1)),
+                Math.min(connections, conf.getInt(prefix + ".concurrency.max", 64)),
+                conf.getDouble(prefix + ".concurrency.latencyTolerance", 2.0),
+                conf.getDouble(prefix + ".concurrency.backoff", 0.7)));
+    }
+
+    /**
+     * Requests a permit without waiting. The returned future completes right away if another
+     * request may be sent, or else when an earlier request completes. The permit has to be
+     * completed with exactly one of its methods once the request is done.
+     */
+    public CompletableFuture<Permit> acquireAsync() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit && waiting.isEmpty()) {
+                inFlight++;
+                requests++;
+                return CompletableFuture.completedFuture(new Permit(System.nanoTime()));
+            }
+            CompletableFuture<Permit> permit = new CompletableFuture<>();
+            waiting.add(permit);
+            return permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of asynchronous callers waiting for a permit
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("%s: limit %d (peak %d), %d requests, %d decreases",
+                    host, (int) limit, peakLimit, requests, decreases);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete(long start, boolean overloaded, boolean measured) {
+        long now = System.nanoTime();
+        long latency = now - start;
+        List<CompletableFuture<Permit>> granted = null;
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded) {
+                decrease(start, now, backoff);
+            } else if (measured) {
+                recordLatency(latency);
+                double gradient = Math.max(MIN_GRADIENT,
+                        Math.min(1.0, latencyTolerance * baselineLatency / recentLatency));
+                if (gradient < 1.0) {
+                    decrease(start, now, gradient);
+                } else if (inFlight + 1 >= (int) limit / 2) {
+                    // Only grow while the current limit is actually used
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                    if ((int) limit > peakLimit) {
+                        peakLimit = (int) limit;
+                        log.debug(String.format("Raised concurrent requests to %s to %d", host, peakLimit));
+                    }
+                }
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                if (granted == null) granted = new ArrayList<>();
+                granted.add(waiting.poll());
+                inFlight++;
+                requests++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (granted != null) {
+            // Completed outside the lock, since waiting callers continue right away
+            for (CompletableFuture<Permit> waiter : granted) {
+                Permit permit = new Permit(System.nanoTime());
+                if (!waiter.complete(permit)) permit.ignored();
+            }
+        }
+    }
+
+    private void decrease(long start, long now, double factor) {
+        // Only requests started after the last decrease reflect the current limit
+        if (start - lastDecrease > 0) {
+            int previous = (int) limit;
+            limit = Math.max(minLimit, limit * factor);
+            lastDecrease = now;
+            decreases++;
+            if ((int) limit != previous) {
+                log.info(String.format("Reduced concurrent requests to %s to %d", host, (int) limit));
+            }
+        }
+    }
+
+    private void recordLatency(long latency) {
+        latency = Math.max(latency, MIN_LATENCY);
+        if (baselineLatency == 0) {
+            baselineLatency = recentLatency = latency;
+            return;
+        }
+        recentLatency = (1 - LATENCY_SMOOTHING) * recentLatency + LATENCY_SMOOTHING * latency;
+        baselineLatency = (1 - BASELINE_SMOOTHING) * baselineLatency + BASELINE_SMOOTHING * latency;
+        if (baselineLatency > 2 * recentLatency) {
+            // Follow a drop in latency faster, so a later increase is noticed
+            baselineLatency = Math.max(recentLatency, 0.9 * baselineLatency);
+        }
+    }
+
+    /**
+     * Permission to send one request.
+     */
+    public class Permit {
+        private final long start;
+        private boolean completed = false;
+
+        private Permit(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Classifies the outcome by HTTP status: server errors signal overload, client errors
+         * say nothing about the load.
+         */
+        public void completed(int statusCode) {
+            if (statusCode >= 500 || statusCode == 429) {
+                overloaded();
+            } else if (statusCode >= 400) {
+                ignored();
+            } else {
+                succeeded();
+            }
+        }
+
+        /**
+         * The host answered normally.
+         */
+        public void succeeded() {
+            if (done()) complete(start, false, true);
+        }
+
+        /**
+         * The host signalled overload, e.g. with a 503, or the request failed or timed out.
+         */
+        public void overloaded() {
+            if (done()) complete(start, true, false);
+        }
+
+        /**
+         * The request ended without saying anything about the host's load.
+         */
+        public void ignored() {
+            if (done()) complete(start, false, false);
+        }
+
+        private synchronized boolean done() {
+            if (completed) return false;
+            completed = true;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HTTP;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds pooled HTTP clients for the SWORD and Fedora APIs.
+ * <p>
+ * Credentials are sent preemptively with every request, which saves the round-trip for the
+ * authentication challenge. Pool sizes, timeouts and connection lifetimes are read from the
+ * configuration, using keys below the given prefix:
+ * <ul>
+ * <li><code>http.maxConnections</code>: total number of pooled connections (default 20)</li>
+ * <li><code>http.maxConnectionsPerRoute</code>: connections per host (default 20)</li>
+ * <li><code>http.connectTimeout</code>: milliseconds to establish or lease a connection (default 10000)</li>
+ * <li><code>http.socketTimeout</code>: milliseconds of inactivity while waiting for data (default 300000)</li>
+ * <li><code>http.keepAlive</code>: milliseconds to keep idle connections if the server doesn't say (default 30000)</li>
+ * <li><code>http.idleTimeout</code>: milliseconds after which idle connections are evicted (default 60000)</li>
+ * <li><code>http.ioThreads</code>: I/O threads of non-blocking clients (default: number of processors)</li>
+ * <li><code>http.callbackThreads</code>: threads handling completed requests of non-blocking clients
+ * (default: number of processors)</li>
+ * </ul>
+ * Non-blocking clients notice connections closed by the server while they are idle, so they
+ * don't need the eviction of idle connections.
+ */
+public final class PooledHttpClients {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    private PooledHttpClients() {
+    }
+
+    /**
+     * @return the number of connections a client configured below the given prefix keeps to one host
+     */
+    static int maxConnectionsPerRoute(Configuration conf, String prefix) {
+        return Math.min(conf.getInt(prefix + ".http.maxConnections", DEFAULT_MAX_CONNECTIONS),
+                conf.getInt(prefix + ".http.maxConnectionsPerRoute", DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /**
+     * @param prefix Configuration key prefix, e.g. <code>sword</code>
+     */
+    public static CloseableHttpClient create(Configuration conf, String prefix, String user, String password) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(conf.getInt(prefix + ".http.maxConnections", DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute(
+                conf.getInt(prefix + ".http.maxConnectionsPerRoute", DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setValidateAfterInactivity(2000);
+
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .addInterceptorFirst(preemptiveAuthentication(user, password))
+                .setKeepAliveStrategy(keepAliveStrategy(conf.getLong(prefix + ".http.keepAlive", 30000)))
+                .setDefaultRequestConfig(requestConfig(conf, prefix))
+                .evictExpiredConnections()
+                .evictIdleConnections(conf.getLong(prefix + ".http.idleTimeout", 60000), TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Builds and starts a non-blocking client. Pending requests don't occupy threads, so a few
+     * I/O threads serve any number of concurrent requests.
+     */
+    public static CloseableHttpAsyncClient createAsync(Configuration conf, String prefix, String user, String password)
+            throws IOReactorException {
+        final int connectTimeout = conf.getInt(prefix + ".http.connectTimeout", 10000);
+
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                        .setIoThreadCount(conf.getInt(prefix + ".http.ioThreads",
+                                Runtime.getRuntime().availableProcessors()))
+                        .setConnectTimeout(connectTimeout)
+                        .setSoTimeout(conf.getInt(prefix + ".http.socketTimeout", 300000))
+                        .build(), daemonThreads(prefix + "-http-io-")));
+        connectionManager.setMaxTotal(conf.getInt(prefix + ".http.maxConnections", DEFAULT_MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute(
+                conf.getInt(prefix + ".http.maxConnectionsPerRoute", DEFAULT_MAX_CONNECTIONS));
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .addInterceptorFirst(preemptiveAuthentication(user, password))
+                .setKeepAliveStrategy(keepAliveStrategy(conf.getLong(prefix + ".http.keepAlive", 30000)))
+                .setDefaultRequestConfig(requestConfig(conf, prefix))
+                .disableCookieManagement()
+                .setThreadFactory(daemonThreads(prefix + "-http-dispatch-"))
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * Creates the pool completing requests of non-blocking clients, so that work following a
+     * response doesn't stall the I/O threads.
+     */
+    public static ExecutorService createCallbackExecutor(Configuration conf, String prefix) {
+        return Executors.newFixedThreadPool(
+                conf.getInt(prefix + ".http.callbackThreads", Runtime.getRuntime().availableProcessors()),
+                daemonThreads(prefix + "-http-callback-"));
+    }
+
+    private static HttpRequestInterceptor preemptiveAuthentication(String user, String password) {
+        final String authorization = "Basic " + Base64.getEncoder().encodeToString(
+                (user + ":" + password).getBytes(StandardCharsets.UTF_8));
+        return (request, context) -> {
+            if (!request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+                request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+            }
+        };
+    }
+
+    private static RequestConfig requestConfig(Configuration conf, String prefix) {
+        final int connectTimeout = conf.getInt(prefix + ".http.connectTimeout", 10000);
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(conf.getInt(prefix + ".http.socketTimeout", 300000))
+                .build();
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(final long defaultMillis) {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(defaultMillis, Long.parseLong(element.getValue()) * 1000);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+            return defaultMillis;
+        };
+    }
+
+}
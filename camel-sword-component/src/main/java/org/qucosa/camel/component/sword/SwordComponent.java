@@ -19,7 +19,6 @@ package org.qucosa.camel.component.sword;
 
 import org.apache.camel.Endpoint;
 import org.apache.camel.impl.DefaultComponent;
-import org.apache.camel.impl.ProcessorEndpoint;
 
 import java.util.Map;
 
@@ -27,14 +26,23 @@ public class SwordComponent extends DefaultComponent {
     @Override
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
         if (remaining.startsWith("deposit")) {
-            return new ProcessorEndpoint(uri, this, new SwordDepositProcessor(DepositMode.DEPOSIT));
+            return new SwordEndpoint(uri, this, new SwordDepositProcessor(DepositMode.DEPOSIT));
         }
         if (remaining.startsWith("update")) {
-            return new ProcessorEndpoint(uri, this, new SwordDepositProcessor(DepositMode.UPDATE));
+            return new SwordEndpoint(uri, this, new SwordDepositProcessor(DepositMode.UPDATE));
         }
         throw new Exception("Unknown endpoint URI:" + remaining);
     }
 
+    @Override
+    protected void doShutdown() throws Exception {
+        SwordConnection connection = (SwordConnection) getCamelContext().getRegistry()
+                .lookupByName(SwordConnection.DATA_SOURCE_NAME);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
     public enum DepositMode {
         DEPOSIT, UPDATE
     }
@@ -19,31 +19,38 @@ package org.qucosa.camel.component.sword;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.BasicHttpEntity;
-import org.apache.http.entity.BufferedHttpEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.apache.commons.io.IOUtils.toInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * Connection to a SWORD service. Deposits and updates are sent by non-blocking I/O and
+ * limited per host by an {@link AdaptiveConcurrencyLimiter}. Requests waiting for a permit or
+ * a response don't occupy a thread; their futures are completed by a small pool of callback
+ * threads.
+ */
 public class SwordConnection {
 
     public static final String DATA_SOURCE_NAME = "swordConnection";
     private static final Logger log = LoggerFactory.getLogger(SwordConnection.class);
-    private HttpClient httpClient;
+    private ExecutorService callbackExecutor;
+    private CloseableHttpAsyncClient httpClient;
+    private AdaptiveConcurrencyLimiter limiter;
     private String password;
     private String url;
     private String user;
@@ -52,20 +59,75 @@ public class SwordConnection {
         url = getConfigValueOrThrowException(conf, "sword.url");
         user = getConfigValueOrThrowException(conf, "sword.user");
         password = getConfigValueOrThrowException(conf, "sword.password");
-        httpClient = prepareHttpClient();
+        try {
+            httpClient = PooledHttpClients.createAsync(conf, "sword", user, password);
+        } catch (IOException e) {
+            throw new ConfigurationException("Cannot start SWORD HTTP client", e);
+        }
+        callbackExecutor = PooledHttpClients.createCallbackExecutor(conf, "sword");
+        limiter = AdaptiveConcurrencyLimiter.forHost(url, conf, "sword");
     }
 
-    private HttpClient prepareHttpClient() {
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    public void close() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("Error closing SWORD HTTP client: " + e.getMessage());
+            }
+            httpClient = null;
+        }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdown();
+            callbackExecutor = null;
+        }
+        if (limiter != null) {
+            log.info("SWORD requests to " + limiter);
+        }
+    }
+
+    AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
 
-        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(AuthScope.ANY,
-                new UsernamePasswordCredentials(user, password));
+    /**
+     * Sends the request as soon as the limiter permits it.
+     */
+    private CompletableFuture<HttpResponse> execute(final HttpUriRequest request) {
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        final CloseableHttpAsyncClient client = httpClient;
+        final ExecutorService callbacks = callbackExecutor;
+        limiter.acquireAsync().thenAccept(permit -> {
+            try {
+                client.execute(request, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        permit.completed(response.getStatusLine().getStatusCode());
+                        callbacks.execute(() -> result.complete(response));
+                    }
 
-        return HttpClientBuilder.create()
-                .setConnectionManager(connectionManager)
-                .setDefaultCredentialsProvider(credentialsProvider)
-                .build();
+                    @Override
+                    public void failed(Exception e) {
+                        permit.overloaded();
+                        callbacks.execute(() -> result.completeExceptionally(e));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        permit.ignored();
+                        callbacks.execute(() -> result.cancel(false));
+                    }
+                });
+            } catch (RuntimeException e) {
+                permit.ignored();
+                result.completeExceptionally(e);
+            }
+        });
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            result.whenComplete((response, e) -> SwordDepositBody.release(entity));
+        }
+        return result;
     }
 
     private String getConfigValueOrThrowException(Configuration conf, String key) throws ConfigurationException {
@@ -76,80 +138,130 @@ public class SwordConnection {
         return val;
     }
 
-    HttpResponse deposit(SwordDeposit deposit, Boolean noop, String slugHeader, String onBehalfOfHeader) throws Exception {
-        URIBuilder uriBuilder = new URIBuilder(url + "/" + deposit.getCollection());
-        HttpPost httpPost = new HttpPost(uriBuilder.build());
-        httpPost.setHeader("X-No-Op", String.valueOf(noop));
-        httpPost.setHeader("Content-Type", deposit.getContentType());
+    CompletableFuture<HttpResponse> deposit(final SwordDeposit deposit, final Boolean noop,
+                                            final String slugHeader, final String onBehalfOfHeader) {
+        return deposit(deposit, noop, slugHeader, onBehalfOfHeader, null);
+    }
 
-        if (onBehalfOfHeader != null && !onBehalfOfHeader.isEmpty()) {
-            httpPost.setHeader("X-On-Behalf-Of", onBehalfOfHeader);
+    /**
+     * Deposits all documents of the package with a single request.
+     *
+     * @return the PIDs of the deposited objects, in package order
+     */
+    CompletableFuture<List<String>> deposit(final SwordDepositPackage depositPackage, final Boolean noop,
+                                            final String onBehalfOfHeader) {
+        SwordDeposit deposit;
+        try {
+            deposit = depositPackage.toDeposit();
+        } catch (Exception e) {
+            return failed(e);
         }
 
-        if (slugHeader != null && !slugHeader.isEmpty()) {
-            httpPost.setHeader("Slug", slugHeader);
-        }
+        return deposit(deposit, noop, null, onBehalfOfHeader, depositPackage.getPackaging()).thenApply(response -> {
+            List<String> pids;
+            try {
+                pids = SwordDepositReceipt.extractPIDs(response);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            if (pids.size() != depositPackage.size()) {
+                throw new CompletionException(new Exception(String.format(
+                        "Deposit receipt lists %d objects for a package of %d deposits",
+                        pids.size(), depositPackage.size())));
+            }
+            return pids;
+        });
+    }
 
-        BasicHttpEntity httpEntity = new BasicHttpEntity();
-        httpEntity.setContent(toInputStream(deposit.getBody()));
-        httpEntity.setContentType(deposit.getContentType());
-        httpPost.setEntity(new BufferedHttpEntity(httpEntity));
-
-        HttpResponse response = httpClient.execute(httpPost);
-        EntityUtils.consume(response.getEntity());
-
-        if (log.isDebugEnabled()) {
-            if (noop) {
-                log.debug("SWORD parameter 'X-No-Op' is '{}'", noop);
-                log.debug("SWORD parameter 'X-On-Behalf-Of' is '{}'", onBehalfOfHeader);
-                log.debug("Slug header is '{}'", slugHeader);
-                log.debug("Content type is '{}'", deposit.getContentType());
-                log.debug("Posting to SWORD collection '{}'", deposit.getCollection());
+    private CompletableFuture<HttpResponse> deposit(final SwordDeposit deposit, final Boolean noop,
+                                                    final String slugHeader, final String onBehalfOfHeader,
+                                                    final String packagingHeader) {
+        HttpPost httpPost;
+        try {
+            URIBuilder uriBuilder = new URIBuilder(url + "/" + deposit.getCollection());
+            httpPost = new HttpPost(uriBuilder.build());
+            httpPost.setHeader("X-No-Op", String.valueOf(noop));
+            httpPost.setHeader("Content-Type", deposit.getContentType());
+
+            if (onBehalfOfHeader != null && !onBehalfOfHeader.isEmpty()) {
+                httpPost.setHeader("X-On-Behalf-Of", onBehalfOfHeader);
             }
-            log.debug(response.toString());
-        }
 
-        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
-            String reason = response.getStatusLine().getReasonPhrase();
-            throw new Exception(reason);
+            if (slugHeader != null && !slugHeader.isEmpty()) {
+                httpPost.setHeader("Slug", slugHeader);
+            }
+
+            if (packagingHeader != null) {
+                httpPost.setHeader("X-Packaging", packagingHeader);
+            }
+
+            httpPost.setEntity(deposit.getBody().toAsyncEntity(deposit.getContentType()));
+        } catch (Exception e) {
+            return failed(e);
         }
 
-        return response;
+        return execute(httpPost).thenApply(response -> {
+            if (log.isDebugEnabled()) {
+                if (noop) {
+                    log.debug("SWORD parameter 'X-No-Op' is '{}'", noop);
+                    log.debug("SWORD parameter 'X-On-Behalf-Of' is '{}'", onBehalfOfHeader);
+                    log.debug("Slug header is '{}'", slugHeader);
+                    log.debug("Content type is '{}'", deposit.getContentType());
+                    log.debug("Posting to SWORD collection '{}'", deposit.getCollection());
+                }
+                log.debug(response.toString());
+            }
+
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
+                String reason = response.getStatusLine().getReasonPhrase();
+                throw new CompletionException(new Exception(reason));
+            }
+
+            return response;
+        });
     }
 
-    HttpResponse update(String pid, SwordDeposit deposit, Boolean noop, String onBehalfOfHeader) throws Exception {
-        URIBuilder uriBuilder = new URIBuilder(url + "/" + deposit.getCollection() + "/" + pid);
-        HttpPut httpPut = new HttpPut(uriBuilder.build());
-        httpPut.setHeader("X-No-Op", String.valueOf(noop));
-        httpPut.setHeader("Content-Type", deposit.getContentType());
+    CompletableFuture<HttpResponse> update(final String pid, final SwordDeposit deposit, final Boolean noop,
+                                           final String onBehalfOfHeader) {
+        HttpPut httpPut;
+        try {
+            URIBuilder uriBuilder = new URIBuilder(url + "/" + deposit.getCollection() + "/" + pid);
+            httpPut = new HttpPut(uriBuilder.build());
+            httpPut.setHeader("X-No-Op", String.valueOf(noop));
+            httpPut.setHeader("Content-Type", deposit.getContentType());
 
-        if (onBehalfOfHeader != null && !onBehalfOfHeader.isEmpty()) {
-            httpPut.setHeader("X-On-Behalf-Of", onBehalfOfHeader);
-        }
+            if (onBehalfOfHeader != null && !onBehalfOfHeader.isEmpty()) {
+                httpPut.setHeader("X-On-Behalf-Of", onBehalfOfHeader);
+            }
 
-        BasicHttpEntity httpEntity = new BasicHttpEntity();
-        httpEntity.setContent(toInputStream(deposit.getBody()));
-        httpEntity.setContentType(deposit.getContentType());
-        httpPut.setEntity(new BufferedHttpEntity(httpEntity));
+            httpPut.setEntity(deposit.getBody().toAsyncEntity(deposit.getContentType()));
+        } catch (Exception e) {
+            return failed(e);
+        }
 
-        HttpResponse response = httpClient.execute(httpPut);
-        EntityUtils.consume(response.getEntity());
+        return execute(httpPut).thenApply(response -> {
+            if (log.isDebugEnabled()) {
+                if (noop) {
+                    log.debug("SWORD parameter 'X-No-Op' is '{}'", noop);
+                    log.debug("SWORD parameter 'X-On-Behalf-Of' is '{}'", onBehalfOfHeader);
+                    log.debug("Content type is '{}'", deposit.getContentType());
+                    log.debug("Posting to SWORD collection '{}'", deposit.getCollection());
+                }
+                log.debug(response.toString());
+            }
 
-        if (log.isDebugEnabled()) {
-            if (noop) {
-                log.debug("SWORD parameter 'X-No-Op' is '{}'", noop);
-                log.debug("SWORD parameter 'X-On-Behalf-Of' is '{}'", onBehalfOfHeader);
-                log.debug("Content type is '{}'", deposit.getContentType());
-                log.debug("Posting to SWORD collection '{}'", deposit.getCollection());
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                String reason = response.getStatusLine().getReasonPhrase();
+                throw new CompletionException(new Exception(reason));
             }
-            log.debug(response.toString());
-        }
 
-        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            String reason = response.getStatusLine().getReasonPhrase();
-            throw new Exception(reason);
-        }
+            return response;
+        });
+    }
 
-        return response;
+    private static <T> CompletableFuture<T> failed(Exception e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
     }
 }
@@ -19,19 +19,23 @@ package org.qucosa.camel.component.sword;
 
 public class SwordDeposit {
 
-    private String body;
+    private SwordDepositBody body;
     private String collection;
     private String contentType;
     private String slug;
 
     public SwordDeposit(String slug, String body, String contentType, String collection) {
+        this(slug, SwordDepositBody.of(body), contentType, collection);
+    }
+
+    public SwordDeposit(String slug, SwordDepositBody body, String contentType, String collection) {
         this.slug = slug;
         this.body = body;
         this.contentType = contentType;
         this.collection = collection;
     }
 
-    String getBody() {
+    SwordDepositBody getBody() {
         return body;
     }
 
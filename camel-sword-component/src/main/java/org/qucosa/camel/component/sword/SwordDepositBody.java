@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.entity.NFileEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Content of a SWORD deposit, written directly to the HTTP request.
+ * <p>
+ * Byte arrays and files are sent as they are. Bodies produced by a writer are spooled to a temporary
+ * file first, since writers would block the I/O threads, and the file is deleted once the request
+ * has completed.
+ * <p>
+ * Bodies may be written more than once, e.g. when a request is repeated after an authentication
+ * challenge or redelivered after an error, so writers have to produce the same content every time.
+ */
+public abstract class SwordDepositBody {
+
+    private static final Logger log = LoggerFactory.getLogger(SwordDepositBody.class);
+
+    /**
+     * Writes content to the request output stream.
+     */
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static SwordDepositBody of(final byte[] bytes) {
+        return new SwordDepositBody() {
+            @Override
+            public long getContentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+
+            @Override
+            AbstractHttpEntity asyncEntity() {
+                return new NByteArrayEntity(bytes);
+            }
+
+            @Override
+            public String toString() {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    public static SwordDepositBody of(String text) {
+        return of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Body spooled to a file, sent with a known length.
+     */
+    public static SwordDepositBody of(final Path file) {
+        return new SwordDepositBody() {
+            @Override
+            public long getContentLength() {
+                return file.toFile().length();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                Files.copy(file, out);
+            }
+
+            @Override
+            AbstractHttpEntity asyncEntity() {
+                return new NFileEntity(file.toFile());
+            }
+
+            @Override
+            public String toString() {
+                return "<" + file + ">";
+            }
+        };
+    }
+
+    /**
+     * Body produced on demand by the given writer and spooled to a temporary file before it is sent.
+     */
+    public static SwordDepositBody of(final Writer writer) {
+        return new SwordDepositBody() {
+            @Override
+            public long getContentLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                writer.writeTo(out);
+            }
+
+            @Override
+            AbstractHttpEntity asyncEntity() throws IOException {
+                Path spool = Files.createTempFile("sword-deposit-", ".tmp");
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(spool))) {
+                    writer.writeTo(out);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(spool);
+                    throw e;
+                }
+                return new SpooledEntity(spool);
+            }
+
+            @Override
+            public String toString() {
+                return "<streamed>";
+            }
+        };
+    }
+
+    /**
+     * @return the content length in bytes or -1 if it is not known in advance
+     */
+    public abstract long getContentLength();
+
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    abstract AbstractHttpEntity asyncEntity() throws IOException;
+
+    /**
+     * @return an entity that can be written by non-blocking I/O, to be released by
+     * {@link #release(HttpEntity)} once the request has completed
+     */
+    HttpEntity toAsyncEntity(String contentType) throws IOException {
+        AbstractHttpEntity entity = asyncEntity();
+        entity.setContentType(contentType);
+        return entity;
+    }
+
+    /**
+     * Deletes the spool file of an entity created by {@link #toAsyncEntity(String)}, if there is one.
+     */
+    static void release(HttpEntity entity) {
+        if (entity instanceof SpooledEntity) {
+            Path spool = ((SpooledEntity) entity).spool;
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn(String.format("Failed to delete spooled deposit body %s: %s", spool, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Sends a spool file. It isn't deleted on close(), since the client closes and reopens the
+     * entity when it has to repeat the request after an authentication challenge.
+     */
+    static class SpooledEntity extends NFileEntity {
+        final Path spool;
+
+        SpooledEntity(Path spool) {
+            super(spool.toFile());
+            this.spool = spool;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Several deposits to the same collection, sent to the SWORD service as one zip package.
+ * <p>
+ * Each deposit becomes a zip entry named after its slug, or after its position in the package if
+ * it has none. The content type of the deposits is sent as packaging format. The service answers
+ * with an Atom feed holding one receipt entry per deposit, in package order.
+ */
+public class SwordDepositPackage {
+
+    public static final String CONTENT_TYPE = "application/zip";
+
+    private final String collection;
+    private final List<SwordDeposit> deposits = new ArrayList<>();
+    private String packaging;
+
+    public SwordDepositPackage(String collection) {
+        this.collection = collection;
+    }
+
+    public void add(SwordDeposit deposit) {
+        if (!collection.equals(deposit.getCollection())) {
+            throw new IllegalArgumentException(String.format("Cannot package deposit to %s with deposits to %s",
+                    deposit.getCollection(), collection));
+        }
+        if (packaging == null) {
+            packaging = deposit.getContentType();
+        } else if (!packaging.equals(deposit.getContentType())) {
+            throw new IllegalArgumentException(String.format("Cannot package %s deposit with %s deposits",
+                    deposit.getContentType(), packaging));
+        }
+        deposits.add(deposit);
+    }
+
+    public int size() {
+        return deposits.size();
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    List<SwordDeposit> getDeposits() {
+        return Collections.unmodifiableList(deposits);
+    }
+
+    String getPackaging() {
+        return packaging;
+    }
+
+    /**
+     * @return a deposit of the zipped package. The package is zipped when it is sent, straight into
+     * the spool file of the request, so it is never held in memory as a whole.
+     */
+    SwordDeposit toDeposit() {
+        final List<SwordDeposit> entries = new ArrayList<>(deposits);
+        SwordDepositBody body = SwordDepositBody.of(out -> {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (int i = 0; i < entries.size(); i++) {
+                SwordDeposit deposit = entries.get(i);
+                zip.putNextEntry(new ZipEntry(entryName(deposit, i)));
+                deposit.getBody().writeTo(zip);
+                zip.closeEntry();
+            }
+            // The output stream belongs to the caller
+            zip.finish();
+        });
+        return new SwordDeposit(null, body, CONTENT_TYPE, collection);
+    }
+
+    static String entryName(SwordDeposit deposit, int position) {
+        return (deposit.getSlug() != null && !deposit.getSlug().isEmpty())
+                ? deposit.getSlug() + ".xml"
+                : String.format("deposit-%d.xml", position);
+    }
+
+    @Override
+    public String toString() {
+        List<String> entries = new ArrayList<>(deposits.size());
+        for (int i = 0; i < deposits.size(); i++) {
+            entries.add(entryName(deposits.get(i), i));
+        }
+        return String.format("[%s],C:'%s',P:'%s',E:%s", super.toString(), collection, packaging, entries);
+    }
+}
@@ -17,15 +17,26 @@
 
 package org.qucosa.camel.component.sword;
 
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
-import org.apache.camel.Processor;
 import org.apache.camel.spi.Registry;
-import org.apache.http.HttpResponse;
+import org.apache.camel.util.AsyncProcessorHelper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.qucosa.camel.component.sword.SwordComponent.DepositMode.DEPOSIT;
 
-public class SwordDepositProcessor implements Processor {
+/**
+ * Sends deposits and updates to the SWORD service. The exchange continues when the response
+ * arrives, without blocking the routing thread in the meantime.
+ * <p>
+ * Single deposits and updates result in the {@link org.apache.http.HttpResponse}, deposits of a
+ * {@link SwordDepositPackage} in the list of PIDs of the deposited objects.
+ */
+public class SwordDepositProcessor implements AsyncProcessor {
 
     private final SwordComponent.DepositMode mode;
 
@@ -35,6 +46,33 @@ public class SwordDepositProcessor implements Processor {
 
     @Override
     public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        CompletableFuture<?> response;
+        try {
+            response = send(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        if (response.isDone()) {
+            response.whenComplete((result, error) -> complete(exchange, result, error));
+            callback.done(true);
+            return true;
+        }
+        response.whenComplete((result, error) -> {
+            complete(exchange, result, error);
+            callback.done(false);
+        });
+        return false;
+    }
+
+    private CompletableFuture<?> send(Exchange exchange) throws Exception {
         Registry reg = exchange.getContext().getRegistry();
         SwordConnection connection = (SwordConnection) reg.lookupByName(SwordConnection.DATA_SOURCE_NAME);
         if (connection == null) {
@@ -44,21 +82,33 @@ public class SwordDepositProcessor implements Processor {
         }
 
         Message msg = exchange.getIn();
-        SwordDeposit swordDeposit = (SwordDeposit) msg.getBody();
-
         final Boolean noopHeader = (Boolean) msg.getHeader("X-No-Op", true);
         final String onBehalfOfHeader = msg.getHeader("X-On-Behalf-Of", String.class);
 
-        HttpResponse httpResponse;
+        if (mode == DEPOSIT && msg.getBody() instanceof SwordDepositPackage) {
+            return connection.deposit((SwordDepositPackage) msg.getBody(), noopHeader, onBehalfOfHeader);
+        }
+
+        SwordDeposit swordDeposit = (SwordDeposit) msg.getBody();
+
         if (mode == DEPOSIT) {
             final String slugHeader = swordDeposit.getSlug();
-            httpResponse = connection.deposit(swordDeposit, noopHeader, slugHeader, onBehalfOfHeader);
+            return connection.deposit(swordDeposit, noopHeader, slugHeader, onBehalfOfHeader);
         } else {
             final String pid = msg.getHeader("PID", String.class);
-            httpResponse = connection.update(pid, swordDeposit, noopHeader, onBehalfOfHeader);
+            return connection.update(pid, swordDeposit, noopHeader, onBehalfOfHeader);
         }
+    }
 
-        exchange.getIn().setBody(httpResponse);
+    private static void complete(Exchange exchange, Object result, Throwable error) {
+        if (error != null) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            exchange.setException(error);
+        } else {
+            exchange.getIn().setBody(result);
+        }
     }
 
 }
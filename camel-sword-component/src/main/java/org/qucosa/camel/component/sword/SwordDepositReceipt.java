@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.http.HttpResponse;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads object PIDs from SWORD deposit receipts.
+ */
+class SwordDepositReceipt {
+
+    static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+
+    private SwordDepositReceipt() {
+    }
+
+    /**
+     * Reads the PIDs of all receipt entries in document order, either from a single Atom entry
+     * or from a feed of entries. The PID is the last path segment of the entry's edit link, or
+     * of its ID if there is no edit link.
+     */
+    static List<String> extractPIDs(HttpResponse response) throws Exception {
+        if (response.getEntity() == null) {
+            throw new Exception("No deposit receipt in HTTP response.");
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document receipt;
+        try (InputStream in = response.getEntity().getContent()) {
+            receipt = factory.newDocumentBuilder().parse(in);
+        }
+
+        NodeList entries = receipt.getElementsByTagNameNS(ATOM_NAMESPACE, "entry");
+        List<String> pids = new ArrayList<>(entries.getLength());
+        for (int i = 0; i < entries.getLength(); i++) {
+            String uri = entryUri((Element) entries.item(i));
+            if (uri == null) {
+                throw new Exception(String.format("Receipt entry %d has neither edit link nor ID.", i + 1));
+            }
+            pids.add(uri.substring(uri.lastIndexOf('/') + 1));
+        }
+        return pids;
+    }
+
+    private static String entryUri(Element entry) {
+        String id = null;
+        for (Node n = entry.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (!(n instanceof Element) || !ATOM_NAMESPACE.equals(n.getNamespaceURI())) continue;
+            Element e = (Element) n;
+            if ("link".equals(e.getLocalName()) && "edit".equals(e.getAttribute("rel"))) {
+                return e.getAttribute("href").trim();
+            }
+            if ("id".equals(e.getLocalName())) {
+                id = e.getTextContent().trim();
+            }
+        }
+        return id;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Component;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.impl.ProcessorEndpoint;
+
+/**
+ * Endpoint for SWORD deposits and updates. Its producer passes the routing callback on to the
+ * {@link SwordDepositProcessor}, so routes continue when the SWORD service has answered instead
+ * of blocking a thread while waiting.
+ * <p>
+ * URI format: <code>sword:deposit</code> or <code>sword:update</code>
+ */
+public class SwordEndpoint extends ProcessorEndpoint {
+
+    private final SwordDepositProcessor processor;
+
+    SwordEndpoint(String uri, Component component, SwordDepositProcessor processor) {
+        super(uri, component, processor);
+        this.processor = processor;
+    }
+
+    @Override
+    public Producer createProducer() throws Exception {
+        return new DefaultAsyncProducer(this) {
+            @Override
+            public boolean process(Exchange exchange, AsyncCallback callback) {
+                return processor.process(exchange, callback);
+            }
+        };
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void growsWhileRequestsSucceed() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 100, 0.5);
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void backsOffOnOverload() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 10, 100, 0.5);
+        permit(limiter).completed(503);
+        assertEquals(4, limiter.getLimit());
+        permit(limiter).overloaded();
+        assertEquals(2, limiter.getLimit());
+        permit(limiter).overloaded();
+        permit(limiter).overloaded();
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void decreasesOncePerRoundTrip() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 10, 100, 0.5);
+        AdaptiveConcurrencyLimiter.Permit[] permits = new AdaptiveConcurrencyLimiter.Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = permit(limiter);
+        }
+        for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+            permit.completed(503);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksByLatencyGradient() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 10, 2.0, 0.5);
+        for (int i = 0; i < 10; i++) {
+            permit(limiter).succeeded();
+        }
+        assertEquals(8, limiter.getLimit());
+
+        AdaptiveConcurrencyLimiter.Permit slow = permit(limiter);
+        Thread.sleep(50);
+        slow.succeeded();
+        assertTrue("Limit should shrink when latency rises", limiter.getLimit() < 8);
+        assertTrue("Limit should shrink by no more than half", limiter.getLimit() >= 4);
+    }
+
+    @Test
+    public void clientErrorsDontChangeLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 4, 1, 10, 100, 0.5);
+        for (int i = 0; i < 20; i++) {
+            permit(limiter).completed(404);
+        }
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void queuesAsynchronousCallersAtLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 100, 0.5);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> first = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquireAsync();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, limiter.getWaiting());
+
+        first.get().succeeded();
+        assertTrue(second.isDone());
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(1, limiter.getInFlight());
+        second.get().ignored();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void servesAsynchronousCallersInOrder() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 2, 2, 100, 0.5);
+        List<Integer> order = new ArrayList<>();
+        AdaptiveConcurrencyLimiter.Permit a = limiter.acquireAsync().get();
+        AdaptiveConcurrencyLimiter.Permit b = limiter.acquireAsync().get();
+        for (int i = 0; i < 3; i++) {
+            final int n = i;
+            limiter.acquireAsync().thenAccept(permit -> {
+                order.add(n);
+                permit.ignored();
+            });
+        }
+        assertTrue(order.isEmpty());
+        a.ignored();
+        b.ignored();
+        assertEquals(Arrays.asList(0, 1, 2), order);
+    }
+
+    @Test
+    public void sharesLimiterPerHostAndPrefix() {
+        BaseConfiguration conf = new BaseConfiguration();
+        assertSame(AdaptiveConcurrencyLimiter.forHost("http://localhost:8080/sword/a", conf, "sword"),
+                AdaptiveConcurrencyLimiter.forHost("http://localhost:8080/sword/b", conf, "sword"));
+        assertNotSame(AdaptiveConcurrencyLimiter.forHost("http://localhost:8080/sword", conf, "sword"),
+                AdaptiveConcurrencyLimiter.forHost("http://localhost:8080/fedora", conf, "fedora"));
+    }
+
+    @Test
+    public void appliesSettingsOfEachPrefix() {
+        BaseConfiguration conf = new BaseConfiguration();
+        conf.setProperty("a.concurrency.initial", 2);
+        conf.setProperty("b.concurrency.initial", 6);
+        assertEquals(2, AdaptiveConcurrencyLimiter.forHost("http://localhost:8081/", conf, "a").getLimit());
+        assertEquals(6, AdaptiveConcurrencyLimiter.forHost("http://localhost:8081/", conf, "b").getLimit());
+    }
+
+    @Test
+    public void staysWithinConnectionsPerHost() {
+        BaseConfiguration conf = new BaseConfiguration();
+        conf.setProperty("c.concurrency.initial", 16);
+        conf.setProperty("c.concurrency.min", 8);
+        conf.setProperty("c.http.maxConnectionsPerRoute", 3);
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.forHost("http://localhost:8081/", conf, "c");
+        assertEquals(3, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            saturate(limiter);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    private static AdaptiveConcurrencyLimiter.Permit permit(AdaptiveConcurrencyLimiter limiter) {
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permit = limiter.acquireAsync();
+        assertTrue("Expected a permit to be available", permit.isDone());
+        return permit.join();
+    }
+
+    private static void saturate(AdaptiveConcurrencyLimiter limiter) {
+        int n = limiter.getLimit();
+        AdaptiveConcurrencyLimiter.Permit[] permits = new AdaptiveConcurrencyLimiter.Permit[n];
+        for (int i = 0; i < n; i++) {
+            permits[i] = permit(limiter);
+        }
+        for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+            permit.succeeded();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PooledHttpClientsIT {
+
+    private final AtomicInteger challenges = new AtomicInteger();
+    private CloseableHttpClient client;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        final String expected = "Basic " + Base64.getEncoder().encodeToString("user:secret".getBytes("UTF-8"));
+        server.createContext("/sword", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() >= 0) ;
+            }
+            if (expected.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.sendResponseHeaders(201, -1);
+            } else {
+                challenges.incrementAndGet();
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"sword\"");
+                exchange.sendResponseHeaders(401, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void sendsCredentialsWithoutChallenge() throws Exception {
+        client = PooledHttpClients.create(new BaseConfiguration(), "sword", "user", "secret");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(201, post());
+        }
+        assertEquals(0, challenges.get());
+    }
+
+    @Test
+    public void asyncClientSendsCredentialsWithoutChallenge() throws Exception {
+        try (CloseableHttpAsyncClient asyncClient =
+                     PooledHttpClients.createAsync(new BaseConfiguration(), "sword", "user", "secret")) {
+            for (int i = 0; i < 10; i++) {
+                HttpPost post = new HttpPost(url("/sword/collection"));
+                post.setEntity(new NByteArrayEntity(new byte[1024]));
+                assertEquals(201, asyncClient.execute(post, null).get().getStatusLine().getStatusCode());
+            }
+        }
+        assertEquals(0, challenges.get());
+    }
+
+    @Test
+    public void usesConfiguredTimeouts() throws Exception {
+        BaseConfiguration conf = new BaseConfiguration();
+        conf.setProperty("sword.http.socketTimeout", 1000);
+        client = PooledHttpClients.create(conf, "sword", "user", "secret");
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.close();
+        });
+
+        long start = System.currentTimeMillis();
+        try {
+            client.execute(new HttpPost(url("/slow")));
+            throw new AssertionError("Expected socket timeout");
+        } catch (SocketTimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start < 2500);
+        }
+    }
+
+    private int post() throws Exception {
+        HttpPost post = new HttpPost(url("/sword/collection"));
+        post.setEntity(new ByteArrayEntity(new byte[1024]));
+        HttpResponse response = client.execute(post);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+}
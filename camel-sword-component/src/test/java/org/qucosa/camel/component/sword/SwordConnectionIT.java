@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.http.HttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SwordConnectionIT {
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger peakConcurrent = new AtomicInteger();
+    private final List<String> bodies = new ArrayList<>();
+    private final List<String> packagings = new ArrayList<>();
+    private SwordConnection connection;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 256);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/sword/collection", exchange -> {
+            int n = concurrent.incrementAndGet();
+            peakConcurrent.accumulateAndGet(n, Math::max);
+            StringBuilder body = new StringBuilder();
+            try (InputStream in = exchange.getRequestBody()) {
+                for (int c = in.read(); c >= 0; c = in.read()) body.append((char) c);
+            }
+            synchronized (bodies) {
+                bodies.add(body.toString());
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            concurrent.decrementAndGet();
+            if (exchange.getRequestURI().getPath().endsWith("/missing")) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if ("application/zip".equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                packagings.add(exchange.getRequestHeaders().getFirst("X-Packaging"));
+                byte[] receipt = ("<feed xmlns='http://www.w3.org/2005/Atom'>"
+                        + "<entry><id>urn:x</id><link rel='edit' href='" + url() + "/sword/collection/qucosa:1'/></entry>"
+                        + "<entry><id>" + url() + "/sword/collection/qucosa:2</id></entry>"
+                        + "</feed>").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(201, receipt.length);
+                exchange.getResponseBody().write(receipt);
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Location", url() + "/sword/collection/qucosa:4711");
+                exchange.sendResponseHeaders(201, -1);
+            } else {
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        BaseConfiguration conf = new BaseConfiguration();
+        conf.setProperty("sword.url", url() + "/sword");
+        conf.setProperty("sword.user", "user");
+        conf.setProperty("sword.password", "secret");
+        conf.setProperty("sword.concurrency.initial", 16);
+        conf.setProperty("sword.concurrency.max", 16);
+        conf.setProperty("sword.http.ioThreads", 1);
+        conf.setProperty("sword.http.callbackThreads", 1);
+        connection = new SwordConnection();
+        connection.configure(conf);
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void depositsWrittenBody() throws Exception {
+        SwordDeposit deposit = new SwordDeposit("qucosa:4711",
+                SwordDepositBody.of(out -> out.write("<mets/>".getBytes(StandardCharsets.UTF_8))),
+                "application/vnd.qucosa.mets+xml", "collection");
+
+        HttpResponse response = connection.deposit(deposit, true, "qucosa:4711", null).get();
+
+        assertEquals(201, response.getStatusLine().getStatusCode());
+        assertEquals("<mets/>", bodies.get(0));
+    }
+
+    @Test
+    public void depositsPackageWithSingleRequest() throws Exception {
+        SwordDepositPackage depositPackage = new SwordDepositPackage("collection");
+        depositPackage.add(new SwordDeposit("qucosa:1", "<mets/>", "application/vnd.qucosa.mets+xml", "collection"));
+        depositPackage.add(new SwordDeposit("qucosa:2", "<mets/>", "application/vnd.qucosa.mets+xml", "collection"));
+
+        List<String> pids = connection.deposit(depositPackage, true, null).get();
+
+        assertEquals(Arrays.asList("qucosa:1", "qucosa:2"), pids);
+        assertEquals(1, bodies.size());
+        assertEquals(Collections.singletonList("application/vnd.qucosa.mets+xml"), packagings);
+    }
+
+    @Test(expected = Exception.class)
+    public void failsOnIncompleteReceipt() throws Throwable {
+        SwordDepositPackage depositPackage = new SwordDepositPackage("collection");
+        for (int i = 0; i < 3; i++) {
+            depositPackage.add(new SwordDeposit(null, "<mets/>", "application/vnd.qucosa.mets+xml", "collection"));
+        }
+        try {
+            connection.deposit(depositPackage, true, null).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void failsOnUnexpectedStatus() throws Throwable {
+        SwordDeposit deposit = new SwordDeposit(null, SwordDepositBody.of("<mets/>"),
+                "application/vnd.qucosa.mets+xml", "collection");
+        try {
+            connection.update("missing", deposit, true, null).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void keepsRequestsInFlightWithoutThreads() throws Exception {
+        List<CompletableFuture<HttpResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            SwordDeposit deposit = new SwordDeposit(null, SwordDepositBody.of("<mets/>"),
+                    "application/vnd.qucosa.mets+xml", "collection");
+            responses.add(connection.update("qucosa:" + i, deposit, true, null));
+        }
+        for (CompletableFuture<HttpResponse> response : responses) {
+            assertEquals(200, response.get().getStatusLine().getStatusCode());
+        }
+        assertTrue(peakConcurrent.get() > 1);
+        assertTrue(peakConcurrent.get() <= 16);
+        assertEquals(0, connection.getLimiter().getInFlight());
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+}
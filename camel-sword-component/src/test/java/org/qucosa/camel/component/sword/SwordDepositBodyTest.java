@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.http.HttpEntity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SwordDepositBodyTest {
+
+    private static final byte[] CONTENT = "<mets:mets/>".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void byteArrayBodyHasKnownLength() throws Exception {
+        HttpEntity entity = SwordDepositBody.of(CONTENT).toAsyncEntity("application/xml");
+        assertEquals(CONTENT.length, entity.getContentLength());
+        assertEquals("application/xml", entity.getContentType().getValue());
+        assertArrayEquals(CONTENT, written(entity));
+    }
+
+    @Test
+    public void fileBodyHasKnownLength() throws Exception {
+        Path file = tempFolder.newFile().toPath();
+        Files.write(file, CONTENT);
+        HttpEntity entity = SwordDepositBody.of(file).toAsyncEntity("application/xml");
+        assertEquals(CONTENT.length, entity.getContentLength());
+        assertArrayEquals(CONTENT, written(entity));
+    }
+
+    @Test
+    public void writerBodyIsSpooledUntilReleased() throws Exception {
+        SwordDepositBody body = SwordDepositBody.of(out -> out.write(CONTENT));
+        assertEquals(-1, body.getContentLength());
+
+        HttpEntity entity = body.toAsyncEntity("application/xml");
+        assertEquals(CONTENT.length, entity.getContentLength());
+        assertTrue(entity.isRepeatable());
+        assertArrayEquals(CONTENT, written(entity));
+        assertArrayEquals(CONTENT, written(entity));
+
+        Path spool = ((SwordDepositBody.SpooledEntity) entity).spool;
+        assertTrue(Files.exists(spool));
+        SwordDepositBody.release(entity);
+        assertFalse(Files.exists(spool));
+    }
+
+    private static byte[] written(HttpEntity entity) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.camel.component.sword;
+
+import org.apache.http.HttpEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SwordDepositPackageTest {
+
+    private static final String METS = "application/vnd.qucosa.mets+xml";
+
+    @Test
+    public void zipsDepositsInOrder() throws IOException {
+        SwordDepositPackage depositPackage = new SwordDepositPackage("collection");
+        depositPackage.add(new SwordDeposit("qucosa:1", "<mets>1</mets>", METS, "collection"));
+        depositPackage.add(new SwordDeposit(null, "<mets>2</mets>", METS, "collection"));
+
+        SwordDeposit deposit = depositPackage.toDeposit();
+
+        assertEquals(SwordDepositPackage.CONTENT_TYPE, deposit.getContentType());
+        assertEquals("collection", deposit.getCollection());
+        assertEquals(METS, depositPackage.getPackaging());
+
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        deposit.getBody().writeTo(zipped);
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipped.toByteArray()))) {
+            ZipEntry entry = zip.getNextEntry();
+            assertEquals("qucosa:1.xml", entry.getName());
+            assertEquals("<mets>1</mets>", read(zip));
+            entry = zip.getNextEntry();
+            assertEquals("deposit-1.xml", entry.getName());
+            assertEquals("<mets>2</mets>", read(zip));
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void spoolsPackageInsteadOfBufferingIt() throws IOException {
+        SwordDepositPackage depositPackage = new SwordDepositPackage("collection");
+        depositPackage.add(new SwordDeposit("qucosa:1", "<mets>1</mets>", METS, "collection"));
+
+        SwordDepositBody body = depositPackage.toDeposit().getBody();
+        assertEquals(-1, body.getContentLength());
+
+        HttpEntity entity = body.toAsyncEntity(SwordDepositPackage.CONTENT_TYPE);
+        try {
+            assertTrue(entity instanceof SwordDepositBody.SpooledEntity);
+            try (ZipInputStream zip = new ZipInputStream(entity.getContent())) {
+                assertEquals("qucosa:1.xml", zip.getNextEntry().getName());
+                assertEquals("<mets>1</mets>", read(zip));
+            }
+        } finally {
+            SwordDepositBody.release(entity);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDepositsToOtherCollections() {
+        new SwordDepositPackage("collection").add(new SwordDeposit(null, "<mets/>", METS, "other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMixedContentTypes() {
+        SwordDepositPackage depositPackage = new SwordDepositPackage("collection");
+        depositPackage.add(new SwordDeposit(null, "<mets/>", METS, "collection"));
+        depositPackage.add(new SwordDeposit(null, "text", "text/plain", "collection"));
+    }
+
+    private static String read(ZipInputStream zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        for (int n = zip.read(buf); n >= 0; n = zip.read(buf)) out.write(buf, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
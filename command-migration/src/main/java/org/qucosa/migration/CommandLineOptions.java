@@ -21,6 +21,9 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static java.lang.System.err;
 import static java.lang.System.exit;
 
@@ -42,6 +45,21 @@ class CommandLineOptions {
     )
     private String idFile = "";
 
+    @Option(
+            name = "--stage-urn-file",
+            aliases = "-u",
+            usage = "Name of file to read URNs of Opus documents from",
+            forbids = {"--stage-resource", "--stage-resource-file"}
+    )
+    private String urnFile = "";
+
+    @Option(
+            name = "--from-archive",
+            usage = "Read Opus documents from an archive file written by the mirror command\n" +
+                    "instead of requesting them from the Opus web API"
+    )
+    private String archive = null;
+
     @Option(
             name = "--noop",
             aliases = "-n",
@@ -72,6 +90,38 @@ class CommandLineOptions {
     )
     private Boolean purgeBeforeDeposit = false;
 
+    @Option(
+            name = "--purge-resource-file",
+            usage = "Name of file to read PIDs of Fedora objects to purge from, e.g. qucosa:1-50000.\n" +
+                    "Objects are purged in parallel before staging starts."
+    )
+    private String purgeFile = "";
+
+    @Option(
+            name = "--purge-rate",
+            usage = "Maximum number of objects to purge per second (default unlimited)"
+    )
+    private Double purgeRate = null;
+
+    @Option(
+            name = "--skip-existing",
+            usage = "Skip documents whose qucosa:ID object exists in Fedora. Existing objects are\n" +
+                    "looked up once before staging starts.",
+            depends = "--use-slug",
+            forbids = {"--purge-before-deposit", "--update-existing"}
+    )
+    private Boolean skipExisting = false;
+
+    @Option(
+            name = "--update-existing",
+            usage = "Update instead of deposit documents whose qucosa:ID object exists in Fedora.\n" +
+                    "Existing objects are looked up once before staging starts. Without --one-pass\n" +
+                    "only their QUCOSA-XML is updated.",
+            depends = "--use-slug",
+            forbids = {"--purge-before-deposit", "--skip-existing"}
+    )
+    private Boolean updateExisting = false;
+
     @Option(
             name = "--stage-resource",
             aliases = "-s",
@@ -80,6 +130,34 @@ class CommandLineOptions {
     )
     private String stageResource = null;
 
+    @Option(
+            name = "--stage-changes",
+            usage = "Continuously stage Opus documents modified since the last run until interrupted.\n" +
+                    "The position of the last staged change is kept in the given file.",
+            forbids = {"--stage-resource", "--stage-resource-file", "--stage-urn-file"}
+    )
+    private String changesStateFile = null;
+
+    @Option(
+            name = "--changes-since",
+            usage = "ISO date or date-time to start staging changes from, if there is no --stage-changes state yet",
+            depends = "--stage-changes"
+    )
+    private String changesSince = null;
+
+    @Option(
+            name = "--changes-delay",
+            usage = "Milliseconds to wait between polls for changed documents (default 60000)",
+            depends = "--stage-changes"
+    )
+    private Long changesDelay = 60000L;
+
+    @Option(
+            name = "--deposit-batch-size",
+            usage = "Number of documents to deposit together in one zip package per SWORD request (default 1)"
+    )
+    private Integer depositBatchSize = 1;
+
     @Option(
             name = "--stage-transform",
             usage = "Applies transformation to staged resources if --stage-resource is given.\n" +
@@ -88,6 +166,14 @@ class CommandLineOptions {
     )
     private Boolean stageTransform = false;
 
+    @Option(
+            name = "--one-pass",
+            usage = "Map MODS and SLUB-INFO while staging and deposit them together with the document,\n" +
+                    "instead of transforming the deposited objects afterwards.",
+            forbids = "--stage-transform"
+    )
+    private Boolean onePass = false;
+
     @Option(
             name = "--transform-resource-file",
             aliases = "-F",
@@ -104,6 +190,42 @@ class CommandLineOptions {
     )
     private String transformResource = null;
 
+    @Option(
+            name = "--update-hash-store",
+            usage = "File to keep hashes of updated datastreams in. Updates that would send the same\n" +
+                    "content as the last successful update are skipped."
+    )
+    private String updateHashStore = null;
+
+    @Option(
+            name = "--journal",
+            usage = "File to record the migration state of each document in"
+    )
+    private String journal = null;
+
+    @Option(
+            name = "--resume",
+            usage = "Continue the run recorded in the --journal file, skipping documents that have\n" +
+                    "already been deposited and transformed",
+            depends = "--journal"
+    )
+    private Boolean resume = false;
+
+    @Option(
+            name = "--pool",
+            metaVar = "STAGE=THREADS[:QUEUE]",
+            usage = "Size of the thread pool and its queue for one of the stages\n" +
+                    "fetch, map, serialize, deposit and update. May be given more than once."
+    )
+    private List<String> pools = new ArrayList<>();
+
+    @Option(
+            name = "--virtual-threads",
+            usage = "Run route stages on virtual threads (Java 21 and later). Mapping and METS\n" +
+                    "generation still run on at most one thread per core."
+    )
+    private Boolean virtualThreads = false;
+
     @Option(
             name = "--use-slug",
             usage = "Given this option, the generated Fedora ID will reflect the original Opus ID"
@@ -142,6 +264,10 @@ class CommandLineOptions {
         return transformResource;
     }
 
+    Boolean isOnePass() {
+        return onePass;
+    }
+
     Boolean isStageTransform() {
         return stageTransform;
     }
@@ -158,10 +284,70 @@ class CommandLineOptions {
         return purgeBeforeDeposit;
     }
 
+    String getPurgeFile() {
+        return purgeFile;
+    }
+
+    Double getPurgeRate() {
+        return purgeRate;
+    }
+
+    Boolean skipExisting() {
+        return skipExisting;
+    }
+
+    Boolean updateExisting() {
+        return updateExisting;
+    }
+
     String getIdFile() {
         return idFile;
     }
 
+    String getUrnFile() {
+        return urnFile;
+    }
+
+    String getArchive() {
+        return archive;
+    }
+
+    String getChangesStateFile() {
+        return changesStateFile;
+    }
+
+    String getChangesSince() {
+        return changesSince;
+    }
+
+    Long getChangesDelay() {
+        return changesDelay;
+    }
+
+    Integer getDepositBatchSize() {
+        return depositBatchSize;
+    }
+
+    String getUpdateHashStore() {
+        return updateHashStore;
+    }
+
+    String getJournal() {
+        return journal;
+    }
+
+    Boolean isResume() {
+        return resume;
+    }
+
+    List<String> getPools() {
+        return pools;
+    }
+
+    Boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
     Boolean useSlugHeader() {
         return useSlugHeader;
     }
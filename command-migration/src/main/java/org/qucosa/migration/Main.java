@@ -21,9 +21,13 @@ import org.apache.camel.ProducerTemplate;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.SystemConfiguration;
 import org.qucosa.migration.contexts.MigrationContext;
+import org.qucosa.migration.contexts.MirrorContext;
+import org.qucosa.migration.routes.StageExecutorProfiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 import static java.lang.System.exit;
 
 public class Main {
@@ -31,21 +35,72 @@ public class Main {
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) {
+        if (args.length > 0 && "mirror".equals(args[0])) {
+            mirror(new MirrorCommandLineOptions(Arrays.copyOfRange(args, 1, args.length)));
+            return;
+        }
+
         CommandLineOptions options = new CommandLineOptions(args);
         System.setProperty("sword.noop", String.valueOf(options.isNoop()));
         System.setProperty("sword.slugheader", String.valueOf(options.useSlugHeader()));
         System.setProperty("sword.purge", String.valueOf(options.purgeBeforeDeposit()));
         System.setProperty("sword.collection", String.valueOf(options.getCollection()));
+        System.setProperty("sword.batchSize", String.valueOf(options.getDepositBatchSize()));
+        System.setProperty("staging.onePass", String.valueOf(options.isOnePass()));
+        System.setProperty("migration.virtualThreads", String.valueOf(options.useVirtualThreads()));
         System.setProperty("transformation.discardExisting", String.valueOf(options.discardExistingDatastreams()));
 
         if (options.getOwnerId() != null) {
             System.setProperty("sword.ownerID", options.getOwnerId());
         }
 
+        if (options.getPurgeRate() != null) {
+            System.setProperty("fedora.purge.rate", String.valueOf(options.getPurgeRate()));
+        }
+
+        if (options.skipExisting()) {
+            System.setProperty("staging.existing", "skip");
+        } else if (options.updateExisting()) {
+            System.setProperty("staging.existing", "update");
+        }
+
+        if (options.getUpdateHashStore() != null) {
+            System.setProperty("transformation.hashStore", options.getUpdateHashStore());
+        }
+
+        try {
+            for (String pool : options.getPools()) {
+                setPoolProperties(pool);
+            }
+        } catch (IllegalArgumentException e) {
+            log.error(e.getMessage());
+            exit(1);
+        }
+
+        if (options.getJournal() != null) {
+            System.setProperty("migration.journal", options.getJournal());
+            System.setProperty("migration.resume", String.valueOf(options.isResume()));
+        }
+
+        if (options.getArchive() != null) {
+            System.setProperty("staging.archive", options.getArchive());
+        }
+
+        if (options.getChangesStateFile() != null) {
+            System.setProperty("staging.changes.hwmFile", options.getChangesStateFile());
+            System.setProperty("staging.changes.delay", String.valueOf(options.getChangesDelay()));
+            if (options.getChangesSince() != null) {
+                System.setProperty("staging.changes.since", options.getChangesSince());
+            }
+        }
+
         MigrationContext ctx = null;
         try {
+            Boolean hasPurgeFile = (!options.getPurgeFile().isEmpty());
             Boolean hasStagingResource = (options.getStageResource() != null);
             Boolean hasStagingResourceFile = (!options.getIdFile().isEmpty());
+            Boolean hasStagingUrnFile = (!options.getUrnFile().isEmpty());
+            Boolean isStagingChanges = (options.getChangesStateFile() != null);
             Boolean hasTransformResource = (options.getTransformResource() != null);
             Boolean hasTransformResourceFile = (!options.getPidFile().isEmpty());
             Boolean isStageTransform = options.isStageTransform();
@@ -54,20 +109,27 @@ public class Main {
                     || hasTransformResourceFile
                     || isStageTransform;
 
-            Boolean isStaging = hasStagingResource || hasStagingResourceFile;
+            Boolean isStaging = hasStagingResource || hasStagingResourceFile || hasStagingUrnFile
+                    || isStagingChanges;
 
             System.setProperty("transforming", String.valueOf(isTransforming));
 
             Configuration conf = new SystemConfiguration();
-            ctx = new MigrationContext(conf, isStaging, isTransforming);
+            ctx = new MigrationContext(conf, hasPurgeFile, isStaging, isTransforming);
             ctx.start();
 
             ProducerTemplate template = ctx.createProducerTemplate();
 
+            if (hasPurgeFile) {
+                template.sendBody("direct:purge:file", options.getPurgeFile());
+            }
+
             if (hasStagingResource) {
                 template.sendBody("direct:staging", options.getStageResource());
             } else if (hasStagingResourceFile) {
                 template.sendBody("direct:staging:file", options.getIdFile());
+            } else if (hasStagingUrnFile) {
+                template.sendBody("direct:staging:urnfile", options.getUrnFile());
             }
 
             if (hasTransformResource) {
@@ -76,6 +138,21 @@ public class Main {
                 template.sendBody("direct:transform:file", options.getPidFile());
             }
 
+            ctx.awaitCompletion();
+
+            if (isStagingChanges) {
+                final MigrationContext harvestingContext = ctx;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        harvestingContext.stop();
+                    } catch (Exception e) {
+                        log.error("Error shutting down Camel: " + e.getMessage(), e);
+                    }
+                }));
+                log.info("Staging changed documents until interrupted");
+                Thread.currentThread().join();
+            }
+
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             exit(1);
@@ -90,4 +167,44 @@ public class Main {
         }
     }
 
+    private static void setPoolProperties(String pool) {
+        String[] stageAndSize = pool.split("=", 2);
+        if (stageAndSize.length != 2 || !StageExecutorProfiles.STAGES.contains(stageAndSize[0])) {
+            throw new IllegalArgumentException(String.format("Invalid pool '%s', expected one of %s with size",
+                    pool, StageExecutorProfiles.STAGES));
+        }
+        String[] sizeAndQueue = stageAndSize[1].split(":", 2);
+        String prefix = "migration.pool." + stageAndSize[0];
+        System.setProperty(prefix + ".size", String.valueOf(Integer.parseInt(sizeAndQueue[0])));
+        if (sizeAndQueue.length > 1) {
+            System.setProperty(prefix + ".queue", String.valueOf(Integer.parseInt(sizeAndQueue[1])));
+        }
+    }
+
+    private static void mirror(MirrorCommandLineOptions options) {
+        MirrorContext ctx = null;
+        try {
+            ctx = new MirrorContext(new SystemConfiguration(), options.getArchive(), options.getThreads());
+            ctx.start();
+
+            ProducerTemplate template = ctx.createProducerTemplate();
+            if (options.getResource() != null) {
+                template.sendBody("direct:mirror", options.getResource());
+            } else {
+                template.sendBody("direct:mirror:file", options.getIdFile());
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            exit(1);
+        } finally {
+            // Stopping the context writes the archive index
+            if (ctx != null) try {
+                ctx.stop();
+            } catch (Exception e) {
+                log.error("Error shutting down Camel: " + e.getMessage(), e);
+                exit(1);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.migration;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import static java.lang.System.err;
+import static java.lang.System.exit;
+
+/**
+ * Options of the <code>mirror</code> command.
+ */
+class MirrorCommandLineOptions {
+
+    @Option(
+            name = "--archive",
+            aliases = "-a",
+            usage = "Name of the archive file to write",
+            required = true
+    )
+    private String archive = null;
+
+    @Option(
+            name = "--resource",
+            aliases = "-s",
+            usage = "Opus ID of a single document or tenant to mirror",
+            forbids = "--resource-file"
+    )
+    private String resource = null;
+
+    @Option(
+            name = "--resource-file",
+            aliases = "-f",
+            usage = "Name of file to read Opus IDs to mirror from",
+            forbids = "--resource"
+    )
+    private String idFile = "";
+
+    @Option(
+            name = "--threads",
+            aliases = "-T",
+            usage = "Number of documents to download in parallel (default 8)"
+    )
+    private Integer threads = 8;
+
+    MirrorCommandLineOptions(String[] args) {
+        CmdLineParser parser = new CmdLineParser(this);
+        try {
+            parser.parseArgument(args);
+            if (resource == null && idFile.isEmpty()) {
+                throw new CmdLineException(parser, "Either --resource or --resource-file is required", null);
+            }
+        } catch (CmdLineException e) {
+            err.println(e.getMessage());
+            err.println("Usage: mirror [options]");
+            parser.printUsage(err);
+            exit(1);
+        }
+    }
+
+    String getArchive() {
+        return archive;
+    }
+
+    String getResource() {
+        return resource;
+    }
+
+    String getIdFile() {
+        return idFile;
+    }
+
+    Integer getThreads() {
+        return threads;
+    }
+}
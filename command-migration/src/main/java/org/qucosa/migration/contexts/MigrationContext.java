@@ -17,20 +17,31 @@
 
 package org.qucosa.migration.contexts;
 
+import org.apache.camel.CamelContext;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.apache.camel.impl.SimpleRegistry;
+import org.apache.camel.processor.aggregate.AggregateProcessor;
 import org.apache.commons.configuration.Configuration;
 import org.qucosa.camel.component.opus4.Opus4DataSource;
 import org.qucosa.camel.component.sword.SwordConnection;
+import org.qucosa.migration.processors.MigrationJournal;
+import org.qucosa.migration.routes.PurgeRouteBuilder;
+import org.qucosa.migration.routes.StageExecutorProfiles;
 import org.qucosa.migration.routes.StagingRouteBuilder;
 import org.qucosa.migration.routes.TransformationRouteBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public class MigrationContext extends DefaultCamelContext {
 
+    private static final Logger log = LoggerFactory.getLogger(MigrationContext.class);
+
     // TODO Make this mapping a parameter of the migration context
     private static final Map<String, String> institutionNameMap = Collections.unmodifiableMap(
             new HashMap<String, String>() {{
@@ -40,12 +51,46 @@ public class MigrationContext extends DefaultCamelContext {
             }});
 
     public MigrationContext(Configuration configuration, boolean isStaging, boolean isTransforming) throws Exception {
+        this(configuration, false, isStaging, isTransforming);
+    }
+
+    public MigrationContext(Configuration configuration, boolean isPurging, boolean isStaging, boolean isTransforming)
+            throws Exception {
         super();
         setName("migration");
-        setup(configuration, isStaging, isTransforming);
+        setup(configuration, isPurging, isStaging, isTransforming);
+    }
+
+    /**
+     * Deposits the remaining partial packages and waits until all exchanges, including the
+     * resulting deposits and transformations, are done. Stopping the context right away would
+     * leave them to the shutdown timeout.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        awaitCompletion(this, StagingRouteBuilder.DEPOSIT_AGGREGATOR);
     }
 
-    private void setup(Configuration conf, boolean isStaging, boolean isTransforming) throws Exception {
+    static void awaitCompletion(CamelContext context, String aggregatorId) throws InterruptedException {
+        AggregateProcessor aggregator = context.getProcessor(aggregatorId, AggregateProcessor.class);
+        while (true) {
+            if (aggregator != null) {
+                int completed = aggregator.forceCompletionOfAllGroups();
+                if (completed > 0) {
+                    log.info(String.format("Completed %d partial deposit packages", completed));
+                }
+            }
+            boolean aggregating = aggregator != null
+                    && (!aggregator.getAggregationRepository().getKeys().isEmpty()
+                    || aggregator.getInProgressCompleteExchanges() > 0);
+            if (!aggregating && context.getInflightRepository().size() == 0) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private void setup(Configuration conf, boolean isPurging, boolean isStaging, boolean isTransforming)
+            throws Exception {
         Opus4DataSource opus4DataSource = new Opus4DataSource();
         opus4DataSource.configure(conf);
 
@@ -57,7 +102,30 @@ public class MigrationContext extends DefaultCamelContext {
         simpleRegistry.put(SwordConnection.DATA_SOURCE_NAME, swordConnection);
         setRegistry(simpleRegistry);
 
-        if (isStaging) addRoutes(new StagingRouteBuilder(conf));
+        if (conf.containsKey("migration.journal")) {
+            // Started right away, so routes see the replayed state when they are configured
+            MigrationJournal journal = new MigrationJournal(Paths.get(conf.getString("migration.journal")),
+                    conf.getBoolean("migration.resume", false),
+                    conf.getLong("migration.journal.syncInterval", 100));
+            journal.start();
+            simpleRegistry.put(MigrationJournal.NAME, journal);
+            addService(journal);
+        }
+
+        StageExecutorProfiles.register(getExecutorServiceManager(), conf);
+        if (conf.getBoolean("migration.virtualThreads", false)) {
+            if (VirtualThreadPoolFactory.isAvailable()) {
+                getExecutorServiceManager().setThreadPoolFactory(new VirtualThreadPoolFactory(
+                        Arrays.asList(StageExecutorProfiles.MAP, StageExecutorProfiles.SERIALIZE),
+                        conf.getInt("migration.cpuPermits", Runtime.getRuntime().availableProcessors())));
+                log.info("Running route stages on virtual threads");
+            } else {
+                log.warn("Virtual threads are not available on this JVM, using thread pools");
+            }
+        }
+
+        if (isPurging) addRoutes(new PurgeRouteBuilder(conf));
+        if (isStaging) addRoutes(new StagingRouteBuilder(conf, institutionNameMap));
         if (isTransforming) addRoutes(new TransformationRouteBuilder(conf, institutionNameMap));
 
         setStreamCaching(true);
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.contexts;
+
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.impl.DefaultThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolProfile;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates Camel thread pools that start a virtual thread per task, on JDKs that have virtual threads.
+ * <p>
+ * I/O-bound stages then need no pool sizing: a task waiting for a response only holds its
+ * virtual thread. Tasks of CPU-bound profiles also run on virtual threads, but only as many at a
+ * time as there are permits, by default one per core. Scheduled pools stay platform thread pools.
+ * <p>
+ * The bounded queues of the thread pool profiles still apply: a pool accepts at most its maximum
+ * pool size plus its queue size of tasks that haven't finished yet. Beyond that, the profile's
+ * rejected policy applies, so with <code>CallerRuns</code> the submitting thread runs the task
+ * itself and slows down the upstream stage, just as with platform thread pools.
+ * <p>
+ * The virtual thread API is looked up by reflection, so the code runs on Java 8 as well;
+ * use {@link #isAvailable()} to check for it.
+ */
+public class VirtualThreadPoolFactory implements ThreadPoolFactory {
+
+    private static final Method newVirtualThreadPerTaskExecutor = lookupVirtualThreadPerTaskExecutor();
+
+    private final Set<String> cpuBoundProfiles;
+    private final ThreadPoolFactory platformPools = new DefaultThreadPoolFactory();
+    private final Semaphore cpuPermits;
+
+    /**
+     * @param cpuBoundProfiles IDs of thread pool profiles whose tasks share the CPU permits
+     * @param cpuPermits       number of CPU-bound tasks to run at the same time
+     */
+    public VirtualThreadPoolFactory(Collection<String> cpuBoundProfiles, int cpuPermits) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by Java "
+                    + System.getProperty("java.version"));
+        }
+        this.cpuBoundProfiles = new HashSet<>(cpuBoundProfiles);
+        this.cpuPermits = new Semaphore(cpuPermits, true);
+    }
+
+    public static boolean isAvailable() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    @Override
+    public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    public ExecutorService newThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        if (cpuBoundProfiles.contains(profile.getId())) {
+            executor = new PermitExecutorService(executor, cpuPermits);
+        }
+        Integer maxQueueSize = profile.getMaxQueueSize();
+        if (maxQueueSize == null || maxQueueSize < 0) {
+            return executor;
+        }
+        int maxPoolSize = (profile.getMaxPoolSize() == null) ? 0 : profile.getMaxPoolSize();
+        ThreadPoolRejectedPolicy policy = (profile.getRejectedPolicy() == null)
+                ? ThreadPoolRejectedPolicy.CallerRuns
+                : profile.getRejectedPolicy();
+        return new BoundedExecutorService(executor, Math.max(1, maxPoolSize + maxQueueSize), policy);
+    }
+
+    @Override
+    public ScheduledExecutorService newScheduledThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        return platformPools.newScheduledThreadPool(profile, threadFactory);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    private static Method lookupVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs each task only once it holds one of the shared permits.
+     */
+    static class PermitExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        PermitExecutorService(ExecutorService delegate, Semaphore permits) {
+            this.delegate = delegate;
+            this.permits = permits;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            delegate.execute(permitted(command));
+        }
+
+        Runnable permitted(final Runnable command) {
+            return () -> {
+                permits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            };
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Accepts a bounded number of unfinished tasks and applies the rejected policy to further tasks.
+     */
+    static class BoundedExecutorService extends AbstractExecutorService {
+
+        private final Semaphore capacity;
+        private final ExecutorService delegate;
+        private final ThreadPoolRejectedPolicy policy;
+
+        BoundedExecutorService(ExecutorService delegate, int capacity, ThreadPoolRejectedPolicy policy) {
+            this.delegate = delegate;
+            this.capacity = new Semaphore(capacity);
+            this.policy = policy;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (!capacity.tryAcquire()) {
+                reject(command);
+                return;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        capacity.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                capacity.release();
+                throw e;
+            }
+        }
+
+        private void reject(Runnable command) {
+            switch (policy) {
+                case CallerRuns:
+                    if (isShutdown()) {
+                        throw new RejectedExecutionException("Executor has been shut down");
+                    }
+                    if (delegate instanceof PermitExecutorService) {
+                        ((PermitExecutorService) delegate).permitted(command).run();
+                    } else {
+                        command.run();
+                    }
+                    break;
+                case Discard:
+                case DiscardOldest:
+                    break;
+                default:
+                    throw new RejectedExecutionException("Task limit reached");
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+}
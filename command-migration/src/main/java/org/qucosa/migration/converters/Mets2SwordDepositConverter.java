@@ -22,6 +22,7 @@ import org.apache.camel.Converter;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.qucosa.camel.component.sword.SwordDeposit;
+import org.qucosa.camel.component.sword.SwordDepositBody;
 
 @Converter
 public class Mets2SwordDepositConverter {
@@ -31,7 +32,7 @@ public class Mets2SwordDepositConverter {
         Message msg = exchange.getIn();
         return new SwordDeposit(
                 (String) msg.getHeader("Slug"),
-                metsDocument.xmlText(),
+                SwordDepositBody.of(metsDocument::save),
                 (String) msg.getHeader("Content-Type"),
                 (String) msg.getHeader("Collection"));
     }
@@ -46,4 +46,15 @@ public class ChangeLog {
         }
     }
 
+    /**
+     * Forgets changes of the given type, e.g. when they turn out to reproduce the existing content.
+     */
+    public void discard(Type type) {
+        if (type == Type.MODS) {
+            mods_changes = false;
+        } else if (type == Type.SLUB_INFO) {
+            slub_info_changes = false;
+        }
+    }
+
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ExchangeHelper;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends each element of the message body to an endpoint, keeping up to a fixed number of
+ * elements in flight.
+ * <p>
+ * Unlike <code>split().parallelProcessing()</code>, no thread waits for an element to complete:
+ * the next element is sent from the callback of the one that finished. Elements are read from the
+ * body's iterator only as the window allows, so streamed bodies are never fully materialized.
+ * All elements are sent even if some fail; the first failure is set on the exchange at the end.
+ * Closeable iterators are closed after the last element.
+ */
+public class AsyncSplitter extends ServiceSupport implements AsyncProcessor {
+
+    private final String endpointUri;
+    private final int maxInFlight;
+    private volatile AsyncProcessor producer;
+    private Producer target;
+
+    public AsyncSplitter(String endpointUri, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Need at least one element in flight, got " + maxInFlight);
+        }
+        this.endpointUri = endpointUri;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            new Split(exchange, callback, producer(exchange)).drain();
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+        ServiceHelper.stopService(target);
+        target = null;
+        producer = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncSplitter[%s, %d in flight]", endpointUri, maxInFlight);
+    }
+
+    private AsyncProcessor producer(Exchange exchange) throws Exception {
+        AsyncProcessor p = producer;
+        if (p == null) {
+            synchronized (this) {
+                if (producer == null) {
+                    target = exchange.getContext().getEndpoint(endpointUri).createProducer();
+                    ServiceHelper.startService(target);
+                    producer = AsyncProcessorConverterHelper.convert(target);
+                }
+                p = producer;
+            }
+        }
+        return p;
+    }
+
+    private class Split {
+
+        private final AsyncCallback callback;
+        private final Exchange exchange;
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Iterator<?> iterator;
+        private final AsyncProcessor producer;
+        private final AtomicInteger work = new AtomicInteger();
+        private boolean done = false;
+        private boolean exhausted = false;
+
+        Split(Exchange exchange, AsyncCallback callback, AsyncProcessor producer) {
+            this.exchange = exchange;
+            this.callback = callback;
+            this.producer = producer;
+            this.iterator = ObjectHelper.createIterator(exchange.getIn().getBody());
+        }
+
+        /**
+         * Sends elements while the window allows and completes the exchange after the last one.
+         * Only one thread at a time runs the loop; callbacks arriving meanwhile make it run once more
+         * instead of recursing, so synchronous endpoints don't grow the stack.
+         */
+        void drain() {
+            if (work.getAndIncrement() != 0) return;
+            do {
+                while (!exhausted && inFlight.get() < maxInFlight) {
+                    try {
+                        if (iterator.hasNext()) {
+                            send(iterator.next());
+                        } else {
+                            exhausted = true;
+                        }
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        exhausted = true;
+                    }
+                }
+                if (exhausted && !done && inFlight.get() == 0) {
+                    done = true;
+                    if (iterator instanceof Closeable) {
+                        IOHelper.close((Closeable) iterator);
+                    }
+                    if (failure.get() != null) {
+                        exchange.setException(failure.get());
+                    }
+                    callback.done(false);
+                }
+            } while (work.decrementAndGet() != 0);
+        }
+
+        private void send(Object element) {
+            final Exchange sub = ExchangeHelper.createCorrelatedCopy(exchange, false);
+            sub.getIn().setBody(element);
+            inFlight.incrementAndGet();
+            producer.process(sub, doneSync -> {
+                if (sub.getException() != null) {
+                    failure.compareAndSet(null, sub.getException());
+                }
+                inFlight.decrementAndGet();
+                drain();
+            });
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import de.slubDresden.InfoDocument;
+import gov.loc.mods.v3.ModsDocument;
+import noNamespace.OpusDocument;
+
+import java.util.Map;
+
+/**
+ * The datastreams of a Fedora object needed for transformation.
+ * <p>
+ * Replaces the map of datastreams keyed by DSID, which is still accepted by {@link #of(Object)}
+ * for callers that build message bodies themselves. Bundles without a PID hold the datastreams
+ * of a document that hasn't been deposited yet.
+ */
+public class DatastreamBundle {
+
+    public static final String QUCOSA_XML = "QUCOSA-XML";
+    public static final String MODS = "MODS";
+    public static final String SLUB_INFO = "SLUB-INFO";
+
+    private final String pid;
+    private OpusDocument qucosaXml;
+    private ModsDocument mods;
+    private InfoDocument slubInfo;
+
+    public DatastreamBundle(String pid) {
+        this.pid = pid;
+    }
+
+    /**
+     * @return a bundle of the given document with empty MODS and SLUB-INFO documents to map it to
+     */
+    public static DatastreamBundle newDocument(OpusDocument qucosaXml) {
+        DatastreamBundle bundle = new DatastreamBundle(null);
+        bundle.setQucosaXml(qucosaXml);
+        bundle.setMods(ModsDocument.Factory.newInstance());
+        bundle.getMods().addNewMods();
+        bundle.setSlubInfo(InfoDocument.Factory.newInstance());
+        bundle.getSlubInfo().addNewInfo();
+        return bundle;
+    }
+
+    /**
+     * @param body a {@link DatastreamBundle} or a map of datastreams keyed by DSID
+     * @return the bundle, or a bundle of the map entries
+     */
+    public static DatastreamBundle of(Object body) {
+        if (body instanceof DatastreamBundle) {
+            return (DatastreamBundle) body;
+        }
+        if (body instanceof Map) {
+            Map m = (Map) body;
+            DatastreamBundle bundle = new DatastreamBundle(null);
+            bundle.setQucosaXml((OpusDocument) m.get(QUCOSA_XML));
+            bundle.setMods((ModsDocument) m.get(MODS));
+            bundle.setSlubInfo((InfoDocument) m.get(SLUB_INFO));
+            return bundle;
+        }
+        throw new IllegalArgumentException("Expected datastream bundle, got "
+                + (body == null ? "null" : body.getClass().getName()));
+    }
+
+    public String getPid() {
+        return pid;
+    }
+
+    public OpusDocument getQucosaXml() {
+        return qucosaXml;
+    }
+
+    public void setQucosaXml(OpusDocument qucosaXml) {
+        this.qucosaXml = qucosaXml;
+    }
+
+    public ModsDocument getMods() {
+        return mods;
+    }
+
+    public void setMods(ModsDocument mods) {
+        this.mods = mods;
+    }
+
+    public InfoDocument getSlubInfo() {
+        return slubInfo;
+    }
+
+    public void setSlubInfo(InfoDocument slubInfo) {
+        this.slubInfo = slubInfo;
+    }
+
+    @Override
+    public String toString() {
+        return "DatastreamBundle[" + pid + "]";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.qucosa.migration.mappings.ChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.qucosa.migration.mappings.ChangeLog.Type.MODS;
+import static org.qucosa.migration.mappings.ChangeLog.Type.SLUB_INFO;
+
+/**
+ * Drops datastream changes whose content is identical to what was last sent to the repository.
+ * <p>
+ * Runs after the {@link MappingProcessor}: each datastream the {@link ChangeLog} reports as changed
+ * is serialized canonically and hashed, and the change is dropped from the change log if the hash
+ * equals the one stored for the object's datastream. Without remaining changes, no update is
+ * deposited. The hashes of the datastreams to be updated are kept on the exchange until the
+ * {@link #commit()} processor stores them after a successful update.
+ */
+public class DatastreamHashFilter extends ServiceSupport implements Processor {
+
+    static final String PROPERTY_PENDING_HASHES = "DATASTREAM_HASHES";
+    private static final Logger log = LoggerFactory.getLogger(DatastreamHashFilter.class);
+    private static final XmlOptions canonicalOptions = new XmlOptions()
+            .setSaveAggressiveNamespaces()
+            .setSaveNoXmlDecl()
+            .setCharacterEncoding("UTF-8");
+
+    private final AtomicLong checked = new AtomicLong();
+    private final Path path;
+    private final AtomicLong skipped = new AtomicLong();
+    private DatastreamHashStore store;
+
+    public DatastreamHashFilter(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        store = new DatastreamHashStore(path);
+        log.info(String.format("Loaded %d datastream hashes from %s", store.size(), path));
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+        log.info(String.format("Skipped %d of %d datastream updates with unchanged content (%.1f%%)",
+                skipped.get(), checked.get(), getSkipRate() * 100));
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        DatastreamBundle bundle = DatastreamBundle.of(exchange.getIn().getBody());
+        ChangeLog changeLog = exchange.getProperty("CHANGELOG", ChangeLog.class);
+        String pid = exchange.getIn().getHeader("PID", String.class);
+
+        Map<String, String> pending = new HashMap<>();
+        if (changeLog.hasModsChanges()) {
+            filter(pid, DatastreamBundle.MODS, bundle.getMods(), MODS, changeLog, pending);
+        }
+        if (changeLog.hasSlubInfoChanges()) {
+            filter(pid, DatastreamBundle.SLUB_INFO, bundle.getSlubInfo(), SLUB_INFO, changeLog, pending);
+        }
+        exchange.setProperty(PROPERTY_PENDING_HASHES, pending);
+    }
+
+    /**
+     * @return a processor storing the hashes of the datastreams updated by the exchange, unless
+     * the update was a no-op
+     */
+    public Processor commit() {
+        return exchange -> {
+            if (exchange.getIn().getHeader("X-No-Op", false, Boolean.class)) return;
+            String pid = exchange.getIn().getHeader("PID", String.class);
+            Map<?, ?> pending = exchange.getProperty(PROPERTY_PENDING_HASHES, Map.class);
+            if (pending == null) return;
+            for (Map.Entry<?, ?> e : pending.entrySet()) {
+                store.put(pid, (String) e.getKey(), (String) e.getValue());
+            }
+        };
+    }
+
+    public double getSkipRate() {
+        long n = checked.get();
+        return (n == 0) ? 0 : (double) skipped.get() / n;
+    }
+
+    private void filter(String pid, String dsid, XmlObject xml, ChangeLog.Type type, ChangeLog changeLog,
+                        Map<String, String> pending) throws Exception {
+        if (xml == null) return;
+        checked.incrementAndGet();
+        String hash = hash(xml);
+        if (hash.equals(store.get(pid, dsid))) {
+            changeLog.discard(type);
+            skipped.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("%s of %s is unchanged", dsid, pid));
+            }
+        } else {
+            pending.put(dsid, hash);
+        }
+    }
+
+    static String hash(XmlObject xml) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (OutputStream out = new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest)) {
+            xml.save(out, canonicalOptions);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
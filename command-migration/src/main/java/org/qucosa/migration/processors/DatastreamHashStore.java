@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hashes of the datastream content last sent to the repository, keyed by PID and DSID.
+ * <p>
+ * Hashes are kept in memory and appended to a text file of <code>PID DSID hash</code> lines, so
+ * that they survive restarts. When loading, later lines win. The file is compacted on load if
+ * less than half of its lines are current.
+ */
+class DatastreamHashStore implements Closeable {
+
+    private final Map<String, String> hashes = new HashMap<>();
+    private final Path path;
+    private BufferedWriter out;
+
+    DatastreamHashStore(Path path) throws IOException {
+        this.path = path;
+        int lines = 0;
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length != 3) continue;
+                hashes.put(key(fields[0], fields[1]), fields[2]);
+                lines++;
+            }
+        } else if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (lines > 2 * hashes.size()) {
+            compact();
+        }
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    synchronized String get(String pid, String dsid) {
+        return hashes.get(key(pid, dsid));
+    }
+
+    synchronized void put(String pid, String dsid, String hash) throws IOException {
+        if (hash.equals(hashes.put(key(pid, dsid), hash))) return;
+        out.write(pid + " " + dsid + " " + hash);
+        out.newLine();
+        out.flush();
+    }
+
+    synchronized int size() {
+        return hashes.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void compact() throws IOException {
+        Path part = path.resolveSibling(path.getFileName() + ".part");
+        try (BufferedWriter w = Files.newBufferedWriter(part, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> e : hashes.entrySet()) {
+                w.write(e.getKey().replace('/', ' ') + " " + e.getValue());
+                w.newLine();
+            }
+        }
+        Files.move(part, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(String pid, String dsid) {
+        return pid + "/" + dsid;
+    }
+
+}
@@ -91,9 +91,20 @@ public class DepositMetsGenerator implements Processor {
                 METS_SCHEMA_LOCATION, MODS_SCHEMA_LOCATION));
 
         boolean hasBody = false;
-        if (msg.getBody() instanceof Map) {
-            Map m = msg.getBody(Map.class);
-            ModsDocument modsDocument = (ModsDocument) m.get("MODS");
+        if (msg.getBody() instanceof DatastreamBundle && msg.getBody(DatastreamBundle.class).getPid() == null) {
+            // Document mapped before its first deposit
+            DatastreamBundle bundle = msg.getBody(DatastreamBundle.class);
+            OpusDocument opusDocument = bundle.getQucosaXml();
+            embedQucosaXml(metsRecord, opusDocument);
+            embedMetsHeader(metsRecord, opusDocument);
+            embedMods(metsRecord, bundle.getMods());
+            embedInfo(metsRecord, bundle.getSlubInfo());
+            URL fileUrl = new URL(msg.getHeader("Qucosa-File-Url").toString());
+            attachUploadFileSections(metsRecord, opusDocument, fileUrl);
+            hasBody = true;
+        } else if (msg.getBody() instanceof DatastreamBundle || msg.getBody() instanceof Map) {
+            DatastreamBundle bundle = DatastreamBundle.of(msg.getBody());
+            ModsDocument modsDocument = bundle.getMods();
             ChangeLog changeLog = exchange.getProperty("CHANGELOG", ChangeLog.class);
 
             if (changeLog.hasModsChanges() && modsDocument != null) {
@@ -101,11 +112,15 @@ public class DepositMetsGenerator implements Processor {
                 hasBody = true;
             }
 
-            InfoDocument infoDocument = (InfoDocument) m.get("SLUB-INFO");
+            InfoDocument infoDocument = bundle.getSlubInfo();
             if (changeLog.hasSlubInfoChanges() && infoDocument != null) {
                 embedInfo(metsRecord, infoDocument);
                 hasBody = true;
             }
+        } else if (msg.getHeader("PID") != null) {
+            // Existing object updated without mapping: its MODS and files are left as they are
+            embedQucosaXml(metsRecord, msg.getBody(OpusDocument.class));
+            hasBody = true;
         } else {
             OpusDocument opusDocument = msg.getBody(OpusDocument.class);
             embedQucosaXml(metsRecord, opusDocument);
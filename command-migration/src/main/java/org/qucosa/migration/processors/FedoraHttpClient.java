@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.http.common.HttpOperationFailedException;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.qucosa.camel.component.sword.AdaptiveConcurrencyLimiter;
+import org.qucosa.camel.component.sword.PooledHttpClients;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Non-blocking requests to the Fedora REST API.
+ * <p>
+ * Requests are limited per host by an {@link AdaptiveConcurrencyLimiter}. Responses other than
+ * 200 complete exceptionally with a {@link HttpOperationFailedException}, as the HTTP component
+ * fails exchanges, so that routes can handle them by their status code.
+ */
+class FedoraHttpClient extends ServiceSupport {
+
+    private final Configuration config;
+    private final String fedoraUri;
+    private final String password;
+    private final String user;
+    private ExecutorService callbackExecutor;
+    private CloseableHttpAsyncClient httpClient;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    FedoraHttpClient(Configuration configuration) throws ConfigurationException {
+        this.config = configuration;
+        this.fedoraUri = getConfigValueOrThrowException("fedora.url");
+        this.user = getConfigValueOrThrowException("fedora.user");
+        this.password = getConfigValueOrThrowException("fedora.password");
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        httpClient = PooledHttpClients.createAsync(config, "fedora", user, password);
+        callbackExecutor = PooledHttpClients.createCallbackExecutor(config, "fedora");
+        limiter = AdaptiveConcurrencyLimiter.forHost(fedoraUri, config, "fedora");
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdown();
+            callbackExecutor = null;
+        }
+    }
+
+    String datastreamUri(String pid, String dsid) {
+        return fedoraUri + "/objects/" + pid + "/datastreams/" + dsid + "/content";
+    }
+
+    String objectUri(String pid) {
+        return fedoraUri + "/objects/" + pid;
+    }
+
+    CompletableFuture<String> get(String uri) {
+        return execute(new HttpGet(uri));
+    }
+
+    /**
+     * Sends a request to Fedora.
+     *
+     * @return the response body, completed on the callback executor
+     */
+    CompletableFuture<String> execute(final HttpUriRequest request) {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final CloseableHttpAsyncClient client = httpClient;
+        final ExecutorService callbacks = callbackExecutor;
+        final String uri = request.getURI().toString();
+        if (client == null) {
+            result.completeExceptionally(new IllegalStateException("Fedora client has not been started"));
+            return result;
+        }
+
+        limiter.acquireAsync().thenAccept(permit -> {
+            try {
+                client.execute(request, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        permit.completed(response.getStatusLine().getStatusCode());
+                        callbacks.execute(() -> {
+                            try {
+                                result.complete(handle(uri, response));
+                            } catch (Exception e) {
+                                result.completeExceptionally(e);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        permit.overloaded();
+                        callbacks.execute(() -> result.completeExceptionally(e));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        permit.ignored();
+                        callbacks.execute(() -> result.completeExceptionally(
+                                new CancellationException("Request to " + uri + " cancelled")));
+                    }
+                });
+            } catch (RuntimeException e) {
+                permit.ignored();
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private String handle(String uri, HttpResponse response) throws Exception {
+        int status = response.getStatusLine().getStatusCode();
+        String body = (response.getEntity() == null) ? null
+                : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+        if (status != HttpStatus.SC_OK) {
+            Map<String, String> headers = new HashMap<>();
+            for (Header header : response.getAllHeaders()) {
+                headers.put(header.getName(), header.getValue());
+            }
+            Header location = response.getFirstHeader("Location");
+            throw new HttpOperationFailedException(uri, status, response.getStatusLine().getReasonPhrase(),
+                    (location == null) ? null : location.getValue(), headers, body);
+        }
+        return body;
+    }
+
+    private String getConfigValueOrThrowException(String key) throws ConfigurationException {
+        String val = config.getString(key, null);
+        if (val == null) {
+            throw new ConfigurationException("No config value for " + key);
+        }
+        return val;
+    }
+}
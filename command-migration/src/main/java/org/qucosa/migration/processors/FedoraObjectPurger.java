@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.http.common.HttpOperationFailedException;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpDelete;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Purges Fedora objects without blocking the routing thread.
+ * <p>
+ * Concurrent deletes are limited per host by the Fedora concurrency limiter, and their rate by
+ * <code>fedora.purge.rate</code> deletes per second, if set. Objects that don't exist count as
+ * purged. Other responses than 200 and 404 fail the exchange with a
+ * {@link HttpOperationFailedException}, so the error handler can redeliver them.
+ * <p>
+ * Throughput is logged every <code>fedora.purge.reportInterval</code> objects and on stop. Deletes
+ * still waiting for their rate limit slot on stop fail with a {@link RejectedExecutionException}.
+ */
+public class FedoraObjectPurger extends ServiceSupport implements AsyncProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(FedoraObjectPurger.class);
+
+    private final FedoraHttpClient client;
+    private final AtomicLong failed = new AtomicLong();
+    private final long intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final Set<ScheduledPurge> pending = ConcurrentHashMap.newKeySet();
+    private final Expression pidExpression;
+    private final AtomicLong purged = new AtomicLong();
+    private volatile long reported = 0;
+    private final long reportInterval;
+    private ScheduledExecutorService scheduler;
+    private volatile long startTime;
+
+    /**
+     * @param pidExpression evaluates to the PID of the object to purge
+     */
+    public FedoraObjectPurger(Configuration configuration, Expression pidExpression) throws ConfigurationException {
+        this.client = new FedoraHttpClient(configuration);
+        this.pidExpression = pidExpression;
+        double rate = configuration.getDouble("fedora.purge.rate", 0);
+        this.intervalNanos = (rate > 0) ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        this.reportInterval = configuration.getLong("fedora.purge.reportInterval", 1000);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(client);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fedora-purge-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        startTime = System.nanoTime();
+        nextSlot.set(startTime);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        for (ScheduledPurge scheduled : pending) {
+            scheduled.reject();
+        }
+        ServiceHelper.stopService(client);
+        if (purged.get() + failed.get() != reported) {
+            logThroughput();
+        }
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        final String pid = pidExpression.evaluate(exchange, String.class);
+        long delay = reserveSlot();
+        if (delay > 0) {
+            ScheduledPurge scheduled = new ScheduledPurge(pid, exchange, callback);
+            pending.add(scheduled);
+            scheduler.schedule(scheduled, delay, TimeUnit.NANOSECONDS);
+        } else {
+            purge(pid, exchange, callback);
+        }
+        return false;
+    }
+
+    public void logThroughput() {
+        reported = purged.get() + failed.get();
+        double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        log.info(String.format("Purged %d objects (%d did not exist, %d failed attempts) in %.1f s, %.1f objects/s",
+                purged.get(), notFound.get(), failed.get(), seconds, purged.get() / seconds));
+    }
+
+    private void purge(String pid, final Exchange exchange, final AsyncCallback callback) {
+        client.execute(new HttpDelete(client.objectUri(pid))).whenComplete((body, error) -> {
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause() : error;
+            if (cause == null) {
+                completed();
+            } else if (cause instanceof HttpOperationFailedException
+                    && ((HttpOperationFailedException) cause).getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                notFound.incrementAndGet();
+                completed();
+            } else {
+                failed.incrementAndGet();
+                exchange.setException(cause);
+            }
+            callback.done(false);
+        });
+    }
+
+    private void completed() {
+        long n = purged.incrementAndGet();
+        if (reportInterval > 0 && n % reportInterval == 0) {
+            logThroughput();
+        }
+    }
+
+    /**
+     * @return nanoseconds to wait until the next delete is within the rate limit
+     */
+    private long reserveSlot() {
+        if (intervalNanos == 0) return 0;
+        long now = System.nanoTime();
+        while (true) {
+            long slot = nextSlot.get();
+            long start = Math.max(slot, now);
+            if (nextSlot.compareAndSet(slot, start + intervalNanos)) {
+                return start - now;
+            }
+        }
+    }
+
+    private class ScheduledPurge implements Runnable {
+
+        private final AsyncCallback callback;
+        private final Exchange exchange;
+        private final String pid;
+
+        ScheduledPurge(String pid, Exchange exchange, AsyncCallback callback) {
+            this.pid = pid;
+            this.exchange = exchange;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (pending.remove(this)) {
+                purge(pid, exchange, callback);
+            }
+        }
+
+        void reject() {
+            if (pending.remove(this)) {
+                exchange.setException(new RejectedExecutionException(
+                        String.format("Purger stopped before purging %s", pid)));
+                callback.done(false);
+            }
+        }
+    }
+}
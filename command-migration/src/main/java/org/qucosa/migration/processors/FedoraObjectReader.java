@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import de.slubDresden.InfoDocument;
+import gov.loc.mods.v3.ModsDocument;
+import noNamespace.OpusDocument;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.common.HttpOperationFailedException;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.qucosa.migration.processors.DatastreamBundle.MODS;
+import static org.qucosa.migration.processors.DatastreamBundle.QUCOSA_XML;
+import static org.qucosa.migration.processors.DatastreamBundle.SLUB_INFO;
+
+/**
+ * Reads the datastreams of the Fedora object named by the <code>PID</code> header into a
+ * {@link DatastreamBundle}.
+ * <p>
+ * The object is exported as FOXML in a single request, which carries inline XML datastreams
+ * with their content. Only datastreams stored as managed content have to be fetched separately.
+ * Missing MODS and SLUB-INFO datastreams are replaced by empty documents, as are existing ones
+ * when <code>transformation.discardExisting</code> is set. If the object has no QUCOSA-XML
+ * datastream, the bundle doesn't contain one either. Unknown objects fail the exchange with
+ * a {@link HttpOperationFailedException} with status code 404.
+ */
+public class FedoraObjectReader extends ServiceSupport implements AsyncProcessor {
+
+    private static final String FOXML_NAMESPACE = "info:fedora/fedora-system:def/foxml#";
+    private static final String EXPORT_PARAMETERS =
+            "/export?context=migrate&format=info:fedora/fedora-system:FOXML-1.1";
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = ThreadLocal.withInitial(() -> {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final boolean discardExisting;
+    private final FedoraHttpClient client;
+
+    public FedoraObjectReader(Configuration configuration) throws ConfigurationException {
+        this.client = new FedoraHttpClient(configuration);
+        this.discardExisting = configuration.getBoolean("transformation.discardExisting", false);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(client);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        ServiceHelper.stopService(client);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        read(exchange.getIn().getHeader("PID", String.class)).whenComplete((bundle, error) -> {
+            if (error != null) {
+                exchange.setException(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                exchange.getIn().setBody(bundle);
+            }
+            callback.done(false);
+        });
+        return false;
+    }
+
+    private CompletableFuture<DatastreamBundle> read(final String pid) {
+        return client.get(client.objectUri(pid) + EXPORT_PARAMETERS).thenCompose(foxml -> {
+            Map<String, Element> found = inlineDatastreams(parse(foxml),
+                    discardExisting ? Arrays.asList(QUCOSA_XML) : Arrays.asList(QUCOSA_XML, MODS, SLUB_INFO));
+            final CompletableFuture<Element> qucosaXml = datastream(pid, QUCOSA_XML, found);
+            final CompletableFuture<Element> mods = datastream(pid, MODS, found);
+            final CompletableFuture<Element> slubInfo = datastream(pid, SLUB_INFO, found);
+            return CompletableFuture.allOf(qucosaXml, mods, slubInfo)
+                    .thenApply(v -> bundle(pid, qucosaXml.join(), mods.join(), slubInfo.join()));
+        });
+    }
+
+    private CompletableFuture<Element> datastream(String pid, String dsid, Map<String, Element> found) {
+        if (!found.containsKey(dsid) || found.get(dsid) != null) {
+            return CompletableFuture.completedFuture(found.get(dsid));
+        }
+        return client.get(client.datastreamUri(pid, dsid)).thenApply(content -> parse(content).getDocumentElement());
+    }
+
+    private static DatastreamBundle bundle(String pid, Element qucosaXml, Element mods, Element slubInfo) {
+        DatastreamBundle bundle = new DatastreamBundle(pid);
+        try {
+            if (qucosaXml != null) {
+                bundle.setQucosaXml(OpusDocument.Factory.parse(qucosaXml));
+            }
+            if (mods != null) {
+                bundle.setMods(ModsDocument.Factory.parse(mods));
+            } else {
+                bundle.setMods(ModsDocument.Factory.newInstance());
+                bundle.getMods().addNewMods();
+            }
+            if (slubInfo != null) {
+                bundle.setSlubInfo(InfoDocument.Factory.parse(slubInfo));
+            } else {
+                bundle.setSlubInfo(InfoDocument.Factory.newInstance());
+                bundle.getSlubInfo().addNewInfo();
+            }
+        } catch (Exception e) {
+            throw new CompletionException(new Exception("Cannot read datastreams of " + pid, e));
+        }
+        return bundle;
+    }
+
+    /**
+     * Finds the content of the latest version of the given datastreams in a FOXML document.
+     *
+     * @return the root element of the content of each datastream found, or <code>null</code> for
+     * datastreams that are present but whose content isn't inline XML
+     */
+    static Map<String, Element> inlineDatastreams(Document foxml, Collection<String> dsids) {
+        Map<String, Element> found = new HashMap<>();
+        NodeList datastreams = foxml.getElementsByTagNameNS(FOXML_NAMESPACE, "datastream");
+        for (int i = 0; i < datastreams.getLength(); i++) {
+            Element datastream = (Element) datastreams.item(i);
+            String dsid = datastream.getAttribute("ID");
+            if (!dsids.contains(dsid)) continue;
+
+            Element latest = null;
+            for (Element version : children(datastream, "datastreamVersion")) {
+                if (latest == null || version.getAttribute("CREATED").compareTo(latest.getAttribute("CREATED")) >= 0) {
+                    latest = version;
+                }
+            }
+            Element content = null;
+            if (latest != null) {
+                for (Element xmlContent : children(latest, "xmlContent")) {
+                    content = firstChildElement(xmlContent);
+                }
+            }
+            found.put(dsid, content);
+        }
+        return found;
+    }
+
+    private static Iterable<Element> children(Element parent, String localName) {
+        List<Element> children = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && FOXML_NAMESPACE.equals(n.getNamespaceURI())
+                    && localName.equals(n.getLocalName())) {
+                children.add((Element) n);
+            }
+        }
+        return children;
+    }
+
+    private static Element firstChildElement(Element parent) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) return (Element) n;
+        }
+        return null;
+    }
+
+    static Document parse(String xml) {
+        try {
+            return documentBuilder.get().parse(new InputSource(new StringReader(xml)));
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.support.ServiceSupport;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.qucosa.camel.component.opus4.Opus4IdSet;
+import org.qucosa.camel.component.sword.PooledHttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Set of the Opus document IDs that already have a <code>qucosa:ID</code> object in Fedora.
+ * <p>
+ * The PIDs of all objects are loaded once on start with a single query to the Fedora resource
+ * index, so staging can tell existing documents apart without a request per document. PIDs
+ * only match Opus IDs if objects have been deposited with the Slug header.
+ */
+public class FedoraObjectSnapshot extends ServiceSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(FedoraObjectSnapshot.class);
+    private static final String PID_PREFIX = "info:fedora/qucosa:";
+    private static final String QUERY = "select $object from <#ri> where $object " +
+            "<fedora-model:hasModel> <info:fedora/fedora-system:FedoraObject-3.0>";
+
+    private final Configuration config;
+    private final String fedoraUri;
+    private volatile Opus4IdSet ids = new Opus4IdSet();
+
+    public FedoraObjectSnapshot(Configuration configuration) throws ConfigurationException {
+        this.config = configuration;
+        this.fedoraUri = getConfigValueOrThrowException("fedora.url");
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        long start = System.currentTimeMillis();
+        HttpGet query = new HttpGet(new URIBuilder(fedoraUri + "/risearch")
+                .addParameter("type", "tuples")
+                .addParameter("lang", "itql")
+                .addParameter("format", "CSV")
+                .addParameter("flush", "true")
+                .addParameter("query", QUERY)
+                .build());
+        try (CloseableHttpClient client = PooledHttpClients.create(config, "fedora",
+                getConfigValueOrThrowException("fedora.user"), getConfigValueOrThrowException("fedora.password"));
+             CloseableHttpResponse response = client.execute(query)) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                String reason = response.getStatusLine().getReasonPhrase();
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Cannot query Fedora resource index: " + reason);
+            }
+            ids = read(response.getEntity().getContent());
+        }
+        log.info(String.format("Found %d existing objects in %d ms (%d KB)",
+                ids.size(), System.currentTimeMillis() - start, ids.getSizeInBytes() / 1024));
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        ids = new Opus4IdSet();
+    }
+
+    /**
+     * @return <code>true</code> if the object <code>qucosa:documentId</code> existed on start
+     */
+    public boolean contains(int documentId) {
+        return ids.contains(documentId);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Reads the object URIs of a CSV query result. Objects that are not named <code>qucosa:</code>
+     * followed by a number are ignored.
+     */
+    static Opus4IdSet read(InputStream csv) throws IOException {
+        Opus4IdSet ids = new Opus4IdSet();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.startsWith(PID_PREFIX)) continue;
+            try {
+                ids.add(Integer.parseInt(line.substring(PID_PREFIX.length())));
+            } catch (IllegalArgumentException ignored) {
+                // Not generated from an Opus document ID
+            }
+        }
+        return ids;
+    }
+
+    private String getConfigValueOrThrowException(String key) throws ConfigurationException {
+        String val = config.getString(key, null);
+        if (val == null) {
+            throw new ConfigurationException("No config value for " + key);
+        }
+        return val;
+    }
+}
@@ -21,28 +21,57 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
 
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * Replaces a file name body with the IDs listed in the file, as read by {@link IdFileIterator}.
+ * <p>
+ * By default, the body becomes a list of all IDs. In streaming mode it becomes the
+ * {@link IdFileIterator} itself, so that IDs are read while they are processed. ID ranges are only
+ * expanded if enabled, since identifiers like URNs can look like ranges.
+ */
 public class FileReaderProcessor implements Processor {
 
     private final String commentPrefix;
+    private final boolean expandRanges;
+    private final boolean streaming;
 
     public FileReaderProcessor(String commentPrefix) {
+        this(commentPrefix, false);
+    }
+
+    public FileReaderProcessor(String commentPrefix, boolean streaming) {
+        this(commentPrefix, streaming, false);
+    }
+
+    /**
+     * @param expandRanges If true, lines like <code>Opus/Document/1-100</code> are expanded
+     *                     to the IDs of the range
+     */
+    public FileReaderProcessor(String commentPrefix, boolean streaming, boolean expandRanges) {
         this.commentPrefix = (commentPrefix == null) ? "" : commentPrefix;
+        this.expandRanges = expandRanges;
+        this.streaming = streaming;
     }
 
     @Override
     public void process(Exchange exchange) throws Exception {
         Message in = exchange.getIn();
         String filename = in.getBody(String.class);
-        List<String> lines = Files.readAllLines(Paths.get(filename)).stream()
-                .map(String::trim)
-                .filter(s -> !s.isEmpty() && (commentPrefix.isEmpty() || !s.startsWith(commentPrefix)))
-                .collect(Collectors.toList());
-        in.setBody(lines);
+        IdFileIterator ids = new IdFileIterator(Paths.get(filename), commentPrefix, expandRanges);
+        if (streaming) {
+            in.setBody(ids);
+        } else {
+            List<String> lines = new ArrayList<>();
+            try {
+                ids.forEachRemaining(lines::add);
+            } finally {
+                ids.close();
+            }
+            in.setBody(lines);
+        }
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads IDs from a file line by line, without loading the file into memory.
+ * <p>
+ * Lines are trimmed; empty lines and lines starting with the comment prefix are skipped. If range
+ * expansion is enabled, a line of the form <code>prefix/first-last</code> or
+ * <code>prefix:first-last</code>, e.g. <code>Opus/Document/1000-250000</code>, stands for the IDs
+ * <code>prefix/first</code> to <code>prefix/last</code>, which are generated one at a time while
+ * iterating. The file is closed when the last ID has been read, or by {@link #close()}.
+ */
+public class IdFileIterator implements Iterator<String>, Closeable {
+
+    private static final Pattern RANGE = Pattern.compile("(.*[/:])(\\d{1,18})-(\\d{1,18})");
+
+    private final String commentPrefix;
+    private final boolean expandRanges;
+    private final BufferedReader reader;
+    private String next;
+    private String rangePrefix;
+    private long rangeNext;
+    private long rangeLast;
+    private boolean closed = false;
+
+    public IdFileIterator(Path path, String commentPrefix) throws IOException {
+        this(path, commentPrefix, false);
+    }
+
+    public IdFileIterator(Path path, String commentPrefix, boolean expandRanges) throws IOException {
+        this.commentPrefix = (commentPrefix == null) ? "" : commentPrefix;
+        this.expandRanges = expandRanges;
+        this.reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String id = next;
+        next = null;
+        return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            reader.close();
+        }
+    }
+
+    private String advance() {
+        if (rangePrefix != null) {
+            if (rangeNext <= rangeLast) {
+                return rangePrefix + rangeNext++;
+            }
+            rangePrefix = null;
+        }
+        try {
+            while (!closed) {
+                String line = reader.readLine();
+                if (line == null) {
+                    close();
+                    break;
+                }
+                line = line.trim();
+                if (line.isEmpty() || (!commentPrefix.isEmpty() && line.startsWith(commentPrefix))) continue;
+
+                Matcher range = RANGE.matcher(line);
+                if (expandRanges && range.matches()) {
+                    long first = Long.parseLong(range.group(2));
+                    long last = Long.parseLong(range.group(3));
+                    if (first > last) {
+                        throw new IllegalArgumentException("Empty ID range: " + line);
+                    }
+                    rangePrefix = range.group(1);
+                    rangeNext = first + 1;
+                    rangeLast = last;
+                    return rangePrefix + first;
+                }
+                return line;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+}
@@ -62,7 +62,8 @@ public class MappingProcessor implements Processor {
 
     @Override
     public void process(Exchange exchange) throws Exception {
-        Map m = (Map) exchange.getIn().getBody();
+        Object body = exchange.getIn().getBody();
+        DatastreamBundle bundle = DatastreamBundle.of(body);
         ChangeLog changelog = new ChangeLog();
 
         Map namemap = exchange.getProperty(PROPERTY_INSTITUTION_NAME_MAPPING, Map.class);
@@ -71,8 +72,8 @@ public class MappingProcessor implements Processor {
         }
 
         try {
-            process(getOpusDocument(m), getModsDocument(m), getInfoDocument(m), changelog);
-            exchange.getIn().setBody(m);
+            process(getOpusDocument(bundle), getModsDocument(bundle), getInfoDocument(bundle), changelog);
+            exchange.getIn().setBody(body);
             exchange.setProperty("CHANGELOG", changelog);
         } catch (RuntimeException rte) {
             throw new Exception("Processor failed with RuntimeException", rte);
@@ -136,8 +137,8 @@ public class MappingProcessor implements Processor {
         tm.mapTitleAlternativeElements(opus, mods, changeLog);
     }
 
-    private InfoType getInfoDocument(Map m) {
-        InfoDocument infoXmlObject = (InfoDocument) m.get("SLUB-INFO");
+    private InfoType getInfoDocument(DatastreamBundle bundle) {
+        InfoDocument infoXmlObject = bundle.getSlubInfo();
         if (infoXmlObject != null) {
             if (infoXmlObject.getInfo() == null) {
                 throw new IllegalArgumentException("SLUB-INFO XML has no <info> element");
@@ -148,8 +149,8 @@ public class MappingProcessor implements Processor {
         return infoXmlObject.getInfo();
     }
 
-    private ModsDefinition getModsDocument(Map m) {
-        ModsDocument modsXmlObject = (ModsDocument) m.get("MODS");
+    private ModsDefinition getModsDocument(DatastreamBundle bundle) {
+        ModsDocument modsXmlObject = bundle.getMods();
         if (modsXmlObject != null) {
             if (modsXmlObject.getMods() == null) {
                 throw new IllegalArgumentException("MODS XML has no <mods> element");
@@ -160,9 +161,9 @@ public class MappingProcessor implements Processor {
         return modsXmlObject.getMods();
     }
 
-    private Document getOpusDocument(Map m) {
+    private Document getOpusDocument(DatastreamBundle bundle) {
         OpusDocument opusXmlObject;
-        opusXmlObject = (OpusDocument) m.get("QUCOSA-XML");
+        opusXmlObject = bundle.getQucosaXml();
         if (opusXmlObject != null) {
             if (opusXmlObject.getOpus() != null) {
                 if (opusXmlObject.getOpus().getOpusDocument() == null) {
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Processor;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.http.HttpResponse;
+import org.qucosa.camel.component.opus4.Opus4IdSet;
+import org.qucosa.migration.routes.StagingRouteBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of per-document migration state, used to resume interrupted runs.
+ * <p>
+ * Each transition is a binary record: <code>crc:int length:short state:byte documentId:int pid:utf8</code>,
+ * where the CRC covers everything after the length. Records are buffered in memory and written
+ * and forced to disk by a background thread every sync interval, so appending never waits for the
+ * disk and a crash loses at most the transitions of the last interval. On replay, a torn or corrupt
+ * tail is cut off at the last complete record.
+ * <p>
+ * Documents are identified by their Opus document ID while staging and by their PID while
+ * transforming. Purged objects are identified by their PID. PIDs of the form <code>qucosa:ID</code>
+ * are kept as numeric IDs in compact sets, and a deposited document's PID is only stored if it
+ * differs from <code>qucosa:documentId</code>. A journal created by {@link #disabled()} records
+ * nothing and reports no completed work.
+ */
+public class MigrationJournal extends ServiceSupport {
+
+    public static final String NAME = "migrationJournal";
+    public static final String HEADER_DOCUMENT_ID = "OpusDocumentId";
+    public static final String HEADER_DOCUMENT_IDS = "OpusDocumentIds";
+    private static final Logger log = LoggerFactory.getLogger(MigrationJournal.class);
+    private static final int NO_DOCUMENT = -1;
+    private static final String PID_PREFIX = "qucosa:";
+    private static final int RECORD_HEADER_LENGTH = 6;
+
+    private final Opus4IdSet deposited = new Opus4IdSet();
+    private final Path path;
+    private final Map<Integer, String> otherPids = new HashMap<>();
+    private final Opus4IdSet slugPids = new Opus4IdSet();
+    private final boolean resume;
+    private final long syncInterval;
+    private final PidSet purged = new PidSet();
+    private final PidSet transformed = new PidSet();
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+    private FileChannel channel;
+    private int failures = 0;
+    private ScheduledExecutorService syncer;
+
+    /**
+     * @param resume       replay an existing journal instead of starting a new one
+     * @param syncInterval milliseconds between writes of the buffered records
+     */
+    public MigrationJournal(Path path, boolean resume, long syncInterval) {
+        this.path = path;
+        this.resume = resume;
+        this.syncInterval = syncInterval;
+    }
+
+    public static MigrationJournal disabled() {
+        return new MigrationJournal(null, false, 0);
+    }
+
+    /**
+     * @return the journal registered in the context or a disabled journal
+     */
+    public static MigrationJournal lookup(CamelContext context) {
+        MigrationJournal journal = context.getRegistry().lookupByNameAndType(NAME, MigrationJournal.class);
+        return (journal == null) ? disabled() : journal;
+    }
+
+    public enum State {
+        FETCHED, DEPOSITED, TRANSFORMED, FAILED, PURGED
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (path == null) return;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        long length = 0;
+        if (resume && Files.exists(path)) {
+            long startTime = System.currentTimeMillis();
+            length = replay();
+            log.info(String.format("Replayed journal %s in %d ms: %d objects purged, %d documents deposited, " +
+                            "%d transformed, %d failures", path, System.currentTimeMillis() - startTime,
+                    purged.size(), deposited.size(), transformed.size(), failures));
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(length);
+        channel.position(length);
+
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "migration-journal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (IOException e) {
+                log.error("Cannot write migration journal: " + e.getMessage(), e);
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (channel == null) return;
+        syncer.shutdown();
+        syncer.awaitTermination(10, TimeUnit.SECONDS);
+        sync();
+        channel.close();
+        channel = null;
+    }
+
+    public synchronized boolean isDeposited(int documentId) {
+        return deposited.contains(documentId);
+    }
+
+    /**
+     * @return the PID of the deposited document or <code>null</code>
+     */
+    public synchronized String getPid(int documentId) {
+        return slugPids.contains(documentId) ? PID_PREFIX + documentId : otherPids.get(documentId);
+    }
+
+    public synchronized boolean isTransformed(String pid) {
+        return transformed.contains(pid);
+    }
+
+    public synchronized boolean isPurged(String pid) {
+        return purged.contains(pid);
+    }
+
+    public void append(State state, int documentId, String pid) {
+        if (path == null) return;
+        byte[] pidBytes = (pid == null) ? new byte[0] : pid.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + 5 + pidBytes.length);
+        record.position(RECORD_HEADER_LENGTH);
+        record.put((byte) state.ordinal());
+        record.putInt(documentId);
+        record.put(pidBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_LENGTH, record.capacity() - RECORD_HEADER_LENGTH);
+        record.putInt(0, (int) crc.getValue());
+        record.putShort(4, (short) (record.capacity() - RECORD_HEADER_LENGTH));
+
+        synchronized (this) {
+            buffer.write(record.array(), 0, record.capacity());
+            apply(state, documentId, pid);
+        }
+    }
+
+    /**
+     * @return a processor appending the state of the exchange's document. Documents are taken from
+     * the {@value #HEADER_DOCUMENT_ID} or {@value #HEADER_DOCUMENT_IDS} header and the PID header,
+     * or from the body of a deposit response.
+     */
+    public Processor record(final State state) {
+        return exchange -> {
+            if (path == null) return;
+            Object body = exchange.getIn().getBody();
+            List<?> documentIds = exchange.getIn().getHeader(HEADER_DOCUMENT_IDS, List.class);
+            if (documentIds != null && body instanceof List && state == State.DEPOSITED) {
+                List<?> depositedPids = (List<?>) body;
+                for (int i = 0; i < documentIds.size(); i++) {
+                    append(state, (Integer) documentIds.get(i), (String) depositedPids.get(i));
+                }
+            } else if (documentIds != null && state == State.FAILED) {
+                for (Object documentId : documentIds) {
+                    append(state, (Integer) documentId, null);
+                }
+            } else {
+                String pid = (body instanceof HttpResponse && state == State.DEPOSITED)
+                        ? StagingRouteBuilder.extractPID((HttpResponse) body)
+                        : exchange.getIn().getHeader("PID", String.class);
+                append(state, exchange.getIn().getHeader(HEADER_DOCUMENT_ID, NO_DOCUMENT, Integer.class), pid);
+            }
+        };
+    }
+
+    private void apply(State state, int documentId, String pid) {
+        switch (state) {
+            case DEPOSITED:
+                if (documentId != NO_DOCUMENT) {
+                    deposited.add(documentId);
+                    if ((PID_PREFIX + documentId).equals(pid)) slugPids.add(documentId);
+                    else if (pid != null) otherPids.put(documentId, pid);
+                }
+                break;
+            case TRANSFORMED:
+                if (pid != null) transformed.add(pid);
+                break;
+            case FAILED:
+                failures++;
+                break;
+            case PURGED:
+                if (pid != null) purged.add(pid);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * @return the length of the valid part of the journal
+     */
+    private long replay() throws IOException {
+        State[] states = State.values();
+        long valid = 0;
+        byte[] data = new byte[512];
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream din = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            while (true) {
+                int checksum = din.readInt();
+                int length = din.readUnsignedShort();
+                if (length < 5) break;
+                if (length > data.length) data = new byte[length];
+                din.readFully(data, 0, length);
+                crc.reset();
+                crc.update(data, 0, length);
+                if ((int) crc.getValue() != checksum || data[0] >= states.length) break;
+
+                int documentId = ByteBuffer.wrap(data, 1, 4).getInt();
+                String pid = (length > 5) ? new String(data, 5, length - 5, StandardCharsets.UTF_8) : null;
+                apply(states[data[0]], documentId, pid);
+                valid += RECORD_HEADER_LENGTH + length;
+            }
+        } catch (EOFException ignored) {
+            // Torn record at the end of the journal
+        }
+        long size = Files.size(path);
+        if (valid < size) {
+            log.warn(String.format("Discarding %d bytes of incomplete records at the end of %s", size - valid, path));
+        }
+        return valid;
+    }
+
+    private void sync() throws IOException {
+        byte[] records;
+        synchronized (this) {
+            if (buffer.size() == 0) return;
+            records = buffer.toByteArray();
+            buffer.reset();
+        }
+        ByteBuffer b = ByteBuffer.wrap(records);
+        try {
+            synchronized (channel) {
+                while (b.hasRemaining()) {
+                    channel.write(b);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            requeue(records, b.position());
+            throw e;
+        }
+    }
+
+    /**
+     * Puts records that couldn't be written back in front of the records appended meanwhile,
+     * so the next sync retries them in order.
+     */
+    private synchronized void requeue(byte[] records, int written) {
+        ByteArrayOutputStream restored = new ByteArrayOutputStream(records.length - written + buffer.size());
+        restored.write(records, written, records.length - written);
+        restored.write(buffer.toByteArray(), 0, buffer.size());
+        buffer = restored;
+    }
+
+    /**
+     * Set of PIDs, holding the IDs of <code>qucosa:ID</code> PIDs in an {@link Opus4IdSet}.
+     */
+    private static class PidSet {
+        private final Opus4IdSet ids = new Opus4IdSet();
+        private final Set<String> others = new HashSet<>();
+
+        void add(String pid) {
+            int id = parseId(pid);
+            if (id >= 0) ids.add(id);
+            else others.add(pid);
+        }
+
+        boolean contains(String pid) {
+            int id = parseId(pid);
+            return (id >= 0) ? ids.contains(id) : others.contains(pid);
+        }
+
+        int size() {
+            return ids.size() + others.size();
+        }
+
+        private static int parseId(String pid) {
+            if (pid == null || !pid.startsWith(PID_PREFIX)
+                    || pid.length() == PID_PREFIX.length() || pid.length() > PID_PREFIX.length() + 9) {
+                return -1;
+            }
+            for (int i = PID_PREFIX.length(); i < pid.length(); i++) {
+                if (pid.charAt(i) < '0' || pid.charAt(i) > '9') return -1;
+            }
+            // Leading zeros would map different PIDs to the same ID
+            if (pid.charAt(PID_PREFIX.length()) == '0' && pid.length() > PID_PREFIX.length() + 1) return -1;
+            return Integer.parseInt(pid.substring(PID_PREFIX.length()));
+        }
+    }
+
+}
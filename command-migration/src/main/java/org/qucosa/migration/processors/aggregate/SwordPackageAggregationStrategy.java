@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors.aggregate;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.qucosa.camel.component.sword.SwordDeposit;
+import org.qucosa.camel.component.sword.SwordDepositPackage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.qucosa.migration.processors.MigrationJournal.HEADER_DOCUMENT_ID;
+import static org.qucosa.migration.processors.MigrationJournal.HEADER_DOCUMENT_IDS;
+
+/**
+ * Collects {@link SwordDeposit} bodies into a {@link SwordDepositPackage} for the collection
+ * named by the <code>Collection</code> header, which should be the correlation expression.
+ * The Opus document IDs of the deposits are collected in package order.
+ */
+public class SwordPackageAggregationStrategy implements AggregationStrategy {
+
+    private SwordPackageAggregationStrategy() {
+    }
+
+    public static SwordPackageAggregationStrategy aggregateSwordPackage() {
+        return new SwordPackageAggregationStrategy();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        SwordDeposit deposit = newExchange.getIn().getBody(SwordDeposit.class);
+        Integer documentId = newExchange.getIn().getHeader(HEADER_DOCUMENT_ID, Integer.class);
+        if (oldExchange == null) {
+            SwordDepositPackage depositPackage = new SwordDepositPackage(
+                    newExchange.getIn().getHeader("Collection", String.class));
+            depositPackage.add(deposit);
+            newExchange.getIn().setBody(depositPackage);
+            newExchange.getIn().setHeader(HEADER_DOCUMENT_IDS, new ArrayList<>(Collections.singletonList(documentId)));
+            return newExchange;
+        } else {
+            oldExchange.getIn().getBody(SwordDepositPackage.class).add(deposit);
+            oldExchange.getIn().getHeader(HEADER_DOCUMENT_IDS, List.class).add(documentId);
+            return oldExchange;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.migration.routes;
+
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.qucosa.camel.component.opus4.Opus4ResourceID;
+import org.qucosa.migration.processors.AsyncSplitter;
+import org.qucosa.migration.processors.FileReaderProcessor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads Opus documents into an archive file, which can later be used
+ * as document source for staging via <code>opus4:documents?archive=...</code>.
+ */
+public class MirrorRouteBuilder extends RouteBuilder {
+
+    private final String archive;
+    private final int threads;
+
+    public MirrorRouteBuilder(String archive, int threads) {
+        this.archive = archive;
+        this.threads = threads;
+    }
+
+    @Override
+    public void configure() throws Exception {
+        errorHandler(deadLetterChannel("direct:mirror:failed")
+                .maximumRedeliveries(3)
+                .redeliveryDelay(TimeUnit.SECONDS.toMillis(1))
+                .backOffMultiplier(2)
+                .retryAttemptedLogLevel(LoggingLevel.WARN));
+
+        ExecutorService pool = getContext().getExecutorServiceManager()
+                .newFixedThreadPool(this, "mirror", threads);
+        // Keep every thread busy while the next documents are read from the ID file or listing
+        int maxInFlight = 2 * threads;
+
+        from("direct:mirror:failed")
+                .routeId("mirror-failed")
+                .errorHandler(noErrorHandler())
+                .log(LoggingLevel.ERROR, "Failed to mirror ${body}: ${exception}");
+
+        from("direct:mirror:file")
+                .routeId("mirror-file")
+                .log("Mirroring resources listed in ${body}")
+                .process(new FileReaderProcessor("#", true, true))
+                .process(new AsyncSplitter("direct:mirror", maxInFlight));
+
+        from("direct:mirror")
+                .routeId("mirror")
+                .log("Mirroring resource: ${body}")
+                .convertBodyTo(Opus4ResourceID.class)
+                .choice()
+                .when(simple("${body.isDocumentId}")).to("direct:mirror:document")
+                .otherwise()
+                .to("opus4:resources?recursive=true")
+                .process(new AsyncSplitter("direct:mirror:document", maxInFlight));
+
+        from("direct:mirror:document")
+                .routeId("mirror-document")
+                .threads().executorService(pool)
+                .to("opus4:mirror?archive=" + archive);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.routes;
+
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.commons.configuration.Configuration;
+import org.qucosa.migration.processors.AsyncSplitter;
+import org.qucosa.migration.processors.FedoraObjectPurger;
+import org.qucosa.migration.processors.FileReaderProcessor;
+import org.qucosa.migration.processors.MigrationJournal;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.qucosa.migration.processors.MigrationJournal.State.FAILED;
+import static org.qucosa.migration.processors.MigrationJournal.State.PURGED;
+
+/**
+ * Purges the Fedora objects whose PIDs are listed in a file, e.g. before a full re-migration.
+ * Objects are deleted concurrently, up to <code>migration.maxInFlight</code> at a time, and
+ * purged PIDs are recorded in the migration journal, so resumed runs don't purge them again.
+ */
+public class PurgeRouteBuilder extends RouteBuilder {
+
+    private final Configuration config;
+
+    public PurgeRouteBuilder(Configuration configuration) {
+        this.config = configuration;
+    }
+
+    @Override
+    public void configure() throws Exception {
+        final MigrationJournal journal = MigrationJournal.lookup(getContext());
+        final FedoraObjectPurger purger = new FedoraObjectPurger(config, body());
+
+        errorHandler(deadLetterChannel("direct:purge:failed")
+                .maximumRedeliveries(5)
+                .redeliveryDelay(TimeUnit.SECONDS.toMillis(3))
+                .maximumRedeliveryDelay(TimeUnit.SECONDS.toMillis(60))
+                .backOffMultiplier(2)
+                .asyncDelayedRedelivery()
+                .retryAttemptedLogLevel(LoggingLevel.WARN));
+
+        from("direct:purge:failed")
+                .routeId("purge-failed")
+                .errorHandler(noErrorHandler())
+                .process(journal.record(FAILED))
+                .log(LoggingLevel.ERROR, "Failed to purge ${header.PID}: ${exception}");
+
+        from("direct:purge:file")
+                .routeId("purge-file")
+                .log("Purging objects listed in ${body}")
+                .process(new FileReaderProcessor("#", true, true))
+                .process(new AsyncSplitter("direct:purge", config.getInt("migration.maxInFlight", 1000)))
+                .bean(purger, "logThroughput");
+
+        from("direct:purge")
+                .routeId("purge")
+                .setHeader("PID", body())
+                .filter(exchange -> !journal.isPurged(exchange.getIn().getHeader("PID", String.class)))
+                .process(purger)
+                .process(journal.record(PURGED));
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.routes;
+
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.spi.ExecutorServiceManager;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.commons.configuration.Configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool profiles for the stages of the migration routes.
+ * <p>
+ * Each stage hands its exchanges to a pool of its own, so CPU-bound mapping and serialization
+ * don't compete with threads waiting for I/O. Queues are bounded; when a stage's queue is full,
+ * the submitting thread runs the task itself, which slows down the upstream stage instead of
+ * buffering an ever growing backlog.
+ * <p>
+ * Pools are configured with <code>migration.pool.[stage].size</code>, <code>.maxSize</code>
+ * and <code>.queue</code>.
+ */
+public final class StageExecutorProfiles {
+
+    /**
+     * Loading documents from Opus and purging Fedora objects
+     */
+    public static final String FETCH = "fetch";
+    /**
+     * Mapping Opus metadata to MODS and SLUB-INFO
+     */
+    public static final String MAP = "map";
+    /**
+     * Generating METS deposit documents
+     */
+    public static final String SERIALIZE = "serialize";
+    /**
+     * Writing and sending SWORD deposits
+     */
+    public static final String DEPOSIT = "deposit";
+    /**
+     * Writing and sending SWORD updates
+     */
+    public static final String UPDATE = "update";
+
+    public static final List<String> STAGES = Collections.unmodifiableList(
+            Arrays.asList(FETCH, MAP, SERIALIZE, DEPOSIT, UPDATE));
+
+    private StageExecutorProfiles() {
+    }
+
+    public static void register(ExecutorServiceManager manager, Configuration conf) {
+        for (String stage : STAGES) {
+            manager.registerThreadPoolProfile(profile(stage, conf));
+        }
+    }
+
+    static ThreadPoolProfile profile(String stage, Configuration conf) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int defaultSize = FETCH.equals(stage) ? 4 * cores : cores;
+        int defaultQueue = FETCH.equals(stage) ? 1000 : 100;
+
+        String prefix = "migration.pool." + stage;
+        int size = conf.getInt(prefix + ".size", defaultSize);
+        int maxSize = Math.max(size, conf.getInt(prefix + ".maxSize", size));
+        return new ThreadPoolProfileBuilder(stage)
+                .poolSize(size)
+                .maxPoolSize(maxSize)
+                .maxQueueSize(conf.getInt(prefix + ".queue", defaultQueue))
+                .keepAliveTime(60L, TimeUnit.SECONDS)
+                .rejectedPolicy(ThreadPoolRejectedPolicy.CallerRuns)
+                .build();
+    }
+
+}
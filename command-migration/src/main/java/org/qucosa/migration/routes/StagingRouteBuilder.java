@@ -17,6 +17,7 @@
 
 package org.qucosa.migration.routes;
 
+import noNamespace.OpusDocument;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.commons.configuration.Configuration;
@@ -24,18 +25,45 @@ import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.qucosa.camel.component.opus4.Opus4ResourceID;
 import org.qucosa.camel.component.sword.SwordDeposit;
+import org.qucosa.migration.processors.AsyncSplitter;
+import org.qucosa.migration.processors.DatastreamBundle;
 import org.qucosa.migration.processors.DepositMetsGenerator;
+import org.qucosa.migration.processors.FedoraObjectPurger;
+import org.qucosa.migration.processors.FedoraObjectSnapshot;
 import org.qucosa.migration.processors.FileReaderProcessor;
-import org.qucosa.migration.processors.PurgeFedoraObject;
+import org.qucosa.migration.processors.MappingProcessor;
+import org.qucosa.migration.processors.MigrationJournal;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static org.qucosa.migration.processors.MappingProcessor.PROPERTY_INSTITUTION_NAME_MAPPING;
+import static org.qucosa.migration.processors.MigrationJournal.HEADER_DOCUMENT_ID;
+import static org.qucosa.migration.processors.MigrationJournal.State.DEPOSITED;
+import static org.qucosa.migration.processors.MigrationJournal.State.FAILED;
+import static org.qucosa.migration.processors.MigrationJournal.State.FETCHED;
+import static org.qucosa.migration.processors.aggregate.SwordPackageAggregationStrategy.aggregateSwordPackage;
+import static org.qucosa.migration.routes.StageExecutorProfiles.DEPOSIT;
+import static org.qucosa.migration.routes.StageExecutorProfiles.FETCH;
+import static org.qucosa.migration.routes.StageExecutorProfiles.MAP;
+import static org.qucosa.migration.routes.StageExecutorProfiles.SERIALIZE;
+
 public class StagingRouteBuilder extends RouteBuilder {
 
+    public static final String DEPOSIT_AGGREGATOR = "deposit-aggregator";
+    private static final String PROPERTY_UNBATCHED = "MigrationUnbatched";
+
     private final Configuration config;
+    private final Map<String, String> institutionNameMap;
 
     public StagingRouteBuilder(Configuration configuration) {
+        this(configuration, Collections.<String, String>emptyMap());
+    }
+
+    public StagingRouteBuilder(Configuration configuration, Map<String, String> institutionNameMap) {
         this.config = configuration;
+        this.institutionNameMap = institutionNameMap;
     }
 
     static public String extractPID(HttpResponse httpResponse) throws Exception {
@@ -49,6 +77,15 @@ public class StagingRouteBuilder extends RouteBuilder {
 
     @Override
     public void configure() throws Exception {
+        final int maxInFlight = config.getInt("migration.maxInFlight", 1000);
+        final int batchSize = config.getInt("sword.batchSize", 1);
+        final MigrationJournal journal = MigrationJournal.lookup(getContext());
+        final String existing = config.getString("staging.existing", null);
+        final FedoraObjectSnapshot snapshot = (existing != null) ? new FedoraObjectSnapshot(config) : null;
+        if (snapshot != null) {
+            getContext().addService(snapshot);
+        }
+
         errorHandler(deadLetterChannel("direct:dead")
                 .maximumRedeliveries(5)
                 .redeliveryDelay(TimeUnit.SECONDS.toMillis(3))
@@ -60,6 +97,7 @@ public class StagingRouteBuilder extends RouteBuilder {
         from("direct:dead")
                 .routeId("Failed")
                 .errorHandler(noErrorHandler())
+                .process(journal.record(FAILED))
                 .log(LoggingLevel.ERROR, "${body}")
                 .setBody(simple("${body} ${exception}"))
                 .to("file://target/output");
@@ -67,10 +105,33 @@ public class StagingRouteBuilder extends RouteBuilder {
         from("direct:staging:file")
                 .routeId("staging-file")
                 .log("Staging resources listed in ${body}")
-                .process(new FileReaderProcessor("#"))
-                .log("Found ${body.size} elements")
-                .split(body()).parallelProcessing()
-                .to("direct:staging");
+                .process(new FileReaderProcessor("#", true, true))
+                .process(new AsyncSplitter("direct:staging", maxInFlight));
+
+        from("direct:staging:urnfile")
+                .routeId("staging-urn-file")
+                .log("Staging documents with URNs listed in ${body}")
+                .process(new FileReaderProcessor("#", false, false))
+                .to("opus4:urns")
+                .log("Resolved ${body.size} documents")
+                .process(new AsyncSplitter("direct:staging:document", maxInFlight));
+
+        if (config.containsKey("staging.changes.hwmFile")) {
+            String changesUri = "opus4:changes"
+                    + "?hwmFile=" + config.getString("staging.changes.hwmFile")
+                    + "&delay=" + config.getLong("staging.changes.delay", 60000);
+            if (config.containsKey("staging.changes.since")) {
+                changesUri += "&since=" + config.getString("staging.changes.since");
+            }
+
+            // Changes are deposited one by one: the consumer advances its high-water mark once the
+            // exchange completes, which a package aggregator would do before the package is deposited
+            from(changesUri)
+                    .routeId("staging-changes")
+                    .log("Staging changed resource: ${body}")
+                    .setProperty(PROPERTY_UNBATCHED, constant(true))
+                    .to("direct:staging:document");
+        }
 
         from("direct:staging")
                 .routeId("staging")
@@ -82,22 +143,41 @@ public class StagingRouteBuilder extends RouteBuilder {
 
         from("direct:staging:tenant")
                 .routeId("stage-tenant")
-                .log("Processing elements of tenant resource: ${body}")
+                .log("Processing documents of tenant resource: ${body}")
                 .convertBodyTo(Opus4ResourceID.class)
-                .to("opus4:resources")
-                .log("Found ${body.size} elements")
-                .split(body()).parallelProcessing()
-                .to("direct:staging:document");
+                .to("opus4:resources?recursive=true")
+                .process(new AsyncSplitter("direct:staging:document", maxInFlight));
 
         from("direct:staging:document")
                 .routeId("stage-document")
-                .threads()
+                .threads().executorServiceRef(FETCH)
                 .convertBodyTo(Opus4ResourceID.class)
+                .setHeader(HEADER_DOCUMENT_ID, simple("${body.documentId}"))
+
+                .choice()
+                .when(exchange -> journal.isDeposited(exchange.getIn().getHeader(HEADER_DOCUMENT_ID, Integer.class)))
+                .log("Document ${body.identifier} has been deposited before")
+                .to("direct:staging:resumed")
+                .stop()
+                .end()
+
+                .choice()
+                .when(exchange -> "skip".equals(existing) && snapshot.contains(
+                        exchange.getIn().getHeader(HEADER_DOCUMENT_ID, Integer.class)))
+                .setHeader("PID", simple("qucosa:${body.identifier}"))
+                .log("Skipping ${header.PID}, it exists already")
+                .to("direct:staging:existing")
+                .stop()
+                .when(exchange -> "update".equals(existing) && snapshot.contains(
+                        exchange.getIn().getHeader(HEADER_DOCUMENT_ID, Integer.class)))
+                .setHeader("PID", simple("qucosa:${body.identifier}"))
+                .log("Updating ${header.PID}, it exists already")
+                .end()
 
                 .choice()
                 .when(constant(config.getBoolean("sword.purge")))
                 .log("Purging Fedora object qucosa:${body.identifier}")
-                .process(new PurgeFedoraObject(config))
+                .process(new FedoraObjectPurger(config, simple("qucosa:${body.identifier}")))
                 .end()
 
                 .choice()
@@ -105,25 +185,88 @@ public class StagingRouteBuilder extends RouteBuilder {
                 .setHeader("Slug", simple("qucosa:${body.identifier}"))
                 .end()
 
-                .to("opus4:documents")
+                .to(config.containsKey("staging.archive")
+                        ? "opus4:documents?archive=" + config.getString("staging.archive")
+                        : "opus4:documents")
+                .process(journal.record(FETCHED))
                 .setHeader("Qucosa-File-Url", constant(config.getString("qucosa.file.url")))
+                .to(config.getBoolean("staging.onePass", false) ? "direct:staging:map" : "direct:staging:mets");
 
-                .bean(DepositMetsGenerator.class)
+        // One-pass mode: MODS and SLUB-INFO are mapped from the document before it is deposited,
+        // so no transformation has to read them back from Fedora and update them
+        from("direct:staging:map")
+                .routeId("stage-map")
+                .threads().executorServiceRef(MAP)
+                .process(exchange -> exchange.getIn().setBody(
+                        DatastreamBundle.newDocument(exchange.getIn().getBody(OpusDocument.class))))
+                .setProperty(PROPERTY_INSTITUTION_NAME_MAPPING, constant(institutionNameMap))
+                .process(new MappingProcessor())
+                .to("direct:staging:mets");
 
+        from("direct:staging:mets")
+                .routeId("stage-mets")
+                .threads().executorServiceRef(SERIALIZE)
+                .bean(DepositMetsGenerator.class)
                 .to("direct:deposit");
 
         from("direct:deposit")
                 .routeId("deposit-route")
+                .threads().executorServiceRef(DEPOSIT)
                 .setHeader("X-No-Op", constant(config.getBoolean("sword.noop")))
                 .setHeader("X-On-Behalf-Of", constant(config.getString("sword.ownerID", null)))
                 .setHeader("Content-Type", constant("application/vnd.qucosa.mets+xml"))
                 .setHeader("Collection", constant(config.getString("sword.collection")))
                 .convertBodyTo(SwordDeposit.class)
+                .choice()
+                .when(header("PID").isNotNull()).to("direct:deposit:update")
+                .when(exchangeProperty(PROPERTY_UNBATCHED).isEqualTo(true)).to("direct:deposit:single")
+                .otherwise().to(batchSize > 1 ? "direct:deposit:package" : "direct:deposit:single");
+
+        // Documents deposited by an earlier run may still need a transformation
+        from("direct:staging:resumed")
+                .routeId("staging-resumed")
+                .filter(constant(config.getBoolean("transforming")))
+                .setBody(method(journal, "getPid(${header." + HEADER_DOCUMENT_ID + "})"))
+                .filter(body().isNotNull())
+                .to("direct:transform");
+
+        // Documents found in the Fedora snapshot are recorded as deposited without a request
+        from("direct:staging:existing")
+                .routeId("staging-existing")
+                .setBody(header("PID"))
+                .process(journal.record(DEPOSITED))
+                .filter(constant(config.getBoolean("transforming")))
+                .to("direct:transform");
+
+        from("direct:deposit:update")
+                .routeId("deposit-update")
+                .to("sword:update")
+                .setBody(header("PID"))
+                .process(journal.record(DEPOSITED))
+                .choice().when(constant(config.getBoolean("transforming")))
+                .to("direct:transform");
+
+        from("direct:deposit:single")
+                .routeId("deposit-single")
                 .to("sword:deposit")
-                .throttle(5).asyncDelayed()
+                .process(journal.record(DEPOSITED))
                 .choice().when(constant(config.getBoolean("transforming")))
                 .transform(method(StagingRouteBuilder.class, "extractPID"))
                 .to("direct:transform");
+
+        // Deposits are packaged per collection and the receipt lists the PIDs in package order
+        from("direct:deposit:package")
+                .routeId("deposit-package")
+                .aggregate(header("Collection"), aggregateSwordPackage())
+                .completionSize(batchSize)
+                .completionTimeout(config.getLong("sword.batchTimeout", 5000))
+                .forceCompletionOnStop()
+                .id(DEPOSIT_AGGREGATOR)
+                .log("Depositing package of ${body.size} documents")
+                .to("sword:deposit")
+                .process(journal.record(DEPOSITED))
+                .choice().when(constant(config.getBoolean("transforming")))
+                .process(new AsyncSplitter("direct:transform", maxInFlight));
     }
 
 }
@@ -17,28 +17,32 @@
 
 package org.qucosa.migration.routes;
 
-import de.slubDresden.InfoDocument;
-import gov.loc.mods.v3.ModsDocument;
-import noNamespace.OpusDocument;
-import org.apache.camel.Exchange;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.builder.ValueBuilder;
 import org.apache.camel.component.http.BasicAuthenticationHttpClientConfigurer;
 import org.apache.camel.component.http.HttpEndpoint;
 import org.apache.camel.http.common.HttpOperationFailedException;
+import org.apache.camel.model.ProcessorDefinition;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.qucosa.camel.component.sword.SwordDeposit;
+import org.qucosa.migration.processors.AsyncSplitter;
+import org.qucosa.migration.processors.DatastreamHashFilter;
 import org.qucosa.migration.processors.DepositMetsGenerator;
+import org.qucosa.migration.processors.FedoraObjectReader;
 import org.qucosa.migration.processors.FileReaderProcessor;
 import org.qucosa.migration.processors.MappingProcessor;
+import org.qucosa.migration.processors.MigrationJournal;
 
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static org.qucosa.migration.processors.MappingProcessor.PROPERTY_INSTITUTION_NAME_MAPPING;
-import static org.qucosa.migration.processors.aggregate.HashMapAggregationStrategy.aggregateHashBy;
+import static org.qucosa.migration.processors.MigrationJournal.State.TRANSFORMED;
+import static org.qucosa.migration.routes.StageExecutorProfiles.MAP;
+import static org.qucosa.migration.routes.StageExecutorProfiles.SERIALIZE;
+import static org.qucosa.migration.routes.StageExecutorProfiles.UPDATE;
 
 public class TransformationRouteBuilder extends RouteBuilder {
 
@@ -52,104 +56,53 @@ public class TransformationRouteBuilder extends RouteBuilder {
 
     @Override
     public void configure() throws Exception {
-        final String fedoraUri = getConfigValueOrThrowException("fedora.url");
-
-        configureHttpBasicAuth(
-                fedoraUri,
-                getConfigValueOrThrowException("fedora.user"),
-                getConfigValueOrThrowException("fedora.password"));
+        final FedoraObjectReader objectReader = new FedoraObjectReader(configuration);
+        final MigrationJournal journal = MigrationJournal.lookup(getContext());
+        final DatastreamHashFilter hashFilter = configuration.containsKey("transformation.hashStore")
+                ? new DatastreamHashFilter(Paths.get(configuration.getString("transformation.hashStore")))
+                : null;
 
         configureHttpBasicAuth(
                 getConfigValueOrThrowException("sword.url"),
                 getConfigValueOrThrowException("sword.user"),
                 getConfigValueOrThrowException("sword.password"));
 
-        ValueBuilder discardExistingDatastreams =
-                constant(configuration.getBoolean("transformation.discardExisting"));
-
         from("direct:transform:file")
                 .routeId("transform-file")
                 .log("Transforming resources listed in ${body}")
-                .process(new FileReaderProcessor("#"))
-                .log("Found ${body.size} elements")
-                .split(body()).parallelProcessing()
-                .to("direct:transform");
+                .process(new FileReaderProcessor("#", true, true))
+                .process(new AsyncSplitter("direct:transform",
+                        configuration.getInt("migration.maxInFlight", 1000)));
 
-        from("direct:transform")
+        // All datastreams of an object are read with a single request, documents are read
+        // concurrently by the splitter
+        ProcessorDefinition<?> transform = from("direct:transform")
                 .routeId("transform")
-                .multicast(aggregateHashBy(header("DSID")))
-                .parallelProcessing()
-                .stopOnException()
-                .to("direct:ds:qucosaxml", "direct:ds:mods", "direct:ds:slubxml")
-                .end()
-                .threads()
-                .setProperty(PROPERTY_INSTITUTION_NAME_MAPPING, constant(institutionNameMap))
-                .process(new MappingProcessor())
-                .to("direct:ds:update");
-
-        final String datastreamPath = "/objects/${header[PID]}/datastreams/${header[DSID]}";
-
-        from("direct:ds:qucosaxml")
-                .routeId("get-qucosaxml")
+                .filter(exchange -> !journal.isTransformed(exchange.getIn().getBody(String.class)))
                 .setHeader("PID", body())
-                .setHeader("DSID", constant("QUCOSA-XML"))
                 .doTry()
-                .setHeader(Exchange.HTTP_METHOD, constant("GET"))
-                .setHeader(Exchange.HTTP_PATH, simple(datastreamPath + "/content"))
-                .setBody(constant(""))
-                .to(fedoraUri)
-                .convertBodyTo(String.class)
-                .bean(OpusDocument.Factory.class, "parse(${body})")
+                    .process(objectReader)
                 .doCatch(HttpOperationFailedException.class)
-                .onWhen(simple("${exception.statusCode} == 404"))
-                .log("${header.PID} has no ${header.DSID} datastream for migration")
-                .stop();
-
-        final ModsDocument modsDocumentTemplate = ModsDocument.Factory.newInstance();
-        modsDocumentTemplate.addNewMods();
-
-        final InfoDocument infoDocumentTemplate = InfoDocument.Factory.newInstance();
-        infoDocumentTemplate.addNewInfo();
-
-        from("direct:ds:template")
-                .choice()
-                .when(simple("${header.DSID} == 'MODS'")).setBody(constant(modsDocumentTemplate))
-                .when(simple("${header.DSID} == 'SLUB-INFO'")).setBody(constant(infoDocumentTemplate));
-
-        from("direct:ds:mods")
-                .routeId("get-mods")
-                .setHeader("PID", body())
-                .setHeader("DSID", constant("MODS"))
-                .choice()
-                    .when(discardExistingDatastreams).to("direct:ds:template")
-                    .otherwise().to("direct:tryget:datastream")
+                    .onWhen(simple("${exception.statusCode} == 404"))
+                    .log("${header.PID} not found")
+                    .stop()
                 .end()
-                .convertBodyTo(String.class)
-                .bean(ModsDocument.Factory.class, "parse(${body})");
-
-        from("direct:ds:slubxml")
-                .routeId("get-slubxml")
-                .setHeader("PID", body())
-                .setHeader("DSID", constant("SLUB-INFO"))
                 .choice()
-                    .when(discardExistingDatastreams).to("direct:ds:template")
-                    .otherwise().to("direct:tryget:datastream")
+                    .when(simple("${body.qucosaXml} == null"))
+                        .log("${header.PID} has no QUCOSA-XML datastream for migration")
+                        .stop()
                 .end()
-                .convertBodyTo(String.class)
-                .bean(InfoDocument.Factory.class, "parse(${body})");
-
-        from("direct:tryget:datastream")
-                .doTry()
-                .setHeader(Exchange.HTTP_METHOD, constant("GET"))
-                .setHeader(Exchange.HTTP_PATH, simple(datastreamPath + "/content"))
-                .setBody(constant(""))
-                .to(fedoraUri)
-                .doCatch(HttpOperationFailedException.class)
-                .onWhen(simple("${exception.statusCode} == 404"))
-                .to("direct:ds:template");
+                .threads().executorServiceRef(MAP)
+                .setProperty(PROPERTY_INSTITUTION_NAME_MAPPING, constant(institutionNameMap))
+                .process(new MappingProcessor());
+        if (hashFilter != null) {
+            transform.process(hashFilter);
+        }
+        transform.to("direct:ds:update");
 
         from("direct:ds:update")
                 .routeId("update")
+                .threads().executorServiceRef(SERIALIZE)
                 .bean(DepositMetsGenerator.class)
                 .choice()
                     .when(body().isNotNull())
@@ -159,10 +112,11 @@ public class TransformationRouteBuilder extends RouteBuilder {
                         .convertBodyTo(SwordDeposit.class)
                         .to("direct:sword:update")
                     .otherwise()
+                        .process(journal.record(TRANSFORMED))
                         .stop()
                 .end();
 
-        from("direct:sword:update")
+        ProcessorDefinition<?> update = from("direct:sword:update")
                 .routeId("sword-update")
                 .log("Updating ${header[PID]}")
                 .errorHandler(deadLetterChannel("direct:dead")
@@ -174,8 +128,13 @@ public class TransformationRouteBuilder extends RouteBuilder {
                         .retryAttemptedLogLevel(LoggingLevel.WARN))
                 .setHeader("X-No-Op", constant(configuration.getBoolean("sword.noop")))
                 .setHeader("X-On-Behalf-Of", constant(configuration.getString("sword.ownerID", null)))
-                .threads().throttle(5).asyncDelayed()
-                .to("sword:update");
+                // Concurrency is limited adaptively by the SWORD connection
+                .threads().executorServiceRef(UPDATE)
+                .to("sword:update")
+                .process(journal.record(TRANSFORMED));
+        if (hashFilter != null) {
+            update.process(hashFilter.commit());
+        }
     }
 
     private void configureHttpBasicAuth(String uri, String user, String password) {
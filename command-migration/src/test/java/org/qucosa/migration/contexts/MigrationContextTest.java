@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.qucosa.migration.contexts;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.processor.aggregate.GroupedExchangeAggregationStrategy;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class MigrationContextTest extends CamelTestSupport {
+
+    private final List<Integer> packages = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:deposit")
+                        .aggregate(constant(true), new GroupedExchangeAggregationStrategy())
+                        .completionSize(10)
+                        .completionTimeout(60000)
+                        .id("aggregator")
+                        .delay(100)
+                        .process(exchange -> packages.add(exchange.getProperty(
+                                Exchange.GROUPED_EXCHANGE, List.class).size()));
+            }
+        };
+    }
+
+    @Test
+    public void Completes_partial_package_before_returning() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            template.sendBody("direct:deposit", i);
+        }
+        assertTrue(packages.isEmpty());
+
+        MigrationContext.awaitCompletion(context, "aggregator");
+
+        assertEquals(1, packages.size());
+        assertEquals(3, (int) packages.get(0));
+    }
+
+    @Test
+    public void Returns_right_away_without_aggregator() throws Exception {
+        MigrationContext.awaitCompletion(context, "missing");
+        assertTrue(packages.isEmpty());
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.contexts;
+
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadPoolFactoryTest {
+
+    @Test
+    public void permitsLimitConcurrentTasks() throws Exception {
+        ExecutorService executor = new VirtualThreadPoolFactory.PermitExecutorService(
+                Executors.newCachedThreadPool(), new Semaphore(2));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, peak.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsTasksBeyondCapacityInCaller() throws Exception {
+        ExecutorService executor = new VirtualThreadPoolFactory.BoundedExecutorService(
+                Executors.newCachedThreadPool(), 1, ThreadPoolRejectedPolicy.CallerRuns);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.execute(() -> runner.set(Thread.currentThread()));
+        assertSame(caller, runner.get());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void abortsTasksBeyondCapacity() throws Exception {
+        ExecutorService executor = new VirtualThreadPoolFactory.BoundedExecutorService(
+                Executors.newCachedThreadPool(), 1, ThreadPoolRejectedPolicy.Abort);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            executor.execute(() -> {
+            });
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void refusesToStartWithoutVirtualThreads() {
+        assumeFalse(VirtualThreadPoolFactory.isAvailable());
+        new VirtualThreadPoolFactory(Collections.<String>emptyList(), 1);
+    }
+
+    @Test
+    public void runsTasksOnVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreadPoolFactory.isAvailable());
+        VirtualThreadPoolFactory factory = new VirtualThreadPoolFactory(Collections.singletonList("map"), 1);
+        ExecutorService executor = factory.newThreadPool(new ThreadPoolProfileBuilder("map").build(), null);
+        try {
+            assertTrue(executor.submit(() -> (Boolean) Thread.class.getMethod("isVirtual")
+                    .invoke(Thread.currentThread())).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncSplitterTest extends CamelTestSupport {
+
+    private final Set<Object> received = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutDownTimer() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:split").process(new AsyncSplitter("direct:element", 8));
+                from("direct:split:one").process(new AsyncSplitter("direct:element", 1));
+                from("direct:element").process(new DelayedProcessor());
+            }
+        };
+    }
+
+    @Test
+    public void Sends_every_element() throws Exception {
+        List<Integer> elements = elements(100);
+
+        template.sendBody("direct:split", elements);
+
+        assertEquals(100, received.size());
+        assertTrue(received.containsAll(elements));
+    }
+
+    @Test
+    public void Limits_elements_in_flight() throws Exception {
+        template.sendBody("direct:split", elements(100));
+
+        assertTrue("Expected concurrent elements, got " + peakInFlight.get(), peakInFlight.get() > 1);
+        assertTrue("Expected at most 8 elements in flight, got " + peakInFlight.get(), peakInFlight.get() <= 8);
+        assertEquals(0, inFlight.get());
+    }
+
+    @Test
+    public void Sends_elements_one_by_one_with_window_of_one() throws Exception {
+        template.sendBody("direct:split:one", elements(10));
+
+        assertEquals(1, peakInFlight.get());
+        assertEquals(10, received.size());
+    }
+
+    @Test
+    public void Failed_element_fails_exchange_after_all_elements() throws Exception {
+        List<Object> elements = new ArrayList<>(elements(20));
+        elements.set(5, "fail");
+
+        Exchange result = template.send("direct:split", exchange -> exchange.getIn().setBody(elements));
+
+        assertNotNull(result.getException());
+        assertEquals(20, received.size());
+    }
+
+    @Test
+    public void Empty_body_completes_immediately() throws Exception {
+        Exchange result = template.send("direct:split", exchange -> exchange.getIn().setBody(Collections.emptyList()));
+
+        assertNull(result.getException());
+        assertEquals(0, received.size());
+    }
+
+    private static List<Integer> elements(int n) {
+        List<Integer> elements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) elements.add(i);
+        return elements;
+    }
+
+    private class DelayedProcessor implements AsyncProcessor {
+
+        @Override
+        public void process(Exchange exchange) throws Exception {
+            AsyncProcessorHelper.process(this, exchange);
+        }
+
+        @Override
+        public boolean process(Exchange exchange, AsyncCallback callback) {
+            int n = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(n, Math::max);
+            timer.schedule(() -> {
+                Object body = exchange.getIn().getBody();
+                received.add(body);
+                if ("fail".equals(body)) {
+                    exchange.setException(new Exception("Failed element"));
+                }
+                inFlight.decrementAndGet();
+                callback.done(false);
+            }, 5, TimeUnit.MILLISECONDS);
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import de.slubDresden.InfoDocument;
+import gov.loc.mods.v3.ModsDocument;
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qucosa.migration.mappings.ChangeLog;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DatastreamHashFilterTest extends CamelTestSupport {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path path;
+    private DatastreamHashFilter subject;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        path = tempFolder.getRoot().toPath().resolve("hashes");
+        subject = new DatastreamHashFilter(path);
+        subject.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        subject.stop();
+        super.tearDown();
+    }
+
+    @Test
+    public void Unchanged_content_is_skipped_after_successful_update() throws Exception {
+        update(exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'><mods:note>A</mods:note></mods:mods>"));
+
+        Exchange exchange = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'><mods:note>A</mods:note></mods:mods>");
+        subject.process(exchange);
+
+        ChangeLog changeLog = exchange.getProperty("CHANGELOG", ChangeLog.class);
+        assertFalse(changeLog.hasModsChanges());
+        assertTrue(changeLog.hasSlubInfoChanges());
+        assertEquals(0.25, subject.getSkipRate(), 0.001);
+    }
+
+    @Test
+    public void Changed_content_is_not_skipped() throws Exception {
+        update(exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'><mods:note>A</mods:note></mods:mods>"));
+
+        Exchange exchange = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'><mods:note>B</mods:note></mods:mods>");
+        subject.process(exchange);
+
+        assertTrue(exchange.getProperty("CHANGELOG", ChangeLog.class).hasModsChanges());
+    }
+
+    @Test
+    public void Content_is_not_skipped_without_successful_update() throws Exception {
+        subject.process(exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>"));
+
+        Exchange exchange = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>");
+        subject.process(exchange);
+
+        assertTrue(exchange.getProperty("CHANGELOG", ChangeLog.class).hasModsChanges());
+    }
+
+    @Test
+    public void No_op_updates_are_not_stored() throws Exception {
+        Exchange noop = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>");
+        noop.getIn().setHeader("X-No-Op", true);
+        update(noop);
+
+        Exchange exchange = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>");
+        subject.process(exchange);
+
+        assertTrue(exchange.getProperty("CHANGELOG", ChangeLog.class).hasModsChanges());
+    }
+
+    @Test
+    public void Hashes_persist_across_restarts() throws Exception {
+        update(exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>"));
+        subject.stop();
+        subject = new DatastreamHashFilter(path);
+        subject.start();
+
+        Exchange exchange = exchange("<mods:mods xmlns:mods='http://www.loc.gov/mods/v3'/>");
+        subject.process(exchange);
+
+        assertFalse(exchange.getProperty("CHANGELOG", ChangeLog.class).hasModsChanges());
+    }
+
+    private void update(Exchange exchange) throws Exception {
+        subject.process(exchange);
+        subject.commit().process(exchange);
+    }
+
+    private Exchange exchange(String mods) throws Exception {
+        Map<String, Object> m = new HashMap<>();
+        m.put("MODS", ModsDocument.Factory.parse(mods));
+        m.put("SLUB-INFO", InfoDocument.Factory.parse(
+                "<slub:info xmlns:slub='http://slub-dresden.de/'><slub:documentType>"
+                        + System.nanoTime() + "</slub:documentType></slub:info>"));
+        ChangeLog changeLog = new ChangeLog();
+        changeLog.log(ChangeLog.Type.MODS);
+        changeLog.log(ChangeLog.Type.SLUB_INFO);
+
+        Exchange exchange = createExchangeWithBody(m);
+        exchange.getIn().setHeader("PID", "qucosa:4711");
+        exchange.setProperty("CHANGELOG", changeLog);
+        return exchange;
+    }
+
+}
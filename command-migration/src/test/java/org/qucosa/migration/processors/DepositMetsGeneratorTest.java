@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import gov.loc.mets.MdSecType;
+import gov.loc.mets.MetsDocument;
+import gov.loc.mods.v3.ModsDocument;
+import noNamespace.OpusDocument;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DepositMetsGeneratorTest {
+
+    private Exchange exchange;
+    private OpusDocument opusDocument;
+
+    @Before
+    public void setup() throws Exception {
+        opusDocument = OpusDocument.Factory.parse(getClass().getClassLoader().getResourceAsStream("opus_394.xml"));
+        exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("Qucosa-File-Url", "http://localhost/files");
+    }
+
+    @Test
+    public void depositOfMappedDocumentContainsAllDatastreams() throws Exception {
+        exchange.getIn().setBody(DatastreamBundle.newDocument(opusDocument));
+        new MappingProcessor().process(exchange);
+
+        new DepositMetsGenerator().process(exchange);
+
+        MetsDocument.Mets mets = exchange.getIn().getBody(MetsDocument.class).getMets();
+        Map<String, MdSecType> dmdSections = dmdSections(mets);
+        assertTrue(dmdSections.containsKey("QUCOSA_XML"));
+        ModsDocument mods = (ModsDocument) ModsDocument.Factory.parse(
+                dmdSections.get("MODS_XML").getMdWrap().getXmlData().getDomNode().getFirstChild());
+        assertTrue(mods.getMods().getTitleInfoArray().length > 0);
+        assertTrue(mods.getMods().getOriginInfoArray().length > 0);
+        assertEquals("AMD_SLUB-INFO", mets.getAmdSecArray(0).getID());
+    }
+
+    @Test
+    public void depositOfUnmappedDocumentContainsBasicMods() throws Exception {
+        exchange.getIn().setBody(opusDocument);
+
+        new DepositMetsGenerator().process(exchange);
+
+        MetsDocument.Mets mets = exchange.getIn().getBody(MetsDocument.class).getMets();
+        Map<String, MdSecType> dmdSections = dmdSections(mets);
+        assertTrue(dmdSections.containsKey("QUCOSA_XML"));
+        assertTrue(dmdSections.containsKey("MODS_XML"));
+        assertEquals(0, mets.getAmdSecArray().length);
+    }
+
+    @Test
+    public void updateOfExistingDocumentContainsOnlyQucosaXml() throws Exception {
+        exchange.getIn().setHeader("PID", "qucosa:394");
+        exchange.getIn().setBody(opusDocument);
+
+        new DepositMetsGenerator().process(exchange);
+
+        MetsDocument.Mets mets = exchange.getIn().getBody(MetsDocument.class).getMets();
+        Map<String, MdSecType> dmdSections = dmdSections(mets);
+        assertEquals(1, dmdSections.size());
+        assertTrue(dmdSections.containsKey("QUCOSA_XML"));
+        assertNull(mets.getFileSec());
+        assertEquals(0, mets.getAmdSecArray().length);
+    }
+
+    private static Map<String, MdSecType> dmdSections(MetsDocument.Mets mets) {
+        Map<String, MdSecType> sections = new HashMap<>();
+        for (MdSecType section : mets.getDmdSecArray()) {
+            sections.put(section.getID(), section);
+        }
+        return sections;
+    }
+
+}
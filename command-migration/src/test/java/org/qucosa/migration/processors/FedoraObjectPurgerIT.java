@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.common.HttpOperationFailedException;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.camel.builder.ExpressionBuilder.bodyExpression;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FedoraObjectPurgerIT {
+
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private BaseConfiguration config;
+    private FedoraObjectPurger purger;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fedora/objects", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            String pid = exchange.getRequestURI().getPath().substring("/fedora/objects/".length());
+            if (!"DELETE".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+            } else if (pid.equals("qucosa:500")) {
+                exchange.sendResponseHeaders(500, -1);
+            } else if (pid.equals("qucosa:404") || !deleted.add(pid)) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                // Fedora takes a moment to purge, so concurrent deletes overlap
+                sleep(10);
+                // Fedora answers with the purge date
+                byte[] body = "2016-01-01T00:00:00.000Z".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            inFlight.decrementAndGet();
+            exchange.close();
+        });
+        server.start();
+
+        config = new BaseConfiguration();
+        config.setProperty("fedora.url", "http://localhost:" + server.getAddress().getPort() + "/fedora");
+        config.setProperty("fedora.user", "user");
+        config.setProperty("fedora.password", "secret");
+        config.setProperty("fedora.concurrency.initial", 8);
+        config.setProperty("fedora.concurrency.min", 8);
+        config.setProperty("fedora.concurrency.max", 8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (purger != null) purger.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void purgesObjectsConcurrently() throws Exception {
+        start();
+        Exchange[] exchanges = purge(200);
+
+        assertEquals(200, deleted.size());
+        assertTrue(maxInFlight.get() > 1);
+        assertTrue(maxInFlight.get() <= 8);
+        for (Exchange exchange : exchanges) {
+            assertNull(exchange.getException());
+        }
+    }
+
+    @Test
+    public void missingObjectsCountAsPurged() throws Exception {
+        start();
+        assertNull(purge("qucosa:404").getException());
+        assertNull(purge("qucosa:1").getException());
+        assertNull(purge("qucosa:1").getException());
+    }
+
+    @Test
+    public void failsOnErrorResponse() throws Exception {
+        start();
+        Exchange exchange = purge("qucosa:500");
+
+        assertTrue(exchange.getException() instanceof HttpOperationFailedException);
+        assertEquals(500, ((HttpOperationFailedException) exchange.getException()).getStatusCode());
+    }
+
+    @Test
+    public void limitsPurgeRate() throws Exception {
+        config.setProperty("fedora.purge.rate", 50);
+        start();
+
+        long start = System.nanoTime();
+        purge(20);
+
+        assertEquals(20, deleted.size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 350);
+    }
+
+    @Test
+    public void failsQueuedPurgesOnStop() throws Exception {
+        config.setProperty("fedora.purge.rate", 1);
+        start();
+
+        Exchange[] exchanges = new Exchange[3];
+        CountDownLatch done = new CountDownLatch(exchanges.length);
+        for (int i = 0; i < exchanges.length; i++) {
+            exchanges[i] = new DefaultExchange(new DefaultCamelContext());
+            exchanges[i].getIn().setBody("qucosa:" + (1000 + i));
+            purger.process(exchanges[i], doneSync -> done.countDown());
+        }
+        purger.stop();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(exchanges[2].getException() instanceof RejectedExecutionException);
+        assertFalse(deleted.contains("qucosa:1002"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start() throws Exception {
+        purger = new FedoraObjectPurger(config, bodyExpression());
+        purger.start();
+    }
+
+    private Exchange purge(String pid) throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(pid);
+        purger.process(exchange);
+        return exchange;
+    }
+
+    private Exchange[] purge(int count) throws InterruptedException {
+        Exchange[] exchanges = new Exchange[count];
+        CountDownLatch done = new CountDownLatch(count);
+        DefaultCamelContext context = new DefaultCamelContext();
+        for (int i = 0; i < count; i++) {
+            exchanges[i] = new DefaultExchange(context);
+            exchanges[i].getIn().setBody("qucosa:" + (1000 + i));
+            purger.process(exchanges[i], doneSync -> done.countDown());
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return exchanges;
+    }
+
+}
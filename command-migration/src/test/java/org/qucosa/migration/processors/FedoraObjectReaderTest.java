@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import gov.loc.mods.v3.ModsDocument;
+import noNamespace.OpusDocument;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FedoraObjectReaderTest {
+
+    private static final String FOXML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<foxml:digitalObject VERSION=\"1.1\" PID=\"qucosa:1\"" +
+            " xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\" xmlns:mods=\"http://www.loc.gov/mods/v3\">" +
+            "<foxml:datastream ID=\"MODS\" STATE=\"A\" CONTROL_GROUP=\"X\" VERSIONABLE=\"true\">" +
+            "<foxml:datastreamVersion ID=\"MODS.1\" CREATED=\"2016-02-01T10:00:00.000Z\">" +
+            "<foxml:xmlContent><mods:mods><mods:genre>current</mods:genre></mods:mods></foxml:xmlContent>" +
+            "</foxml:datastreamVersion>" +
+            "<foxml:datastreamVersion ID=\"MODS.0\" CREATED=\"2015-01-01T10:00:00.000Z\">" +
+            "<foxml:xmlContent><mods:mods><mods:genre>outdated</mods:genre></mods:mods></foxml:xmlContent>" +
+            "</foxml:datastreamVersion>" +
+            "</foxml:datastream>" +
+            "<foxml:datastream ID=\"QUCOSA-XML\" STATE=\"A\" CONTROL_GROUP=\"X\" VERSIONABLE=\"true\">" +
+            "<foxml:datastreamVersion ID=\"QUCOSA-XML.0\" CREATED=\"2015-01-01T10:00:00.000Z\">" +
+            "<foxml:xmlContent><Opus version=\"2.0\"><Opus_Document><DocumentId>4711</DocumentId>" +
+            "</Opus_Document></Opus></foxml:xmlContent>" +
+            "</foxml:datastreamVersion>" +
+            "</foxml:datastream>" +
+            "<foxml:datastream ID=\"SLUB-INFO\" STATE=\"A\" CONTROL_GROUP=\"M\" VERSIONABLE=\"true\">" +
+            "<foxml:datastreamVersion ID=\"SLUB-INFO.0\" CREATED=\"2015-01-01T10:00:00.000Z\">" +
+            "<foxml:contentLocation TYPE=\"URL\" REF=\"http://localhost/SLUB-INFO\"/>" +
+            "</foxml:datastreamVersion>" +
+            "</foxml:datastream>" +
+            "</foxml:digitalObject>";
+
+    @Test
+    public void findsLatestVersionOfInlineDatastreams() throws Exception {
+        Map<String, Element> found = FedoraObjectReader.inlineDatastreams(
+                FedoraObjectReader.parse(FOXML), Arrays.asList("MODS", "QUCOSA-XML"));
+
+        ModsDocument mods = ModsDocument.Factory.parse(found.get("MODS"));
+        assertEquals("current", mods.getMods().getGenreArray(0).getStringValue());
+
+        OpusDocument opus = OpusDocument.Factory.parse(found.get("QUCOSA-XML"));
+        assertEquals("4711", opus.getOpus().getOpusDocument().getDocumentId());
+    }
+
+    @Test
+    public void reportsDatastreamsWithoutInlineContent() {
+        Map<String, Element> found = FedoraObjectReader.inlineDatastreams(
+                FedoraObjectReader.parse(FOXML), Arrays.asList("SLUB-INFO"));
+
+        assertTrue(found.containsKey("SLUB-INFO"));
+        assertNull(found.get("SLUB-INFO"));
+    }
+
+    @Test
+    public void ignoresMissingAndUnrequestedDatastreams() {
+        Map<String, Element> found = FedoraObjectReader.inlineDatastreams(
+                FedoraObjectReader.parse(FOXML), Arrays.asList("QUCOSA-XML", "RELS-EXT"));
+
+        assertEquals(1, found.size());
+        assertFalse(found.containsKey("MODS"));
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.junit.Test;
+import org.qucosa.camel.component.opus4.Opus4IdSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FedoraObjectSnapshotTest {
+
+    @Test
+    public void readsOpusIdsFromQucosaPids() throws IOException {
+        Opus4IdSet ids = read("\"object\"\n" +
+                "info:fedora/qucosa:1\n" +
+                "info:fedora/qucosa:4711\n" +
+                "info:fedora/fedora-system:ContentModel-3.0\n" +
+                "info:fedora/qucosa:23\n");
+
+        assertEquals(3, ids.size());
+        assertTrue(ids.contains(1));
+        assertTrue(ids.contains(23));
+        assertTrue(ids.contains(4711));
+    }
+
+    @Test
+    public void ignoresPidsNotGeneratedFromOpusIds() throws IOException {
+        Opus4IdSet ids = read("\"object\"\n" +
+                "info:fedora/qucosa:abc\n" +
+                "info:fedora/qucosa:-5\n" +
+                "info:fedora/test:12\n" +
+                "info:fedora/qucosa:99999999999\n");
+
+        assertTrue(ids.isEmpty());
+        assertFalse(ids.contains(12));
+    }
+
+    private static Opus4IdSet read(String csv) throws IOException {
+        return FedoraObjectSnapshot.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
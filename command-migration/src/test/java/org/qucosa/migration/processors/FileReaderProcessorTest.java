@@ -23,8 +23,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -136,4 +139,44 @@ public class FileReaderProcessorTest extends CamelTestSupport {
         assertTrue("List should contain " + line3, body.contains(line3));
     }
 
+    @Test
+    public void Ranges_get_expanded_if_enabled() throws Exception {
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("Opus/Document/7-9");
+        pw.println("qucosa:1-1");
+        pw.flush();
+
+        new FileReaderProcessor("#", false, true).process(exchange);
+
+        List<String> body = (List<String>) exchange.getIn().getBody(List.class);
+        assertEquals(Arrays.asList("Opus/Document/7", "Opus/Document/8", "Opus/Document/9", "qucosa:1"), body);
+    }
+
+    @Test
+    public void Ranges_are_kept_by_default() throws Exception {
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("urn:nbn:de:101:1-201609");
+        pw.flush();
+
+        subject.process(exchange);
+
+        List<String> body = (List<String>) exchange.getIn().getBody(List.class);
+        assertEquals(Arrays.asList("urn:nbn:de:101:1-201609"), body);
+    }
+
+    @Test
+    public void Streaming_reader_returns_lazy_iterator() throws Exception {
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("# Comment");
+        pw.println("Opus/Document/1-2000000000");
+        pw.flush();
+
+        new FileReaderProcessor("#", true, true).process(exchange);
+
+        Iterator<String> body = (Iterator<String>) exchange.getIn().getBody();
+        assertEquals("Opus/Document/1", body.next());
+        assertEquals("Opus/Document/2", body.next());
+        ((Closeable) body).close();
+    }
+
 }
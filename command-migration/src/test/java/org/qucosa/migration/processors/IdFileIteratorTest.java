@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class IdFileIteratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readsIdsAndExpandsRanges() throws IOException {
+        Path path = file("# Staging list", "", "  Opus/Document/17  ", "Opus/Document/3-5", "#Opus/Document/99",
+                "qucosa:10-11", "Opus/Institute/ABC");
+
+        assertEquals(Arrays.asList("Opus/Document/17", "Opus/Document/3", "Opus/Document/4", "Opus/Document/5",
+                "qucosa:10", "qucosa:11", "Opus/Institute/ABC"), read(path));
+    }
+
+    @Test
+    public void keepsIdsThatOnlyLookLikeRanges() throws IOException {
+        assertEquals(Arrays.asList("urn:nbn:de:bsz:14-qucosa-1234"), read(file("urn:nbn:de:bsz:14-qucosa-1234")));
+    }
+
+    @Test
+    public void keepsRangesUnlessExpansionIsEnabled() throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (IdFileIterator iterator = new IdFileIterator(file("Opus/Document/3-5"), "#")) {
+            iterator.forEachRemaining(ids::add);
+        }
+        assertEquals(Arrays.asList("Opus/Document/3-5"), ids);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDescendingRanges() throws IOException {
+        read(file("Opus/Document/5-3"));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void failsAfterLastId() throws IOException {
+        try (IdFileIterator ids = new IdFileIterator(file("Opus/Document/1"), "#")) {
+            ids.next();
+            assertFalse(ids.hasNext());
+            ids.next();
+        }
+    }
+
+    private Path file(String... lines) throws IOException {
+        Path path = tempFolder.newFile().toPath();
+        Files.write(path, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private static List<String> read(Path path) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (IdFileIterator iterator = new IdFileIterator(path, "#", true)) {
+            iterator.forEachRemaining(ids::add);
+        }
+        return ids;
+    }
+
+}
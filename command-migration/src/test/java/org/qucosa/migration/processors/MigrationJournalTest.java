@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.processors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.qucosa.migration.processors.MigrationJournal.State.DEPOSITED;
+import static org.qucosa.migration.processors.MigrationJournal.State.FAILED;
+import static org.qucosa.migration.processors.MigrationJournal.State.FETCHED;
+import static org.qucosa.migration.processors.MigrationJournal.State.TRANSFORMED;
+
+public class MigrationJournalTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void resumesRecordedState() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = start(path, false);
+        journal.append(FETCHED, 1, null);
+        journal.append(DEPOSITED, 1, "qucosa:1");
+        journal.append(TRANSFORMED, -1, "qucosa:1");
+        journal.append(FETCHED, 2, null);
+        journal.append(DEPOSITED, 2, "qucosa:2");
+        journal.append(FAILED, 3, null);
+        journal.stop();
+
+        journal = start(path, true);
+        assertTrue(journal.isDeposited(1));
+        assertTrue(journal.isTransformed("qucosa:1"));
+        assertTrue(journal.isDeposited(2));
+        assertEquals("qucosa:2", journal.getPid(2));
+        assertFalse(journal.isTransformed("qucosa:2"));
+        assertFalse(journal.isDeposited(3));
+        journal.stop();
+    }
+
+    @Test
+    public void discardsTornRecordAtEnd() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = start(path, false);
+        journal.append(DEPOSITED, 1, "qucosa:1");
+        journal.append(DEPOSITED, 2, "qucosa:2");
+        journal.stop();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        journal = start(path, true);
+        assertTrue(journal.isDeposited(1));
+        assertFalse(journal.isDeposited(2));
+        journal.append(DEPOSITED, 3, "qucosa:3");
+        journal.stop();
+
+        journal = start(path, true);
+        assertTrue(journal.isDeposited(1));
+        assertTrue(journal.isDeposited(3));
+        journal.stop();
+    }
+
+    @Test
+    public void keepsRecordsOfFailedWrite() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = new MigrationJournal(path, false, 60000);
+        journal.start();
+        journal.append(DEPOSITED, 1, "qucosa:1");
+
+        Field channelField = MigrationJournal.class.getDeclaredField("channel");
+        channelField.setAccessible(true);
+        FileChannel channel = (FileChannel) channelField.get(journal);
+        FileChannel closed = FileChannel.open(path, StandardOpenOption.WRITE);
+        closed.close();
+        channelField.set(journal, closed);
+        Method sync = MigrationJournal.class.getDeclaredMethod("sync");
+        sync.setAccessible(true);
+        try {
+            sync.invoke(journal);
+            fail("Expected write to closed channel to fail");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        channelField.set(journal, channel);
+        journal.append(DEPOSITED, 2, "qucosa:2");
+        journal.stop();
+
+        journal = start(path, true);
+        assertTrue(journal.isDeposited(1));
+        assertTrue(journal.isDeposited(2));
+        journal.stop();
+    }
+
+    @Test
+    public void keepsPidsOutsideNumericScheme() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = start(path, false);
+        journal.append(DEPOSITED, 5, "qucosa:77");
+        journal.append(DEPOSITED, 6, null);
+        journal.append(TRANSFORMED, -1, "qucosa:abc");
+        journal.append(TRANSFORMED, -1, "other:5");
+        journal.append(TRANSFORMED, -1, "qucosa:007");
+        journal.stop();
+
+        journal = start(path, true);
+        assertEquals("qucosa:77", journal.getPid(5));
+        assertTrue(journal.isDeposited(6));
+        assertNull(journal.getPid(6));
+        assertTrue(journal.isTransformed("qucosa:abc"));
+        assertTrue(journal.isTransformed("other:5"));
+        assertTrue(journal.isTransformed("qucosa:007"));
+        assertFalse(journal.isTransformed("qucosa:5"));
+        assertFalse(journal.isTransformed("qucosa:7"));
+        journal.stop();
+    }
+
+    @Test
+    public void startsNewJournalWithoutResume() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = start(path, false);
+        journal.append(DEPOSITED, 1, "qucosa:1");
+        journal.stop();
+
+        journal = start(path, false);
+        assertFalse(journal.isDeposited(1));
+        journal.stop();
+        assertEquals(0, Files.size(path));
+    }
+
+    @Test
+    public void disabledJournalRecordsNothing() throws Exception {
+        MigrationJournal journal = MigrationJournal.disabled();
+        journal.start();
+        journal.append(DEPOSITED, 1, "qucosa:1");
+        assertFalse(journal.isDeposited(1));
+        assertNull(journal.getPid(1));
+        journal.stop();
+    }
+
+    @Test
+    public void replaysMillionRecordsQuickly() throws Exception {
+        Path path = tempFolder.getRoot().toPath().resolve("journal");
+        MigrationJournal journal = start(path, false);
+        for (int i = 0; i < 1000000; i++) {
+            journal.append((i % 2 == 0) ? FETCHED : DEPOSITED, i / 2, (i % 2 == 0) ? null : "qucosa:" + (i / 2));
+        }
+        journal.stop();
+
+        long startTime = System.currentTimeMillis();
+        journal = start(path, true);
+        long millis = System.currentTimeMillis() - startTime;
+        assertTrue(journal.isDeposited(499999));
+        assertTrue("Replay took " + millis + " ms", millis < 5000);
+        journal.stop();
+    }
+
+    private static MigrationJournal start(Path path, boolean resume) throws Exception {
+        MigrationJournal journal = new MigrationJournal(path, resume, 10);
+        journal.start();
+        return journal;
+    }
+
+}
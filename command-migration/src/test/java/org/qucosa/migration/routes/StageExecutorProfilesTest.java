@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Saxon State and University Library Dresden (SLUB)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.qucosa.migration.routes;
+
+import org.apache.camel.ThreadPoolRejectedPolicy;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StageExecutorProfilesTest {
+
+    @Test
+    public void registersBoundedProfileForEachStage() throws Exception {
+        DefaultCamelContext context = new DefaultCamelContext();
+        StageExecutorProfiles.register(context.getExecutorServiceManager(), new BaseConfiguration());
+
+        for (String stage : StageExecutorProfiles.STAGES) {
+            ThreadPoolProfile profile = context.getExecutorServiceManager().getThreadPoolProfile(stage);
+            assertNotNull(stage, profile);
+            assertTrue(stage, profile.getMaxQueueSize() > 0);
+            assertEquals(stage, ThreadPoolRejectedPolicy.CallerRuns, profile.getRejectedPolicy());
+        }
+    }
+
+    @Test
+    public void readsConfiguredSizes() throws Exception {
+        BaseConfiguration conf = new BaseConfiguration();
+        conf.setProperty("migration.pool.map.size", 3);
+        conf.setProperty("migration.pool.map.queue", 7);
+        DefaultCamelContext context = new DefaultCamelContext();
+        StageExecutorProfiles.register(context.getExecutorServiceManager(), conf);
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) context.getExecutorServiceManager()
+                .newThreadPool(this, "test", StageExecutorProfiles.MAP);
+        try {
+            assertEquals(3, pool.getCorePoolSize());
+            assertEquals(7, pool.getQueue().remainingCapacity());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}